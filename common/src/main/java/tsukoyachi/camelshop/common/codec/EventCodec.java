@@ -0,0 +1,226 @@
+package tsukoyachi.camelshop.common.codec;
+
+import tsukoyachi.camelshop.common.models.Cart;
+import tsukoyachi.camelshop.common.models.OrderCreatedEvent;
+import tsukoyachi.camelshop.common.models.PaymentProcessedEvent;
+import tsukoyachi.camelshop.common.models.ShipmentDeliveredEvent;
+import tsukoyachi.camelshop.common.models.ShopEvent;
+import tsukoyachi.camelshop.common.models.SignupEvent;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Binary form of the events exchanged between event-routing and event-ingestion. One message holds a
+ * batch of events:
+ * <pre>
+ * batch := VERSION:u8 count:varint event*
+ * event := tag:u8 fields timestamp:zigzag-varint
+ * </pre>
+ * The tag identifies the record type, fields follow in record component order. Strings are a varint
+ * byte length followed by UTF-8 bytes, a cart is a varint line count followed by item id and varint
+ * quantity pairs. Timestamps are epoch milliseconds.
+ */
+public final class EventCodec {
+    public static final String CONTENT_TYPE = "application/vnd.camelshop.events";
+    public static final byte VERSION = 1;
+
+    private static final byte SIGNUP = 1;
+    private static final byte ORDER_CREATED = 2;
+    private static final byte PAYMENT_PROCESSED = 3;
+    private static final byte SHIPMENT_DELIVERED = 4;
+
+    private EventCodec() {
+    }
+
+    public static byte[] encode(List<? extends ShopEvent> events) {
+        Output output = new Output(32 + events.size() * 64);
+        output.writeByte(VERSION);
+        output.writeVarint(events.size());
+        for (ShopEvent event : events) {
+            switch (event) {
+                case SignupEvent signup -> {
+                    output.writeByte(SIGNUP);
+                    output.writeString(signup.userId());
+                    output.writeString(signup.username());
+                    output.writeString(signup.email());
+                }
+                case OrderCreatedEvent order -> {
+                    output.writeByte(ORDER_CREATED);
+                    output.writeString(order.orderId());
+                    output.writeString(order.userId());
+                    Cart cart = order.cart();
+                    output.writeVarint(cart.size());
+                    for (int i = 0; i < cart.size(); i++) {
+                        output.writeString(cart.itemId(i));
+                        output.writeVarint(cart.quantity(i));
+                    }
+                }
+                case PaymentProcessedEvent payment -> {
+                    output.writeByte(PAYMENT_PROCESSED);
+                    output.writeString(payment.orderId());
+                    output.writeString(payment.userId());
+                    output.writeString(payment.billingId());
+                }
+                case ShipmentDeliveredEvent shipment -> {
+                    output.writeByte(SHIPMENT_DELIVERED);
+                    output.writeString(shipment.userId());
+                    output.writeString(shipment.orderId());
+                    output.writeString(shipment.parcelId());
+                }
+            }
+            output.writeZigzag(event.occurredAt());
+        }
+        return output.toByteArray();
+    }
+
+    /**
+     * @throws IllegalArgumentException if the bytes are not a batch of this version
+     */
+    public static List<ShopEvent> decode(byte[] bytes) {
+        Input input = new Input(bytes);
+        int version = input.readByte();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported event batch version %d".formatted(version));
+        }
+
+        int count = input.readVarint();
+        List<ShopEvent> events = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int tag = input.readByte();
+            ShopEvent event = switch (tag) {
+                case SIGNUP -> new SignupEvent(input.readString(), input.readString(), input.readString(),
+                        input.readZigzag());
+                case ORDER_CREATED -> {
+                    String orderId = input.readString();
+                    String userId = input.readString();
+                    int lines = input.readVarint();
+                    Cart cart = new Cart(lines);
+                    for (int line = 0; line < lines; line++) {
+                        cart.put(input.readString(), input.readVarint());
+                    }
+                    yield new OrderCreatedEvent(orderId, userId, cart, input.readZigzag());
+                }
+                case PAYMENT_PROCESSED -> new PaymentProcessedEvent(input.readString(), input.readString(),
+                        input.readString(), input.readZigzag());
+                case SHIPMENT_DELIVERED -> new ShipmentDeliveredEvent(input.readString(), input.readString(),
+                        input.readString(), input.readZigzag());
+                default -> throw new IllegalArgumentException("Unknown event tag %d".formatted(tag));
+            };
+            events.add(event);
+        }
+        if (input.remaining() != 0) {
+            throw new IllegalArgumentException("%d trailing byte(s) after the last event".formatted(input.remaining()));
+        }
+        return events;
+    }
+
+    private static final class Output {
+        private byte[] bytes;
+        private int size;
+
+        private Output(int initialCapacity) {
+            this.bytes = new byte[initialCapacity];
+        }
+
+        private void writeByte(int value) {
+            ensureCapacity(1);
+            bytes[size++] = (byte) value;
+        }
+
+        private void writeVarint(int value) {
+            writeVarLong(value & 0xFFFFFFFFL);
+        }
+
+        private void writeZigzag(long value) {
+            writeVarLong((value << 1) ^ (value >> 63));
+        }
+
+        private void writeVarLong(long value) {
+            ensureCapacity(10);
+            long remaining = value;
+            while ((remaining & ~0x7FL) != 0) {
+                bytes[size++] = (byte) ((remaining & 0x7F) | 0x80);
+                remaining >>>= 7;
+            }
+            bytes[size++] = (byte) remaining;
+        }
+
+        private void writeString(String value) {
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            writeVarint(utf8.length);
+            ensureCapacity(utf8.length);
+            System.arraycopy(utf8, 0, bytes, size, utf8.length);
+            size += utf8.length;
+        }
+
+        private void ensureCapacity(int additional) {
+            if (size + additional > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + additional));
+            }
+        }
+
+        private byte[] toByteArray() {
+            return Arrays.copyOf(bytes, size);
+        }
+    }
+
+    private static final class Input {
+        private final byte[] bytes;
+        private int position;
+
+        private Input(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        private int remaining() {
+            return bytes.length - position;
+        }
+
+        private int readByte() {
+            require(1);
+            return bytes[position++];
+        }
+
+        private int readVarint() {
+            long value = readVarLong();
+            if (value < 0 || value > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Varint out of range: %d".formatted(value));
+            }
+            return (int) value;
+        }
+
+        private long readZigzag() {
+            long value = readVarLong();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        private long readVarLong() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Malformed varint");
+        }
+
+        private String readString() {
+            int length = readVarint();
+            require(length);
+            String value = new String(bytes, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+
+        private void require(int count) {
+            if (count > bytes.length - position) {
+                throw new IllegalArgumentException("Truncated event batch");
+            }
+        }
+    }
+}
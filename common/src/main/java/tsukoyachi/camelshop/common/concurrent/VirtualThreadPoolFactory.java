@@ -0,0 +1,48 @@
+package tsukoyachi.camelshop.common.concurrent;
+
+import org.apache.camel.spi.ThreadPoolProfile;
+import org.apache.camel.support.DefaultThreadPoolFactory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Camel thread pool factory backing every pool with virtual threads. Multi-threaded pools become a
+ * thread-per-task executor capped at the maximum size of their profile, and never above
+ * {@code maxConcurrency}. Single-threaded and scheduled pools keep their semantics (ordering,
+ * scheduling) but run on virtual threads.
+ */
+public class VirtualThreadPoolFactory extends DefaultThreadPoolFactory {
+    private final int maxConcurrency;
+
+    public VirtualThreadPoolFactory(int maxConcurrency) {
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    @Override
+    public ExecutorService newCachedThreadPool(ThreadFactory threadFactory) {
+        return new BoundedVirtualThreadExecutor("camel-virtual-", maxConcurrency);
+    }
+
+    @Override
+    public ExecutorService newThreadPool(ThreadPoolProfile profile, ThreadFactory threadFactory) {
+        Integer maxPoolSize = profile.getMaxPoolSize();
+        if (maxPoolSize == null) {
+            return new BoundedVirtualThreadExecutor("camel-virtual-", maxConcurrency);
+        }
+        if (maxPoolSize == 1) {
+            return super.newThreadPool(profile, virtualThreadFactory());
+        }
+        return new BoundedVirtualThreadExecutor("camel-virtual-", Math.min(maxPoolSize, maxConcurrency));
+    }
+
+    @Override
+    public ScheduledExecutorService newScheduledThreadPool(ThreadPoolProfile profile, ThreadFactory threadFactory) {
+        return super.newScheduledThreadPool(profile, virtualThreadFactory());
+    }
+
+    private static ThreadFactory virtualThreadFactory() {
+        return Thread.ofVirtual().name("camel-virtual-", 0).factory();
+    }
+}
@@ -0,0 +1,156 @@
+package tsukoyachi.camelshop.common.models;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Lines of an order: item ids and quantities kept in two parallel arrays, in the order they were added.
+ * Quantities are plain {@code int}s, nothing is boxed. Like a map, adding an item already in the cart
+ * replaces its quantity; lookups scan the lines, which is cheaper than hashing for carts of a few lines.
+ * <p>
+ * A cart is filled by the parser that reads the order, it must not be modified once it is part of an event.
+ */
+public final class Cart {
+    private static final int DEFAULT_CAPACITY = 4;
+
+    private String[] itemIds;
+    private int[] quantities;
+    private int size;
+
+    public Cart() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public Cart(int capacity) {
+        this.itemIds = new String[Math.max(1, capacity)];
+        this.quantities = new int[itemIds.length];
+    }
+
+    public static Cart of(Map<String, Integer> lines) {
+        Cart cart = new Cart(lines.size());
+        lines.forEach(cart::put);
+        return cart;
+    }
+
+    public void put(String itemId, int quantity) {
+        Objects.requireNonNull(itemId, "Item ID must not be null");
+        int index = indexOf(itemId);
+        if (index >= 0) {
+            quantities[index] = quantity;
+            return;
+        }
+        if (size == itemIds.length) {
+            itemIds = Arrays.copyOf(itemIds, size * 2);
+            quantities = Arrays.copyOf(quantities, size * 2);
+        }
+        itemIds[size] = itemId;
+        quantities[size] = quantity;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public String itemId(int index) {
+        return itemIds[checkIndex(index)];
+    }
+
+    public int quantity(int index) {
+        return quantities[checkIndex(index)];
+    }
+
+    /**
+     * Quantity of an item, 0 when it is not in the cart.
+     */
+    public int quantityOf(String itemId) {
+        int index = indexOf(itemId);
+        return index >= 0 ? quantities[index] : 0;
+    }
+
+    public boolean contains(String itemId) {
+        return indexOf(itemId) >= 0;
+    }
+
+    /**
+     * Read-only view of the item ids, in cart order.
+     */
+    public List<String> itemIds() {
+        return Collections.unmodifiableList(Arrays.asList(itemIds).subList(0, size));
+    }
+
+    public void forEach(ObjIntConsumer<String> action) {
+        for (int i = 0; i < size; i++) {
+            action.accept(itemIds[i], quantities[i]);
+        }
+    }
+
+    public Map<String, Integer> toMap() {
+        Map<String, Integer> map = new LinkedHashMap<>();
+        forEach(map::put);
+        return map;
+    }
+
+    /**
+     * Two carts are equal when they hold the same items with the same quantities, in any order.
+     */
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof Cart cart) || cart.size != size) {
+            return false;
+        }
+        for (int i = 0; i < size; i++) {
+            int index = cart.indexOf(itemIds[i]);
+            if (index < 0 || cart.quantities[index] != quantities[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 0;
+        for (int i = 0; i < size; i++) {
+            hash += itemIds[i].hashCode() ^ quantities[i];
+        }
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("{");
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            builder.append(itemIds[i]).append('=').append(quantities[i]);
+        }
+        return builder.append('}').toString();
+    }
+
+    private int indexOf(String itemId) {
+        for (int i = 0; i < size; i++) {
+            if (itemIds[i].equals(itemId)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int checkIndex(int index) {
+        return Objects.checkIndex(index, size);
+    }
+}
@@ -1,12 +1,20 @@
 package tsukoyachi.camelshop.common.models;
 
-import java.util.Date;
-import java.util.Map;
-
 public record OrderCreatedEvent(
         String orderId,
         String userId,
-        Map<String, Integer> cart,
-        Date createdAt
-) {
+        Cart cart,
+        long createdAt
+) implements ShopEvent {
+    public static final String TYPE = "order_created";
+
+    @Override
+    public String eventType() {
+        return TYPE;
+    }
+
+    @Override
+    public long occurredAt() {
+        return createdAt;
+    }
 }
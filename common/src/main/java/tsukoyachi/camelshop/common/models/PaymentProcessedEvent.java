@@ -1,11 +1,20 @@
 package tsukoyachi.camelshop.common.models;
 
-import java.util.Date;
-
 public record PaymentProcessedEvent(
         String orderId,
         String userId,
         String billingId,
-        Date processedAt
-) {
+        long processedAt
+) implements ShopEvent {
+    public static final String TYPE = "payment_processed";
+
+    @Override
+    public String eventType() {
+        return TYPE;
+    }
+
+    @Override
+    public long occurredAt() {
+        return processedAt;
+    }
 }
@@ -1,11 +1,20 @@
 package tsukoyachi.camelshop.common.models;
 
-import java.util.Date;
-
 public record ShipmentDeliveredEvent(
         String userId,
         String orderId,
         String parcelId,
-        Date deliveredAt
-) {
+        long deliveredAt
+) implements ShopEvent {
+    public static final String TYPE = "shipment_delivered";
+
+    @Override
+    public String eventType() {
+        return TYPE;
+    }
+
+    @Override
+    public long occurredAt() {
+        return deliveredAt;
+    }
 }
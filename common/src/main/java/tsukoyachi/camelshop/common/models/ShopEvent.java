@@ -0,0 +1,20 @@
+package tsukoyachi.camelshop.common.models;
+
+/**
+ * Common view of the events exchanged between the CamelShop services.
+ */
+public sealed interface ShopEvent
+        permits SignupEvent, OrderCreatedEvent, PaymentProcessedEvent, ShipmentDeliveredEvent {
+
+    /**
+     * Event type as written in the input files, e.g. {@code order_created}.
+     */
+    String eventType();
+
+    String userId();
+
+    /**
+     * Epoch milliseconds at which the event happened, as given by its timestamp field.
+     */
+    long occurredAt();
+}
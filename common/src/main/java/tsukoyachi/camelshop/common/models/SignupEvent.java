@@ -1,11 +1,20 @@
 package tsukoyachi.camelshop.common.models;
 
-import java.util.Date;
-
 public record SignupEvent(
         String userId,
-        String email,
         String username,
-        Date createdAt
-) {
+        String email,
+        long createdAt
+) implements ShopEvent {
+    public static final String TYPE = "signup";
+
+    @Override
+    public String eventType() {
+        return TYPE;
+    }
+
+    @Override
+    public long occurredAt() {
+        return createdAt;
+    }
 }
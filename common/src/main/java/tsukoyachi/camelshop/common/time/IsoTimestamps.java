@@ -0,0 +1,113 @@
+package tsukoyachi.camelshop.common.time;
+
+import java.time.Instant;
+
+/**
+ * Parses the ISO-8601 UTC timestamps found in event files into epoch milliseconds.
+ * <p>
+ * Producers write {@code yyyy-MM-ddTHH:mm:ss[.fraction]Z}, this layout is decoded in place by reading
+ * digits at fixed offsets, without going through {@link java.time.format.DateTimeFormatter} and without
+ * allocating. Anything else (offsets, leap seconds, years outside 0000-9999...) is handed to
+ * {@link Instant#parse(CharSequence)}, so the accepted inputs and the errors are the same as before.
+ * Fractions finer than a millisecond are truncated.
+ */
+public final class IsoTimestamps {
+    private static final int FRACTION_START = 20;
+    private static final int MAX_FRACTION_DIGITS = 9;
+    private static final long SECONDS_PER_DAY = 86_400L;
+    // Days between 0000-03-01 and 1970-01-01, the civil date algorithm counts from the former
+    private static final long DAYS_0000_TO_1970 = 719_468L;
+
+    private IsoTimestamps() {
+    }
+
+    /**
+     * Returns the epoch milliseconds of {@code text}.
+     *
+     * @throws java.time.format.DateTimeParseException if the text is not an ISO-8601 instant
+     */
+    public static long parseEpochMillis(CharSequence text) {
+        long millis = parseFixedLayout(text);
+        return millis != Long.MIN_VALUE ? millis : Instant.parse(text).toEpochMilli();
+    }
+
+    /**
+     * Decodes the {@code yyyy-MM-ddTHH:mm:ss[.fraction]Z} layout, returns {@link Long#MIN_VALUE} when the
+     * text does not follow it exactly or holds an out of range field.
+     */
+    private static long parseFixedLayout(CharSequence text) {
+        int length = text.length();
+        if (length < FRACTION_START || text.charAt(length - 1) != 'Z'
+                || text.charAt(4) != '-' || text.charAt(7) != '-' || text.charAt(10) != 'T'
+                || text.charAt(13) != ':' || text.charAt(16) != ':') {
+            return Long.MIN_VALUE;
+        }
+
+        int year = digits(text, 0, 4);
+        int month = digits(text, 5, 2);
+        int day = digits(text, 8, 2);
+        int hour = digits(text, 11, 2);
+        int minute = digits(text, 14, 2);
+        int second = digits(text, 17, 2);
+        if ((year | month | day | hour | minute | second) < 0
+                || month < 1 || month > 12 || day < 1 || day > lengthOfMonth(year, month)
+                || hour > 23 || minute > 59 || second > 59) {
+            return Long.MIN_VALUE;
+        }
+
+        int millis = 0;
+        if (length > FRACTION_START) {
+            int fractionDigits = length - FRACTION_START - 1;
+            if (text.charAt(19) != '.' || fractionDigits < 1 || fractionDigits > MAX_FRACTION_DIGITS) {
+                return Long.MIN_VALUE;
+            }
+            int fraction = digits(text, FRACTION_START, Math.min(fractionDigits, 3));
+            if (fraction < 0 || (fractionDigits > 3 && digits(text, FRACTION_START + 3, fractionDigits - 3) < 0)) {
+                return Long.MIN_VALUE;
+            }
+            for (int i = fractionDigits; i < 3; i++) {
+                fraction *= 10;
+            }
+            millis = fraction;
+        }
+
+        long seconds = epochDay(year, month, day) * SECONDS_PER_DAY + hour * 3_600L + minute * 60L + second;
+        return seconds * 1_000L + millis;
+    }
+
+    /**
+     * Reads {@code count} decimal digits starting at {@code start}, returns -1 if one of them is not a digit.
+     */
+    private static int digits(CharSequence text, int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            int digit = text.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    private static int lengthOfMonth(int year, int month) {
+        return switch (month) {
+            case 2 -> (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0)) ? 29 : 28;
+            case 4, 6, 9, 11 -> 30;
+            default -> 31;
+        };
+    }
+
+    /**
+     * Days since 1970-01-01 of a proleptic Gregorian date, years are shifted to start in March so that
+     * the leap day comes last.
+     */
+    private static long epochDay(int year, int month, int day) {
+        long y = month <= 2 ? year - 1 : year;
+        long era = Math.floorDiv(y, 400);
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153L * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146_097 + dayOfEra - DAYS_0000_TO_1970;
+    }
+}
@@ -0,0 +1,39 @@
+package tsukoyachi.camelshop.common.codec;
+
+import org.junit.jupiter.api.Test;
+import tsukoyachi.camelshop.common.models.Cart;
+import tsukoyachi.camelshop.common.models.OrderCreatedEvent;
+import tsukoyachi.camelshop.common.models.PaymentProcessedEvent;
+import tsukoyachi.camelshop.common.models.ShipmentDeliveredEvent;
+import tsukoyachi.camelshop.common.models.ShopEvent;
+import tsukoyachi.camelshop.common.models.SignupEvent;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class EventCodecTest {
+
+    @Test
+    void roundTripsEveryEventType() {
+        List<ShopEvent> events = List.of(
+                new SignupEvent("U1", "élodie", "elodie@camelshop.com", 1_756_894_500_000L),
+                new OrderCreatedEvent("O1", "U1", Cart.of(Map.of("ITEM1", 2, "ITEM2", 300)), 1_756_894_560_123L),
+                new PaymentProcessedEvent("O1", "U1", "B1", -1L),
+                new ShipmentDeliveredEvent("U1", "O1", "P1", 0L));
+
+        assertThat(EventCodec.decode(EventCodec.encode(events))).isEqualTo(events);
+    }
+
+    @Test
+    void rejectsTruncatedBatches() {
+        byte[] bytes = EventCodec.encode(List.of(new SignupEvent("U1", "alice", "alice@camelshop.com", 0L)));
+
+        assertThatThrownBy(() -> EventCodec.decode(Arrays.copyOf(bytes, bytes.length - 3)))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Truncated event batch");
+    }
+}
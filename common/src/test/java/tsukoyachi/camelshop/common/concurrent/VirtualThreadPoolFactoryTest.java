@@ -0,0 +1,51 @@
+package tsukoyachi.camelshop.common.concurrent;
+
+import org.apache.camel.spi.ThreadPoolProfile;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class VirtualThreadPoolFactoryTest {
+    private static final ThreadFactory UNUSED = Thread.ofPlatform().factory();
+
+    @Test
+    void capsPoolsAtTheirMaxPoolSize() {
+        ExecutorService pool = new VirtualThreadPoolFactory(1_000).newThreadPool(profile(64), UNUSED);
+
+        assertThat(pool).isInstanceOfSatisfying(BoundedVirtualThreadExecutor.class,
+                executor -> assertThat(executor.availableSlots()).isEqualTo(64));
+        pool.shutdown();
+    }
+
+    @Test
+    void neverExceedsTheMaxConcurrency() {
+        ExecutorService pool = new VirtualThreadPoolFactory(8).newThreadPool(profile(64), UNUSED);
+
+        assertThat(pool).isInstanceOfSatisfying(BoundedVirtualThreadExecutor.class,
+                executor -> assertThat(executor.availableSlots()).isEqualTo(8));
+        pool.shutdown();
+    }
+
+    @Test
+    void keepsSingleThreadedPoolsOrdered() {
+        ExecutorService pool = new VirtualThreadPoolFactory(8).newThreadPool(profile(1), UNUSED);
+
+        assertThat(pool).isInstanceOf(ThreadPoolExecutor.class);
+        pool.shutdown();
+    }
+
+    private static ThreadPoolProfile profile(int size) {
+        ThreadPoolProfile profile = new ThreadPoolProfile("test");
+        profile.setPoolSize(size);
+        profile.setMaxPoolSize(size);
+        profile.setKeepAliveTime(60L);
+        profile.setTimeUnit(TimeUnit.SECONDS);
+        profile.setMaxQueueSize(-1);
+        return profile;
+    }
+}
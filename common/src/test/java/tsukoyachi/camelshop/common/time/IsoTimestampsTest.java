@@ -0,0 +1,41 @@
+package tsukoyachi.camelshop.common.time;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class IsoTimestampsTest {
+
+    @Test
+    void matchesInstantParseOnTheFixedLayout() {
+        String[] timestamps = {
+                "2025-09-03T10:15:00Z", "1970-01-01T00:00:00Z", "1969-12-31T23:59:59.999Z",
+                "2024-02-29T12:00:00.5Z", "2000-03-01T00:00:00.123456789Z", "0001-01-01T00:00:00Z",
+                "9999-12-31T23:59:59.99Z"
+        };
+        for (String timestamp : timestamps) {
+            assertThat(IsoTimestamps.parseEpochMillis(timestamp))
+                    .as(timestamp)
+                    .isEqualTo(Instant.parse(timestamp).toEpochMilli());
+        }
+    }
+
+    @Test
+    void fallsBackToInstantParseForOtherLayouts() {
+        assertThat(IsoTimestamps.parseEpochMillis("2025-09-03T12:15:00+02:00"))
+                .isEqualTo(Instant.parse("2025-09-03T10:15:00Z").toEpochMilli());
+    }
+
+    @Test
+    void rejectsInvalidTimestamps() {
+        for (String timestamp : new String[]{"2025-02-29T10:15:00Z", "2025-09-03T10:60:00Z", "2025-09-03 10:15:00Z", "not a date"}) {
+            assertThatThrownBy(() -> IsoTimestamps.parseEpochMillis(timestamp))
+                    .as(timestamp)
+                    .isInstanceOf(DateTimeParseException.class);
+        }
+    }
+}
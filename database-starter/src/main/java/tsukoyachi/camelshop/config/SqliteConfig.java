@@ -1,5 +1,7 @@
 package tsukoyachi.camelshop.config;
 
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.domain.EntityScan;
 import org.springframework.boot.jdbc.DataSourceBuilder;
@@ -7,11 +9,15 @@ import org.springframework.boot.orm.jpa.EntityManagerFactoryBuilder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
 import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
 
 import javax.sql.DataSource;
 import java.util.Map;
+import java.util.Properties;
 
 @Configuration
 @EntityScan(basePackages = "tsukoyachi.camelshop.entity")
@@ -21,8 +27,29 @@ public class SqliteConfig {
 
     @Value("${camelshop.datasource.url}")
     private String databaseUrl;
+    @Value("${camelshop.datasource.batch-size:500}")
+    private int batchSize;
+    @Value("${camelshop.datasource.ddl-auto:update}")
+    private String ddlAuto;
+    @Value("${camelshop.datasource.show-sql:true}")
+    private boolean showSql;
+    @Value("${camelshop.datasource.query-plan-cache-size:2048}")
+    private int queryPlanCacheSize;
+
+    // Pragmas applied by the SQLite driver on every pooled connection (production profile)
+    @Value("${camelshop.datasource.pragma.journal-mode:WAL}")
+    private String journalMode;
+    @Value("${camelshop.datasource.pragma.synchronous:NORMAL}")
+    private String synchronous;
+    @Value("${camelshop.datasource.pragma.cache-size:-65536}")
+    private long cacheSize;
+    @Value("${camelshop.datasource.pragma.mmap-size:268435456}")
+    private long mmapSize;
+    @Value("${camelshop.datasource.pragma.busy-timeout:5000}")
+    private int busyTimeout;
 
     @Bean
+    @Profile("!production")
     public DataSource dataSource() {
         return DataSourceBuilder.create()
                 .driverClassName("org.sqlite.JDBC")
@@ -30,13 +57,46 @@ public class SqliteConfig {
                 .build();
     }
 
+    /**
+     * SQLite only allows one writer at a time, so the writer pool holds a single connection. Read-only
+     * transactions (Spring Data repository reads are read-only by default) are routed to a separate
+     * pool, with WAL journaling they no longer wait behind the writer lock.
+     */
+    @Bean
+    @Primary
+    @Profile("production")
+    public DataSource productionDataSource(HikariDataSource sqliteWriterDataSource,
+                                           HikariDataSource sqliteReaderDataSource) {
+        LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy(sqliteWriterDataSource);
+        dataSource.setReadOnlyDataSource(sqliteReaderDataSource);
+        return dataSource;
+    }
+
+    @Bean
+    @Profile("production")
+    public HikariDataSource sqliteWriterDataSource() {
+        return sqlitePool("sqlite-writer", 1, false);
+    }
+
+    @Bean
+    @Profile("production")
+    public HikariDataSource sqliteReaderDataSource(@Value("${camelshop.datasource.pool.readers:4}") int readers) {
+        return sqlitePool("sqlite-reader", readers, true);
+    }
+
     @Bean
     public LocalContainerEntityManagerFactoryBean entityManagerFactory(
             EntityManagerFactoryBuilder builder, DataSource dataSource) {
         Map<String, String> properties = Map.of(
                 "hibernate.dialect", "org.hibernate.community.dialect.SQLiteDialect",
-                "hibernate.hbm2ddl.auto", "update",
-                "hibernate.show_sql", "true"
+                "hibernate.hbm2ddl.auto", ddlAuto,
+                "hibernate.show_sql", String.valueOf(showSql),
+                // Group inserts/updates in JDBC batches, ordered so that statements of the same table stay together
+                "hibernate.jdbc.batch_size", String.valueOf(batchSize),
+                "hibernate.order_inserts", "true",
+                "hibernate.order_updates", "true",
+                "hibernate.jdbc.batch_versioned_data", "true",
+                "hibernate.query.plan_cache_max_size", String.valueOf(queryPlanCacheSize)
         );
 
         return builder
@@ -45,4 +105,30 @@ public class SqliteConfig {
                 .properties(properties)
                 .build();
     }
+
+    private HikariDataSource sqlitePool(String name, int size, boolean readOnly) {
+        Properties pragmas = new Properties();
+        pragmas.setProperty("journal_mode", journalMode);
+        pragmas.setProperty("synchronous", synchronous);
+        pragmas.setProperty("cache_size", String.valueOf(cacheSize));
+        pragmas.setProperty("mmap_size", String.valueOf(mmapSize));
+        pragmas.setProperty("busy_timeout", String.valueOf(busyTimeout));
+        if (readOnly) {
+            // Lets the pool flag its connections as read-only once they are open (query_only pragma)
+            pragmas.setProperty("jdbc.explicit_readonly", "true");
+        } else {
+            // Take the write lock when the transaction starts instead of failing to upgrade it later on
+            pragmas.setProperty("transaction_mode", "IMMEDIATE");
+        }
+
+        HikariConfig config = new HikariConfig();
+        config.setPoolName(name);
+        config.setDriverClassName("org.sqlite.JDBC");
+        config.setJdbcUrl(databaseUrl);
+        config.setMaximumPoolSize(size);
+        config.setMinimumIdle(size);
+        config.setReadOnly(readOnly);
+        config.setDataSourceProperties(pragmas);
+        return new HikariDataSource(config);
+    }
 }
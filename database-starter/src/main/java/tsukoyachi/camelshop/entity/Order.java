@@ -4,6 +4,7 @@ import jakarta.persistence.*;
 import tsukoyachi.camelshop.enums.OrderState;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 
@@ -13,7 +14,7 @@ public class Order {
     @Id
     private String id;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY, optional = false)
     @JoinColumn(name = "user_id", nullable = false)
     private User user;
 
@@ -21,9 +22,9 @@ public class Order {
     @Enumerated(EnumType.STRING)
     private OrderState state;
 
-    @OneToMany(cascade = CascadeType.ALL, orphanRemoval = true)
-    @JoinColumn(name = "order_id")
-    private List<OrderItem> cart;
+    // Owned by OrderItem.order: lines are inserted with their order_id, no follow-up UPDATE is needed
+    @OneToMany(mappedBy = "order", cascade = CascadeType.ALL, orphanRemoval = true)
+    private List<OrderItem> cart = new ArrayList<>();
 
     @Column(name = "total_amount", nullable = false)
     private BigDecimal totalAmount;
@@ -64,6 +65,15 @@ public class Order {
         this.cart = cart;
     }
 
+    /**
+     * Adds a line to the cart and links it back to this order.
+     */
+    public OrderItem addItem(String productId, Integer quantity) {
+        OrderItem item = new OrderItem(this, productId, quantity);
+        cart.add(item);
+        return item;
+    }
+
     public BigDecimal getTotalAmount() {
         return totalAmount;
     }
@@ -92,11 +102,8 @@ public class Order {
     }
 
     public Order(String id, User user, OrderState state, List<OrderItem> cart, BigDecimal totalAmount, Date createdAt) {
-        this.id = id;
-        this.user = user;
-        this.state = state;
-        this.cart = cart;
-        this.totalAmount = totalAmount;
-        this.createdAt = createdAt;
+        this(id, user, state, totalAmount, createdAt);
+        cart.forEach(item -> item.setOrder(this));
+        this.cart.addAll(cart);
     }
 }
@@ -5,41 +5,39 @@ import jakarta.persistence.*;
 @Entity
 @Table
 public class OrderItem {
-    @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
-    private Long id;
+    @EmbeddedId
+    private OrderItemId id;
 
-    @Column(name = "order_id", nullable = false)
-    private String orderId;
-
-    @Column(name = "product_id", nullable = false)
-    private String productId;
+    @MapsId("orderId")
+    @ManyToOne(fetch = FetchType.LAZY, optional = false)
+    @JoinColumn(name = "order_id", nullable = false)
+    private Order order;
 
     @Column(name = "quantity", nullable = false)
     private Integer quantity;
 
-    public Long getId() {
+    public OrderItemId getId() {
         return id;
     }
 
-    public void setId(Long id) {
+    public void setId(OrderItemId id) {
         this.id = id;
     }
 
-    public String getOrderId() {
-        return orderId;
+    public Order getOrder() {
+        return order;
     }
 
-    public void setOrderId(String orderId) {
-        this.orderId = orderId;
+    public void setOrder(Order order) {
+        this.order = order;
     }
 
-    public String getProductId() {
-        return productId;
+    public String getOrderId() {
+        return id != null ? id.getOrderId() : null;
     }
 
-    public void setProductId(String productId) {
-        this.productId = productId;
+    public String getProductId() {
+        return id != null ? id.getProductId() : null;
     }
 
     public Integer getQuantity() {
@@ -53,9 +51,9 @@ public class OrderItem {
     public OrderItem() {
     }
 
-    public OrderItem(String orderId, String productId, Integer quantity) {
-        this.orderId = orderId;
-        this.productId = productId;
+    public OrderItem(Order order, String productId, Integer quantity) {
+        this.id = new OrderItemId(order.getId(), productId);
+        this.order = order;
         this.quantity = quantity;
     }
 }
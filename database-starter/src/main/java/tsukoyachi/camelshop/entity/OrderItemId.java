@@ -0,0 +1,60 @@
+package tsukoyachi.camelshop.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Embeddable;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * Composite key of {@link OrderItem}: a product appears at most once per order. The key is assigned
+ * by the application, so order lines can be inserted in JDBC batches.
+ */
+@Embeddable
+public class OrderItemId implements Serializable {
+    @Column(name = "order_id", nullable = false)
+    private String orderId;
+
+    @Column(name = "product_id", nullable = false)
+    private String productId;
+
+    public String getOrderId() {
+        return orderId;
+    }
+
+    public void setOrderId(String orderId) {
+        this.orderId = orderId;
+    }
+
+    public String getProductId() {
+        return productId;
+    }
+
+    public void setProductId(String productId) {
+        this.productId = productId;
+    }
+
+    public OrderItemId() {
+    }
+
+    public OrderItemId(String orderId, String productId) {
+        this.orderId = orderId;
+        this.productId = productId;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof OrderItemId other)) {
+            return false;
+        }
+        return Objects.equals(orderId, other.orderId) && Objects.equals(productId, other.productId);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(orderId, productId);
+    }
+}
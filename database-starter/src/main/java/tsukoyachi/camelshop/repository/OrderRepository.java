@@ -1,9 +1,66 @@
 package tsukoyachi.camelshop.repository;
 
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import tsukoyachi.camelshop.entity.Order;
+import tsukoyachi.camelshop.enums.OrderState;
+
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
 
 @Repository
 public interface OrderRepository extends JpaRepository<Order, String> {
+
+    /**
+     * Loads orders together with their user and cart lines in a single query.
+     */
+    @Query("select distinct o from Order o join fetch o.user left join fetch o.cart where o.id in :ids")
+    List<Order> findAllWithUserAndCartByIdIn(@Param("ids") Collection<String> ids);
+
+    @EntityGraph(attributePaths = {"user", "cart"})
+    Optional<Order> findWithUserAndCartById(String id);
+
+    @EntityGraph(attributePaths = "cart")
+    List<Order> findByUserId(String userId);
+
+    /**
+     * Current state of the given orders, without loading the entities.
+     */
+    @Query("select o.id as id, o.state as state from Order o where o.id in :ids")
+    List<IdAndState> findStatesByIdIn(@Param("ids") Collection<String> ids);
+
+    /**
+     * Moves the given orders to {@code state} in a single statement, bypassing the persistence context.
+     * States only go forward: orders that already reached or passed {@code state} in the database are left
+     * as they are, whatever the caller believed their state to be.
+     *
+     * @return the number of orders moved
+     */
+    default int updateStateByIdIn(Collection<String> ids, OrderState state) {
+        Set<OrderState> earlierStates = EnumSet.noneOf(OrderState.class);
+        for (OrderState earlier : OrderState.values()) {
+            if (earlier.compareTo(state) < 0) {
+                earlierStates.add(earlier);
+            }
+        }
+        return earlierStates.isEmpty() ? 0 : updateStateByIdInAndStateIn(ids, state, earlierStates);
+    }
+
+    @Modifying
+    @Query("update Order o set o.state = :state where o.id in :ids and o.state in :earlierStates")
+    int updateStateByIdInAndStateIn(@Param("ids") Collection<String> ids, @Param("state") OrderState state,
+                                    @Param("earlierStates") Collection<OrderState> earlierStates);
+
+    interface IdAndState {
+        String getId();
+
+        OrderState getState();
+    }
 }
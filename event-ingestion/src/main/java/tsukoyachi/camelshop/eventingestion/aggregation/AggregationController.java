@@ -0,0 +1,61 @@
+package tsukoyachi.camelshop.eventingestion.aggregation;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read-only access to the {@link WindowedAggregator}, answered from memory:
+ * <ul>
+ *     <li>{@code GET /aggregates/tumbling?count=10&top=10}: the last {@code count} windows of one bucket</li>
+ *     <li>{@code GET /aggregates/sliding?window=15m&top=10}: one window covering the last {@code window}</li>
+ * </ul>
+ */
+@RestController
+@RequestMapping("/aggregates")
+@RequiredArgsConstructor
+public class AggregationController {
+    private final WindowedAggregator aggregator;
+
+    @GetMapping("/tumbling")
+    public List<WindowSnapshot> tumbling(@RequestParam(defaultValue = "10") int count,
+                                         @RequestParam(defaultValue = "10") int top) {
+        if (count <= 0) {
+            throw new IllegalArgumentException("count must be greater than 0");
+        }
+        return aggregator.tumbling(count, checkTop(top));
+    }
+
+    @GetMapping("/sliding")
+    public WindowSnapshot sliding(@RequestParam(defaultValue = "5m") String window,
+                                  @RequestParam(defaultValue = "10") int top) {
+        Duration size = DurationStyle.detectAndParse(window);
+        if (size.isNegative() || size.isZero()) {
+            throw new IllegalArgumentException("window must be positive");
+        }
+        return aggregator.sliding(size, checkTop(top));
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    public Map<String, String> badRequest(IllegalArgumentException e) {
+        return Map.of("error", e.getMessage());
+    }
+
+    private int checkTop(int top) {
+        if (top < 0 || top > aggregator.getMaxTopProducts()) {
+            throw new IllegalArgumentException("top must be between 0 and %d".formatted(aggregator.getMaxTopProducts()));
+        }
+        return top;
+    }
+}
@@ -0,0 +1,66 @@
+package tsukoyachi.camelshop.eventingestion.aggregation;
+
+import java.util.Arrays;
+
+/**
+ * Count-Min sketch over string keys: {@code depth} rows of {@code width} counters, a key is counted in one
+ * counter per row and its estimate is the smallest of them. Estimates never undercount, they overcount by
+ * at most {@code total * e / width} with probability {@code 1 - e^-depth}. Not thread-safe, callers
+ * synchronize.
+ */
+final class CountMinSketch {
+    private final long[][] rows;
+    private final int mask;
+
+    CountMinSketch(int depth, int width) {
+        if (depth <= 0 || width <= 0) {
+            throw new IllegalArgumentException("Sketch depth and width must be greater than 0");
+        }
+        // A power of two width turns the modulo into a mask
+        int columns = width == 1 ? 1 : Integer.highestOneBit(width - 1) << 1;
+        this.rows = new long[depth][columns];
+        this.mask = columns - 1;
+    }
+
+    void add(long hash, long count) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < rows.length; i++) {
+            rows[i][(h1 + i * h2) & mask] += count;
+        }
+    }
+
+    long estimate(long hash) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        long estimate = Long.MAX_VALUE;
+        for (int i = 0; i < rows.length; i++) {
+            estimate = Math.min(estimate, rows[i][(h1 + i * h2) & mask]);
+        }
+        return estimate;
+    }
+
+    void clear() {
+        for (long[] row : rows) {
+            Arrays.fill(row, 0);
+        }
+    }
+
+    /**
+     * 64-bit FNV-1a over the UTF-16 code units, finished with the MurmurHash3 mixer so that both halves of
+     * the result are usable as independent hashes. Computed once per key, then passed to every sketch.
+     */
+    static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,80 @@
+package tsukoyachi.camelshop.eventingestion.aggregation;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Space-Saving summary keeping at most {@code capacity} keys: once full, a new key replaces the one with
+ * the smallest count and inherits that count. Every key counted more than {@code total / capacity} times
+ * is kept, the count of a kept key is an upper bound of its true count. Not thread-safe, callers
+ * synchronize.
+ */
+final class SpaceSaving {
+    private final int capacity;
+    private final Map<String, long[]> counts;
+    // Smallest kept count once full, -1 when it has to be computed again
+    private long smallest = -1;
+
+    SpaceSaving(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Space-Saving capacity must be greater than 0");
+        }
+        this.capacity = capacity;
+        this.counts = new HashMap<>(capacity * 2);
+    }
+
+    void add(String key, long count) {
+        smallest = -1;
+        long[] current = counts.get(key);
+        if (current != null) {
+            current[0] += count;
+            return;
+        }
+        if (counts.size() < capacity) {
+            counts.put(key, new long[]{count});
+            return;
+        }
+
+        // Linear scan, capacity is small and most additions hit a key already kept
+        Map.Entry<String, long[]> replaced = null;
+        for (Map.Entry<String, long[]> entry : counts.entrySet()) {
+            if (replaced == null || entry.getValue()[0] < replaced.getValue()[0]) {
+                replaced = entry;
+            }
+        }
+        long[] reused = counts.remove(replaced.getKey());
+        reused[0] += count;
+        counts.put(key, reused);
+    }
+
+    /**
+     * Upper bound of the count of {@code key}: its count if kept, otherwise 0 while the summary is not
+     * full (nothing was ever replaced) or the smallest kept count.
+     */
+    long upperBound(String key) {
+        long[] current = counts.get(key);
+        if (current != null) {
+            return current[0];
+        }
+        if (counts.size() < capacity) {
+            return 0;
+        }
+        if (smallest < 0) {
+            smallest = Long.MAX_VALUE;
+            for (long[] count : counts.values()) {
+                smallest = Math.min(smallest, count[0]);
+            }
+        }
+        return smallest;
+    }
+
+    Set<String> keys() {
+        return counts.keySet();
+    }
+
+    void clear() {
+        counts.clear();
+        smallest = -1;
+    }
+}
@@ -0,0 +1,22 @@
+package tsukoyachi.camelshop.eventingestion.aggregation;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Aggregates of the events that occurred in {@code [start, end)}. Product counts are estimates, they may
+ * be slightly above the true counts but never below.
+ */
+public record WindowSnapshot(
+        Instant start,
+        Instant end,
+        long orders,
+        long items,
+        BigDecimal revenue,
+        long signups,
+        List<ProductCount> topProducts) {
+
+    public record ProductCount(String productId, long items) {
+    }
+}
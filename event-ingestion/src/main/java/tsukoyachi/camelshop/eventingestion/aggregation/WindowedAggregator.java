@@ -0,0 +1,218 @@
+package tsukoyachi.camelshop.eventingestion.aggregation;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import tsukoyachi.camelshop.common.models.Cart;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Incremental aggregates of the persisted events (orders, items, revenue, signups and top products), kept
+ * in memory so that dashboards never query the database.
+ * <p>
+ * Events are counted in the {@code bucket}-wide window their timestamp falls in. Only the last
+ * {@code retention} worth of windows is kept, in a ring reused as time moves on, so memory does not grow
+ * with the number of events or products. Time is the event time: the most recent window is the one of the
+ * latest event received, older events are still counted in their window as long as it is kept. Tumbling
+ * windows are single buckets, sliding windows are made of the latest buckets and move one bucket at a time.
+ * <p>
+ * Items per product are counted in a Count-Min sketch and a Space-Saving summary of {@code top-products}
+ * keys per bucket. The summaries give the candidates of a top-N, the smallest upper bound of the two gives
+ * their estimated count.
+ */
+@Component
+public class WindowedAggregator {
+    private final long bucketMillis;
+    private final int topProducts;
+    private final Bucket[] buckets;
+    private final Counter lateEvents;
+    private final Counter futureEvents;
+    // Index of the latest bucket, Long.MIN_VALUE until the first event
+    private long head = Long.MIN_VALUE;
+
+    public WindowedAggregator(MeterRegistry meterRegistry,
+                              @Value("${camelshop.aggregation.bucket:1m}") Duration bucket,
+                              @Value("${camelshop.aggregation.retention:1h}") Duration retention,
+                              @Value("${camelshop.aggregation.top-products:64}") int topProducts,
+                              @Value("${camelshop.aggregation.sketch.depth:4}") int sketchDepth,
+                              @Value("${camelshop.aggregation.sketch.width:1024}") int sketchWidth) {
+        if (bucket.toMillis() <= 0 || retention.compareTo(bucket) < 0) {
+            throw new IllegalArgumentException("Aggregation bucket must be positive and not longer than the retention");
+        }
+        this.bucketMillis = bucket.toMillis();
+        this.topProducts = topProducts;
+        this.buckets = new Bucket[(int) (retention.toMillis() / bucketMillis)];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new Bucket(new CountMinSketch(sketchDepth, sketchWidth), new SpaceSaving(topProducts));
+        }
+        this.lateEvents = droppedEvents(meterRegistry, "late");
+        this.futureEvents = droppedEvents(meterRegistry, "future");
+    }
+
+    public Duration getBucket() {
+        return Duration.ofMillis(bucketMillis);
+    }
+
+    public int getMaxTopProducts() {
+        return topProducts;
+    }
+
+    public synchronized void recordSignup(long occurredAt) {
+        Bucket bucket = bucketAt(occurredAt);
+        if (bucket != null) {
+            bucket.signups++;
+        }
+    }
+
+    public synchronized void recordOrder(long occurredAt, Cart cart, BigDecimal revenue) {
+        Bucket bucket = bucketAt(occurredAt);
+        if (bucket == null) {
+            return;
+        }
+        bucket.orders++;
+        bucket.revenue = bucket.revenue.add(revenue);
+        for (int i = 0; i < cart.size(); i++) {
+            String productId = cart.itemId(i);
+            int quantity = cart.quantity(i);
+            bucket.items += quantity;
+            bucket.products.add(CountMinSketch.hash(productId), quantity);
+            bucket.topProducts.add(productId, quantity);
+        }
+    }
+
+    /**
+     * Returns the last {@code count} tumbling windows, the most recent first. Windows without events are
+     * included with zero counts.
+     */
+    public synchronized List<WindowSnapshot> tumbling(int count, int top) {
+        long latest = latestIndex();
+        List<WindowSnapshot> windows = new ArrayList<>();
+        for (long index = latest; index > latest - Math.min(count, buckets.length); index--) {
+            windows.add(snapshot(index, index, top));
+        }
+        return windows;
+    }
+
+    /**
+     * Returns the sliding window of {@code size} (rounded up to whole buckets, at most the retention) that
+     * ends with the most recent bucket.
+     */
+    public synchronized WindowSnapshot sliding(Duration size, int top) {
+        long latest = latestIndex();
+        long count = Math.clamp((size.toMillis() + bucketMillis - 1) / bucketMillis, 1, buckets.length);
+        return snapshot(latest - count + 1, latest, top);
+    }
+
+    /**
+     * Returns the bucket of {@code occurredAt}, moving the most recent window forward if needed, or
+     * {@code null} when the event is older than the retention or more than the retention ahead.
+     */
+    private Bucket bucketAt(long occurredAt) {
+        long index = Math.floorDiv(occurredAt, bucketMillis);
+        if (head != Long.MIN_VALUE && index <= head - buckets.length) {
+            lateEvents.increment();
+            return null;
+        }
+        long now = Math.floorDiv(System.currentTimeMillis(), bucketMillis);
+        if (index > Math.max(head, now) + buckets.length) {
+            // A wrong timestamp far in the future would otherwise wipe every window out
+            futureEvents.increment();
+            return null;
+        }
+        head = Math.max(head, index);
+
+        Bucket bucket = buckets[(int) Math.floorMod(index, (long) buckets.length)];
+        if (bucket.index != index) {
+            bucket.reset(index);
+        }
+        return bucket;
+    }
+
+    private long latestIndex() {
+        return head != Long.MIN_VALUE ? head : Math.floorDiv(System.currentTimeMillis(), bucketMillis);
+    }
+
+    private static Counter droppedEvents(MeterRegistry meterRegistry, String reason) {
+        return Counter.builder("camelshop.aggregation.events.dropped")
+                .description("Events not aggregated because their window is no longer or not yet kept")
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Aggregates the buckets {@code from} to {@code to} (both included), buckets not reached yet or reused
+     * for a later window count as empty.
+     */
+    private WindowSnapshot snapshot(long from, long to, int top) {
+        List<Bucket> window = new ArrayList<>();
+        long orders = 0;
+        long items = 0;
+        long signups = 0;
+        BigDecimal revenue = BigDecimal.ZERO;
+        Set<String> candidates = new HashSet<>();
+        for (long index = from; index <= to; index++) {
+            Bucket bucket = buckets[(int) Math.floorMod(index, (long) buckets.length)];
+            if (bucket.index != index) {
+                continue;
+            }
+            window.add(bucket);
+            orders += bucket.orders;
+            items += bucket.items;
+            signups += bucket.signups;
+            revenue = revenue.add(bucket.revenue);
+            candidates.addAll(bucket.topProducts.keys());
+        }
+
+        List<WindowSnapshot.ProductCount> products = new ArrayList<>(candidates.size());
+        for (String productId : candidates) {
+            long hash = CountMinSketch.hash(productId);
+            long estimate = 0;
+            for (Bucket bucket : window) {
+                estimate += Math.min(bucket.products.estimate(hash), bucket.topProducts.upperBound(productId));
+            }
+            products.add(new WindowSnapshot.ProductCount(productId, estimate));
+        }
+        products.sort(Comparator.comparingLong(WindowSnapshot.ProductCount::items).reversed()
+                .thenComparing(WindowSnapshot.ProductCount::productId));
+
+        return new WindowSnapshot(
+                Instant.ofEpochMilli(from * bucketMillis),
+                Instant.ofEpochMilli((to + 1) * bucketMillis),
+                orders, items, revenue, signups,
+                List.copyOf(products.subList(0, Math.min(Math.max(0, top), products.size()))));
+    }
+
+    private static final class Bucket {
+        private final CountMinSketch products;
+        private final SpaceSaving topProducts;
+        private long index = Long.MIN_VALUE;
+        private long orders;
+        private long items;
+        private long signups;
+        private BigDecimal revenue = BigDecimal.ZERO;
+
+        private Bucket(CountMinSketch products, SpaceSaving topProducts) {
+            this.products = products;
+            this.topProducts = topProducts;
+        }
+
+        private void reset(long index) {
+            this.index = index;
+            orders = 0;
+            items = 0;
+            signups = 0;
+            revenue = BigDecimal.ZERO;
+            products.clear();
+            topProducts.clear();
+        }
+    }
+}
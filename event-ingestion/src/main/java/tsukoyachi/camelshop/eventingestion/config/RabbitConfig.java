@@ -0,0 +1,34 @@
+package tsukoyachi.camelshop.eventingestion.config;
+
+import org.springframework.amqp.core.BindingBuilder;
+import org.springframework.amqp.core.Declarables;
+import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.core.QueueBuilder;
+import org.springframework.amqp.core.TopicExchange;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Same declarations as event-routing, whichever service starts first creates the exchange and the queue
+ * the events go through, and the queue the failed messages are dead-lettered to. Declared by the
+ * RabbitAdmin on the first connection to the broker.
+ */
+@Configuration
+public class RabbitConfig {
+
+    @Bean
+    public Declarables eventDeclarables(@Value("${camelshop.rabbitmq.exchange}") String exchangeName,
+                                        @Value("${camelshop.rabbitmq.queue}") String queueName,
+                                        @Value("${camelshop.rabbitmq.routingKey}") String routingKey,
+                                        @Value("${camelshop.rabbitmq.dead-letter-queue}") String deadLetterQueueName) {
+        TopicExchange exchange = new TopicExchange(exchangeName);
+        Queue queue = QueueBuilder.durable(queueName)
+                .deadLetterExchange("")
+                .deadLetterRoutingKey(deadLetterQueueName)
+                .build();
+        Queue deadLetterQueue = QueueBuilder.durable(deadLetterQueueName).build();
+        return new Declarables(exchange, queue, deadLetterQueue,
+                BindingBuilder.bind(queue).to(exchange).with(routingKey));
+    }
+}
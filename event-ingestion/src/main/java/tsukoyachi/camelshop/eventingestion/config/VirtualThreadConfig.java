@@ -0,0 +1,50 @@
+package tsukoyachi.camelshop.eventingestion.config;
+
+import org.apache.camel.component.springrabbit.DefaultListenerContainerFactory;
+import org.apache.camel.component.springrabbit.SpringRabbitMQComponent;
+import org.apache.camel.component.springrabbit.SpringRabbitMQEndpoint;
+import org.apache.camel.spi.ComponentCustomizer;
+import org.apache.camel.spi.ThreadPoolFactory;
+import org.springframework.amqp.rabbit.listener.AbstractMessageListenerContainer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import tsukoyachi.camelshop.common.concurrent.BoundedVirtualThreadExecutor;
+import tsukoyachi.camelshop.common.concurrent.VirtualThreadPoolFactory;
+
+/**
+ * Opt-in {@code virtual-threads} profile. Camel pools are created by a virtual thread pool factory and
+ * the listener containers of the {@code spring-rabbitmq} consumers run their consumers on virtual threads,
+ * so slow SQLite writes or broker acks no longer pin a platform thread each.
+ */
+@Configuration
+@Profile("virtual-threads")
+public class VirtualThreadConfig {
+    @Value("${camelshop.virtual-threads.max-concurrency:1000}")
+    private int maxConcurrency;
+
+    @Bean
+    public ThreadPoolFactory virtualThreadPoolFactory() {
+        return new VirtualThreadPoolFactory(maxConcurrency);
+    }
+
+    @Bean
+    public BoundedVirtualThreadExecutor rabbitListenerExecutor() {
+        return new BoundedVirtualThreadExecutor("rabbit-listener-", maxConcurrency);
+    }
+
+    @Bean
+    public ComponentCustomizer virtualThreadRabbitCustomizer(BoundedVirtualThreadExecutor rabbitListenerExecutor) {
+        return ComponentCustomizer.builder(SpringRabbitMQComponent.class)
+                .build(component -> component.setListenerContainerFactory(new DefaultListenerContainerFactory() {
+                    @Override
+                    public AbstractMessageListenerContainer createListenerContainer(
+                            SpringRabbitMQEndpoint endpoint) {
+                        AbstractMessageListenerContainer container = super.createListenerContainer(endpoint);
+                        container.setTaskExecutor(rabbitListenerExecutor);
+                        return container;
+                    }
+                }));
+    }
+}
@@ -0,0 +1,232 @@
+package tsukoyachi.camelshop.eventingestion.lifecycle;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import tsukoyachi.camelshop.enums.OrderState;
+import tsukoyachi.camelshop.repository.OrderRepository;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Moves orders through {@link OrderState} (created, paid, delivered) from the order events. States only
+ * go forward: an event for a state the order already reached or passed is ignored.
+ * <p>
+ * The state of each order is kept in memory, in shards guarded by their own lock so that concurrent
+ * consumers rarely wait on each other. Changes are written by {@link #flush()} with one bulk update per
+ * target state, there is no read-modify-write per event. The update itself only moves orders forward, so a
+ * consumer with an outdated view of an order can not move it back. Orders that are not known yet (their payment
+ * came before their creation) are buffered: the batch writer inserts them directly in the buffered state,
+ * or a later flush finds them in the database. Buffered states are dropped after {@code pending-ttl}.
+ * Up to {@code max-orders} settled orders are cached, least recently used ones are evicted first.
+ */
+@Slf4j
+@Component
+public class OrderLifecycleEngine {
+    // SQLite limits the number of bound parameters of a statement
+    private static final int MAX_IDS_PER_STATEMENT = 500;
+
+    private final OrderRepository orderRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final long pendingTtlMillis;
+    private final Shard[] shards;
+
+    public OrderLifecycleEngine(OrderRepository orderRepository,
+                                TransactionTemplate transactionTemplate,
+                                @Value("${camelshop.persistence.lifecycle.shards:16}") int shards,
+                                @Value("${camelshop.persistence.lifecycle.max-orders:100000}") int maxOrders,
+                                @Value("${camelshop.persistence.lifecycle.pending-ttl:10m}") Duration pendingTtl) {
+        if (shards <= 0) {
+            throw new IllegalArgumentException("Lifecycle shards must be greater than 0");
+        }
+        this.orderRepository = orderRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.pendingTtlMillis = pendingTtl.toMillis();
+        this.shards = new Shard[shards];
+        for (int i = 0; i < shards; i++) {
+            this.shards[i] = new Shard(Math.max(1, maxOrders / shards));
+        }
+    }
+
+    /**
+     * Records that the order reached {@code state}.
+     */
+    public void apply(String orderId, OrderState state) {
+        shard(orderId).apply(orderId, state, System.currentTimeMillis());
+    }
+
+    /**
+     * State a new order is inserted with: {@link OrderState#CREATED}, or a later state already received.
+     */
+    public OrderState initialState(String orderId) {
+        return shard(orderId).initialState(orderId);
+    }
+
+    /**
+     * Records that the order was inserted with {@code state}, to be called once the insert is committed.
+     */
+    public void created(String orderId, OrderState state) {
+        shard(orderId).stored(orderId, state);
+    }
+
+    /**
+     * Looks the buffered orders up, writes the state changes and drops the expired buffered states.
+     */
+    public void flush() {
+        List<String> pending = new ArrayList<>();
+        for (Shard shard : shards) {
+            shard.collectPending(pending);
+        }
+        if (!pending.isEmpty()) {
+            resolve(pending);
+        }
+
+        Map<OrderState, List<String>> changes = new EnumMap<>(OrderState.class);
+        for (Shard shard : shards) {
+            shard.collectChanges(changes);
+        }
+        if (!changes.isEmpty()) {
+            transactionTemplate.executeWithoutResult(status -> changes.forEach((state, orderIds) -> {
+                for (List<String> chunk : chunks(orderIds)) {
+                    orderRepository.updateStateByIdIn(chunk, state);
+                }
+            }));
+            changes.forEach((state, orderIds) -> orderIds.forEach(orderId -> shard(orderId).stored(orderId, state)));
+            log.debug("Updated the state of {} order(s)", changes.values().stream().mapToInt(List::size).sum());
+        }
+
+        long expiredBefore = System.currentTimeMillis() - pendingTtlMillis;
+        int expired = 0;
+        for (Shard shard : shards) {
+            expired += shard.expire(expiredBefore);
+        }
+        if (expired > 0) {
+            log.warn("Dropped the state of {} unknown order(s) after {} ms", expired, pendingTtlMillis);
+        }
+    }
+
+    private void resolve(List<String> orderIds) {
+        for (List<String> chunk : chunks(orderIds)) {
+            List<OrderRepository.IdAndState> states = transactionTemplate.execute(status ->
+                    orderRepository.findStatesByIdIn(chunk));
+            for (OrderRepository.IdAndState order : states) {
+                shard(order.getId()).stored(order.getId(), order.getState());
+            }
+        }
+    }
+
+    private Shard shard(String orderId) {
+        return shards[Math.floorMod(orderId.hashCode(), shards.length)];
+    }
+
+    private static List<List<String>> chunks(List<String> ids) {
+        List<List<String>> chunks = new ArrayList<>();
+        for (int start = 0; start < ids.size(); start += MAX_IDS_PER_STATEMENT) {
+            chunks.add(ids.subList(start, Math.min(ids.size(), start + MAX_IDS_PER_STATEMENT)));
+        }
+        return chunks;
+    }
+
+    private static OrderState latest(OrderState current, OrderState candidate) {
+        return current == null || candidate.compareTo(current) > 0 ? candidate : current;
+    }
+
+    /**
+     * State of one order. {@code stored} is the state in the database, {@code null} while the order is not
+     * known to exist; the order needs a write when {@code state} is ahead of it.
+     */
+    private static final class OrderRecord {
+        private OrderState state;
+        private OrderState stored;
+        private final long receivedAt;
+
+        private OrderRecord(long receivedAt) {
+            this.receivedAt = receivedAt;
+        }
+
+        private boolean isSettled() {
+            return stored != null && state == stored;
+        }
+    }
+
+    private static final class Shard {
+        private final Map<String, OrderRecord> records;
+        // Orders not settled yet, never evicted from records
+        private final Set<String> unsettled = new LinkedHashSet<>();
+
+        private Shard(int capacity) {
+            this.records = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, OrderRecord> eldest) {
+                    return size() > capacity && eldest.getValue().isSettled();
+                }
+            };
+        }
+
+        private synchronized void apply(String orderId, OrderState state, long now) {
+            OrderRecord record = records.computeIfAbsent(orderId, id -> new OrderRecord(now));
+            record.state = latest(record.state, state);
+            if (!record.isSettled()) {
+                unsettled.add(orderId);
+            }
+        }
+
+        private synchronized OrderState initialState(String orderId) {
+            OrderRecord record = records.get(orderId);
+            return record == null ? OrderState.CREATED : latest(OrderState.CREATED, record.state);
+        }
+
+        private synchronized void stored(String orderId, OrderState state) {
+            OrderRecord record = records.computeIfAbsent(orderId, id -> new OrderRecord(0));
+            record.stored = latest(record.stored, state);
+            record.state = latest(record.state, record.stored);
+            if (record.isSettled()) {
+                unsettled.remove(orderId);
+            } else {
+                unsettled.add(orderId);
+            }
+        }
+
+        private synchronized void collectPending(List<String> pending) {
+            for (String orderId : unsettled) {
+                if (records.get(orderId).stored == null) {
+                    pending.add(orderId);
+                }
+            }
+        }
+
+        private synchronized void collectChanges(Map<OrderState, List<String>> changes) {
+            for (String orderId : unsettled) {
+                OrderRecord record = records.get(orderId);
+                if (record.stored != null) {
+                    changes.computeIfAbsent(record.state, state -> new ArrayList<>()).add(orderId);
+                }
+            }
+        }
+
+        private synchronized int expire(long receivedBefore) {
+            int expired = 0;
+            Iterator<String> iterator = unsettled.iterator();
+            while (iterator.hasNext()) {
+                String orderId = iterator.next();
+                OrderRecord record = records.get(orderId);
+                if (record.stored == null && record.receivedAt <= receivedBefore) {
+                    log.debug("Order {} is still unknown, dropping its {} state", orderId, record.state);
+                    records.remove(orderId);
+                    iterator.remove();
+                    expired++;
+                }
+            }
+            return expired;
+        }
+    }
+}
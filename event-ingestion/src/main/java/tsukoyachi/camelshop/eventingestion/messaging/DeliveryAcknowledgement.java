@@ -0,0 +1,51 @@
+package tsukoyachi.camelshop.eventingestion.messaging;
+
+import com.rabbitmq.client.Channel;
+import lombok.extern.slf4j.Slf4j;
+import tsukoyachi.camelshop.eventingestion.persistence.Acknowledgement;
+
+import java.io.IOException;
+
+/**
+ * Manual acknowledgement of a RabbitMQ delivery. Acks are cumulative ({@code multiple}): a consumer handles
+ * the deliveries of its channel one after the other, so every earlier delivery of the channel is in the
+ * same batch or in a batch already settled, and a single frame settles them all.
+ * <p>
+ * A failed batch is nacked delivery by delivery. A delivery is requeued once, the batch failed as a whole
+ * and the message may be fine on its own; a redelivered one that fails again is rejected without requeue
+ * and dead-lettered by the broker, so that a failing batch does not come back forever.
+ * <p>
+ * A failure to settle is only logged: the broker redelivers the messages once the channel is closed and
+ * the batch writer skips the rows that already exist.
+ */
+@Slf4j
+record DeliveryAcknowledgement(Channel channel, long deliveryTag, boolean redelivered) implements Acknowledgement {
+
+    @Override
+    public void ack() {
+        try {
+            channel.basicAck(deliveryTag, true);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Unable to ack deliveries up to {}: {}", deliveryTag, e.getMessage());
+        }
+    }
+
+    @Override
+    public void reject(RuntimeException cause) {
+        if (redelivered) {
+            log.error("Dead-lettering delivery {}, its batch failed again: {}", deliveryTag, cause.getMessage());
+        }
+        try {
+            channel.basicNack(deliveryTag, false, !redelivered);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Unable to nack delivery {}: {}", deliveryTag, e.getMessage());
+        }
+    }
+
+    @Override
+    public boolean covers(Acknowledgement earlier) {
+        return earlier instanceof DeliveryAcknowledgement delivery
+                && delivery.channel == channel
+                && delivery.deliveryTag < deliveryTag;
+    }
+}
@@ -0,0 +1,60 @@
+package tsukoyachi.camelshop.eventingestion.messaging;
+
+import com.rabbitmq.client.Channel;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.camel.Exchange;
+import org.apache.camel.Message;
+import org.apache.camel.Processor;
+import org.apache.camel.component.springrabbit.SpringRabbitMQConstants;
+import org.springframework.stereotype.Component;
+import tsukoyachi.camelshop.common.codec.EventCodec;
+import tsukoyachi.camelshop.common.models.ShopEvent;
+import tsukoyachi.camelshop.eventingestion.persistence.EventBatchWriter;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Hands the event batches published by event-routing to the persistence stage. The consumer runs in
+ * manual acknowledgement mode: a message is acked once the batch holding its events is committed, see
+ * {@link DeliveryAcknowledgement} for failed batches. Messages that can not be decoded are rejected
+ * without requeue, they would fail again.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class EventMessageProcessor implements Processor {
+    private final EventBatchWriter batchWriter;
+
+    @Override
+    public void process(Exchange exchange) {
+        Message message = exchange.getIn();
+        Channel channel = message.getHeader(SpringRabbitMQConstants.CHANNEL, Channel.class);
+        long deliveryTag = message.getHeader(SpringRabbitMQConstants.DELIVERY_TAG, Long.class);
+
+        List<ShopEvent> events;
+        try {
+            events = EventCodec.decode(message.getBody(byte[].class));
+        } catch (RuntimeException e) {
+            log.error("Rejecting undecodable message {} from {}: {}", deliveryTag,
+                    message.getHeader(SpringRabbitMQConstants.ROUTING_KEY), e.getMessage());
+            reject(channel, deliveryTag);
+            return;
+        }
+
+        log.debug("Received {} event(s) with routing key {}", events.size(),
+                message.getHeader(SpringRabbitMQConstants.ROUTING_KEY));
+        boolean redelivered = Boolean.TRUE.equals(
+                message.getHeader(SpringRabbitMQConstants.REDELIVERED, Boolean.class));
+        batchWriter.writeAll(events, new DeliveryAcknowledgement(channel, deliveryTag, redelivered));
+    }
+
+    private static void reject(Channel channel, long deliveryTag) {
+        try {
+            channel.basicReject(deliveryTag, false);
+        } catch (IOException e) {
+            log.warn("Unable to reject delivery {}: {}", deliveryTag, e.getMessage());
+        }
+    }
+}
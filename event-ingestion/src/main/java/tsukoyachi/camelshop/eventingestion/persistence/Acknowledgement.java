@@ -0,0 +1,24 @@
+package tsukoyachi.camelshop.eventingestion.persistence;
+
+/**
+ * Settles the source of events handed to the {@link EventBatchWriter} (a broker delivery for instance)
+ * once the batch holding them is committed or rolled back.
+ */
+public interface Acknowledgement {
+
+    void ack();
+
+    /**
+     * Called for every acknowledgement of a failed batch, the source decides whether its events are
+     * delivered again.
+     */
+    void reject(RuntimeException cause);
+
+    /**
+     * Whether acking this acknowledgement also acks {@code earlier}, which then does not need a call of its
+     * own. Lets cumulative acknowledgements replace the ones they cover within a batch.
+     */
+    default boolean covers(Acknowledgement earlier) {
+        return false;
+    }
+}
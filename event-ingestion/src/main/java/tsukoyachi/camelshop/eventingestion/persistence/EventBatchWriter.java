@@ -0,0 +1,279 @@
+package tsukoyachi.camelshop.eventingestion.persistence;
+
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import tsukoyachi.camelshop.common.models.OrderCreatedEvent;
+import tsukoyachi.camelshop.common.models.PaymentProcessedEvent;
+import tsukoyachi.camelshop.common.models.ShipmentDeliveredEvent;
+import tsukoyachi.camelshop.common.models.SignupEvent;
+import tsukoyachi.camelshop.entity.Order;
+import tsukoyachi.camelshop.entity.User;
+import tsukoyachi.camelshop.enums.OrderState;
+import tsukoyachi.camelshop.eventingestion.aggregation.WindowedAggregator;
+import tsukoyachi.camelshop.eventingestion.lifecycle.OrderLifecycleEngine;
+import tsukoyachi.camelshop.repository.OrderRepository;
+import tsukoyachi.camelshop.repository.UserRepository;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Persistence stage for parsed events. Events are buffered and written in batches, a batch is flushed
+ * once it reaches {@code batch-size} events or when {@code flush-interval} elapses, whichever comes first.
+ * Each batch is written in a single transaction and relies on Hibernate JDBC batching, existing rows are
+ * looked up once per batch instead of once per event. Events come with an {@link Acknowledgement}, it
+ * is settled as soon as their batch is committed or rolled back: a failed batch is left to the source of
+ * its events to deliver again, the writer does not keep it.
+ * <p>
+ * Payments and deliveries are applied to the {@link OrderLifecycleEngine} as soon as they are buffered,
+ * its state changes are written after each batch. They do not decide the settlement of the batch: the
+ * changes stay in memory until a flush writes them. The users and orders inserted by a batch are counted
+ * by the {@link WindowedAggregator} once it is committed, events already stored are not counted twice.
+ */
+@Slf4j
+@Component
+public class EventBatchWriter {
+    private final UserRepository userRepository;
+    private final OrderRepository orderRepository;
+    private final ProductPriceCache priceCache;
+    private final OrderLifecycleEngine lifecycleEngine;
+    private final WindowedAggregator aggregator;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final ScheduledExecutorService scheduler;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private final Object bufferLock = new Object();
+    private List<Object> buffer;
+    private List<Acknowledgement> acknowledgements = new ArrayList<>();
+
+    /**
+     * Rows inserted by a batch, events of rows that already existed are left out.
+     */
+    private record PersistedBatch(List<SignupEvent> users, List<PersistedOrder> orders) {
+    }
+
+    private record PersistedOrder(OrderCreatedEvent event, OrderState state, BigDecimal total) {
+    }
+
+    public EventBatchWriter(UserRepository userRepository,
+                            OrderRepository orderRepository,
+                            ProductPriceCache priceCache,
+                            OrderLifecycleEngine lifecycleEngine,
+                            WindowedAggregator aggregator,
+                            TransactionTemplate transactionTemplate,
+                            @Value("${camelshop.persistence.batch-size:500}") int batchSize,
+                            @Value("${camelshop.persistence.flush-interval:1s}") Duration flushInterval) {
+        this.userRepository = userRepository;
+        this.orderRepository = orderRepository;
+        this.priceCache = priceCache;
+        this.lifecycleEngine = lifecycleEngine;
+        this.aggregator = aggregator;
+        this.transactionTemplate = transactionTemplate;
+        this.batchSize = Math.max(1, batchSize);
+        this.buffer = new ArrayList<>(this.batchSize);
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "event-batch-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long intervalMillis = flushInterval.toMillis();
+        scheduler.scheduleWithFixedDelay(this::flushQuietly, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Buffers the events in the same batch, {@code acknowledgement} is settled once the batch is written.
+     * The batch is written on the caller thread when it is full.
+     */
+    public void writeAll(Collection<?> events, Acknowledgement acknowledgement) {
+        events.forEach(this::applyLifecycle);
+        boolean full;
+        synchronized (bufferLock) {
+            buffer.addAll(events);
+            acknowledgements.add(acknowledgement);
+            full = buffer.size() >= batchSize;
+        }
+        if (full) {
+            flush();
+        }
+    }
+
+    /**
+     * Writes the buffered events in one transaction and settles their acknowledgements, then writes the
+     * order state changes. Flushes are serialized: SQLite has a single writer anyway and batches must be
+     * committed in the order the events were received.
+     */
+    public synchronized void flush() {
+        List<Object> batch;
+        List<Acknowledgement> batchAcknowledgements;
+        synchronized (bufferLock) {
+            batch = buffer;
+            batchAcknowledgements = acknowledgements;
+            buffer = new ArrayList<>(batchSize);
+            acknowledgements = new ArrayList<>();
+        }
+
+        if (!batch.isEmpty()) {
+            long start = System.nanoTime();
+            PersistedBatch persisted;
+            try {
+                persisted = transactionTemplate.execute(status -> persistBatch(batch));
+            } catch (RuntimeException e) {
+                batchAcknowledgements.forEach(acknowledgement -> acknowledgement.reject(e));
+                throw e;
+            }
+            ack(batchAcknowledgements);
+            persisted.orders().forEach(order -> lifecycleEngine.created(order.event().orderId(), order.state()));
+            aggregate(persisted);
+            log.info("Persisted batch of {} event(s) in {} ms", batch.size(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        }
+
+        try {
+            // Also run without new events: buffered states may now match an order or have expired
+            lifecycleEngine.flush();
+        } catch (RuntimeException e) {
+            // The changes are still pending, the next flush writes them
+            log.error("Unable to write order state changes: {}", e.getMessage(), e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdown();
+        flushQuietly();
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.error("Unable to persist event batch: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Acks the batch, skipping the acknowledgements settled by a later one.
+     */
+    private static void ack(List<Acknowledgement> batchAcknowledgements) {
+        List<Acknowledgement> settled = new ArrayList<>();
+        for (int i = batchAcknowledgements.size() - 1; i >= 0; i--) {
+            Acknowledgement acknowledgement = batchAcknowledgements.get(i);
+            if (settled.stream().noneMatch(later -> later.covers(acknowledgement))) {
+                acknowledgement.ack();
+                settled.add(acknowledgement);
+            }
+        }
+    }
+
+    private void applyLifecycle(Object event) {
+        switch (event) {
+            case PaymentProcessedEvent payment -> lifecycleEngine.apply(payment.orderId(), OrderState.PAID);
+            case ShipmentDeliveredEvent shipment -> lifecycleEngine.apply(shipment.orderId(), OrderState.DELIVERED);
+            default -> {
+            }
+        }
+    }
+
+    private void aggregate(PersistedBatch persisted) {
+        persisted.users().forEach(signup -> aggregator.recordSignup(signup.createdAt()));
+        persisted.orders().forEach(order ->
+                aggregator.recordOrder(order.event().createdAt(), order.event().cart(), order.total()));
+    }
+
+    private PersistedBatch persistBatch(List<Object> events) {
+        Map<String, SignupEvent> signups = new LinkedHashMap<>();
+        Map<String, OrderCreatedEvent> orders = new LinkedHashMap<>();
+
+        for (Object event : events) {
+            switch (event) {
+                case SignupEvent signup -> signups.putIfAbsent(signup.userId(), signup);
+                case OrderCreatedEvent order -> orders.putIfAbsent(order.orderId(), order);
+                case PaymentProcessedEvent payment -> {
+                    // Applied to the lifecycle engine when buffered
+                }
+                case ShipmentDeliveredEvent shipment -> {
+                    // Applied to the lifecycle engine when buffered
+                }
+                default -> log.warn("Unsupported event type: {}", event.getClass().getName());
+            }
+        }
+
+        List<SignupEvent> users = persistUsers(signups);
+        List<PersistedOrder> created = persistOrders(orders);
+
+        entityManager.flush();
+        entityManager.clear();
+        return new PersistedBatch(users, created);
+    }
+
+    private List<SignupEvent> persistUsers(Map<String, SignupEvent> signups) {
+        if (signups.isEmpty()) {
+            return List.of();
+        }
+
+        Set<String> existing = idsOf(userRepository.findAllById(signups.keySet()), User::getId);
+        List<SignupEvent> created = signups.values().stream()
+                .filter(signup -> !existing.contains(signup.userId()))
+                .toList();
+        created.forEach(signup ->
+                entityManager.persist(new User(signup.userId(), signup.username(), signup.email(), new Date(signup.createdAt()))));
+        return created;
+    }
+
+    private List<PersistedOrder> persistOrders(Map<String, OrderCreatedEvent> orders) {
+        List<PersistedOrder> created = new ArrayList<>();
+        if (orders.isEmpty()) {
+            return created;
+        }
+
+        Set<String> existing = idsOf(orderRepository.findAllById(orders.keySet()), Order::getId);
+        // Warm the price cache for the whole batch, missing prices are loaded with one query
+        priceCache.getPrices(orders.values().stream()
+                .flatMap(order -> order.cart().itemIds().stream())
+                .collect(Collectors.toSet()));
+
+        for (OrderCreatedEvent event : orders.values()) {
+            if (existing.contains(event.orderId())) {
+                continue;
+            }
+
+            User user = entityManager.getReference(User.class, event.userId());
+            BigDecimal total = priceCache.computeTotal(event.orderId(), event.cart());
+            // A payment or a delivery received before the order makes it start further along
+            OrderState state = lifecycleEngine.initialState(event.orderId());
+            Order order = new Order(event.orderId(), user, state, total, new Date(event.createdAt()));
+            event.cart().forEach(order::addItem);
+            entityManager.persist(order);
+            created.add(new PersistedOrder(event, state, total));
+        }
+        return created;
+    }
+
+    private static <T> Set<String> idsOf(List<T> entities, Function<T, String> idExtractor) {
+        Set<String> ids = new HashSet<>();
+        entities.forEach(entity -> ids.add(idExtractor.apply(entity)));
+        return ids;
+    }
+}
@@ -0,0 +1,95 @@
+package tsukoyachi.camelshop.eventingestion.persistence;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import tsukoyachi.camelshop.common.models.Cart;
+import tsukoyachi.camelshop.entity.Product;
+import tsukoyachi.camelshop.repository.ProductRepository;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * In-process cache of product prices in front of {@link ProductRepository}. The cache is bounded in size
+ * (least recently used prices are evicted first) and entries expire after {@code ttl}, so price changes
+ * are eventually picked up. Missing prices are loaded in bulk with a single query. Unknown products are
+ * cached too, as empty entries with the same ttl, so that an order for one does not query it every time.
+ */
+@Slf4j
+@Component
+public class ProductPriceCache {
+    private final ProductRepository productRepository;
+    private final Cache<String, Optional<BigDecimal>> prices;
+
+    public ProductPriceCache(ProductRepository productRepository,
+                             MeterRegistry meterRegistry,
+                             @Value("${camelshop.persistence.price-cache.max-size:10000}") long maxSize,
+                             @Value("${camelshop.persistence.price-cache.ttl:10m}") Duration ttl) {
+        this.productRepository = productRepository;
+        this.prices = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        // Hits, misses, loads and evictions are published as cache.* meters
+        CaffeineCacheMetrics.monitor(meterRegistry, prices, "productPrices");
+    }
+
+    /**
+     * Returns the known prices of the given products. Only the ids that are not cached are read from the
+     * database, unknown products are absent from the result.
+     */
+    public Map<String, BigDecimal> getPrices(Collection<String> productIds) {
+        Map<String, BigDecimal> known = new HashMap<>();
+        prices.getAll(productIds, this::loadPrices)
+                .forEach((productId, price) -> price.ifPresent(value -> known.put(productId, value)));
+        return known;
+    }
+
+    /**
+     * Sums {@code price * quantity} over the cart lines, lines of unknown products are not counted.
+     */
+    public BigDecimal computeTotal(String orderId, Cart cart) {
+        Map<String, BigDecimal> cartPrices = getPrices(cart.itemIds());
+
+        BigDecimal total = BigDecimal.ZERO;
+        for (int i = 0; i < cart.size(); i++) {
+            BigDecimal price = cartPrices.get(cart.itemId(i));
+            if (price == null) {
+                log.warn("Unknown product {} in order {}, it is not counted in the total", cart.itemId(i), orderId);
+                continue;
+            }
+            total = total.add(price.multiply(BigDecimal.valueOf(cart.quantity(i))));
+        }
+        return total;
+    }
+
+    public void invalidate(String productId) {
+        prices.invalidate(productId);
+    }
+
+    public CacheStats stats() {
+        return prices.stats();
+    }
+
+    private Map<String, Optional<BigDecimal>> loadPrices(Set<? extends String> productIds) {
+        Map<String, BigDecimal> loaded = productRepository.findAllById(Set.copyOf(productIds)).stream()
+                .collect(Collectors.toMap(Product::getId, Product::getPrice));
+        log.debug("Loaded {} of {} missing product price(s)", loaded.size(), productIds.size());
+        Map<String, Optional<BigDecimal>> entries = new HashMap<>();
+        productIds.forEach(productId -> entries.put(productId, Optional.ofNullable(loaded.get(productId))));
+        return entries;
+    }
+}
@@ -1,25 +1,34 @@
 package tsukoyachi.camelshop.eventingestion.route;
 
+import lombok.RequiredArgsConstructor;
 import org.apache.camel.builder.RouteBuilder;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import tsukoyachi.camelshop.eventingestion.messaging.EventMessageProcessor;
 
 @Component
+@RequiredArgsConstructor
 public class EventRoute extends RouteBuilder {
+    private final EventMessageProcessor eventMessageProcessor;
+
     @Value("${camelshop.rabbitmq.queue}")
     private String queueName;
     @Value("${camelshop.rabbitmq.exchange}")
     private String exchangeName;
+    @Value("${camelshop.rabbitmq.consumer.concurrency:4}")
+    private int concurrency;
+    @Value("${camelshop.rabbitmq.consumer.max-concurrency:8}")
+    private int maxConcurrency;
+    @Value("${camelshop.rabbitmq.consumer.prefetch:32}")
+    private int prefetch;
 
     @Override
     public void configure() throws Exception {
-        // Some test for camel setup with rabbitmq instead of classic rabbitmq listener
-        from("spring-rabbitmq:" + exchangeName + "?queues=" + queueName)
-            .log("Received message from RabbitMQ: ${body}")
-            .choice()
-                .when(body().contains("Camel"))
-                    .log("Message is true")
-                .otherwise()
-                    .log("Message is not true");
+        // Exchange and queue are declared by RabbitConfig, messages are acked by the batch writer.
+        // The simple container is the one scaling consumers between concurrency and max-concurrency.
+        from("spring-rabbitmq:%s?queues=%s&autoDeclare=false&acknowledgeMode=MANUAL&messageListenerContainerType=SMLC&concurrentConsumers=%d&maxConcurrentConsumers=%d&prefetchCount=%d"
+                .formatted(exchangeName, queueName, concurrency, Math.max(concurrency, maxConcurrency), prefetch))
+            .routeId("EventRoute")
+            .process(eventMessageProcessor);
     }
 }
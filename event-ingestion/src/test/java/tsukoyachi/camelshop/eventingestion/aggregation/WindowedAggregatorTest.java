@@ -0,0 +1,78 @@
+package tsukoyachi.camelshop.eventingestion.aggregation;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import tsukoyachi.camelshop.common.models.Cart;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class WindowedAggregatorTest {
+    private static final long MINUTE = 60_000L;
+    private static final long START = Instant.parse("2025-01-01T10:00:00Z").toEpochMilli();
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void aggregatesTumblingAndSlidingWindows() {
+        WindowedAggregator aggregator = aggregator(Duration.ofMinutes(10), 8);
+        aggregator.recordSignup(START + 1_000);
+        aggregator.recordOrder(START + 2_000, Cart.of(Map.of("P1", 2, "P2", 1)), new BigDecimal("25.00"));
+        aggregator.recordOrder(START + MINUTE + 5_000, Cart.of(Map.of("P1", 1)), new BigDecimal("10.00"));
+        aggregator.recordOrder(START + 2 * MINUTE, Cart.of(Map.of("P3", 5)), new BigDecimal("5.50"));
+
+        List<WindowSnapshot> tumbling = aggregator.tumbling(3, 10);
+        assertThat(tumbling).extracting(WindowSnapshot::start).containsExactly(
+                Instant.ofEpochMilli(START + 2 * MINUTE), Instant.ofEpochMilli(START + MINUTE), Instant.ofEpochMilli(START));
+        assertThat(tumbling.get(2).orders()).isEqualTo(1);
+        assertThat(tumbling.get(2).items()).isEqualTo(3);
+        assertThat(tumbling.get(2).signups()).isEqualTo(1);
+        assertThat(tumbling.get(2).revenue()).isEqualByComparingTo("25.00");
+
+        WindowSnapshot lastTwoMinutes = aggregator.sliding(Duration.ofMinutes(2), 10);
+        assertThat(lastTwoMinutes.start()).isEqualTo(Instant.ofEpochMilli(START + MINUTE));
+        assertThat(lastTwoMinutes.orders()).isEqualTo(2);
+        assertThat(lastTwoMinutes.revenue()).isEqualByComparingTo("15.50");
+        assertThat(lastTwoMinutes.signups()).isZero();
+
+        WindowSnapshot all = aggregator.sliding(Duration.ofHours(1), 2);
+        assertThat(all.start()).isEqualTo(Instant.ofEpochMilli(START - 7 * MINUTE));
+        assertThat(all.orders()).isEqualTo(3);
+        assertThat(all.topProducts()).containsExactly(
+                new WindowSnapshot.ProductCount("P3", 5), new WindowSnapshot.ProductCount("P1", 3));
+    }
+
+    @Test
+    void keepsHeavyHittersWithBoundedMemory() {
+        WindowedAggregator aggregator = aggregator(Duration.ofMinutes(5), 4);
+        for (int i = 0; i < 1_000; i++) {
+            aggregator.recordOrder(START, Cart.of(Map.of("HOT", 3, "WARM", 1, "TAIL" + i, 1)), BigDecimal.ONE);
+        }
+
+        List<WindowSnapshot.ProductCount> top = aggregator.sliding(Duration.ofMinutes(1), 2).topProducts();
+        assertThat(top).extracting(WindowSnapshot.ProductCount::productId).containsExactly("HOT", "WARM");
+        assertThat(top.get(0).items()).isEqualTo(3_000);
+        assertThat(top.get(1).items()).isEqualTo(1_000);
+    }
+
+    @Test
+    void dropsEventsOlderThanTheRetention() {
+        WindowedAggregator aggregator = aggregator(Duration.ofMinutes(5), 4);
+        aggregator.recordSignup(START + 10 * MINUTE);
+        aggregator.recordSignup(START + 6 * MINUTE);
+        aggregator.recordSignup(START);
+
+        assertThat(aggregator.sliding(Duration.ofHours(1), 0).signups()).isEqualTo(2);
+        assertThat(meterRegistry.get("camelshop.aggregation.events.dropped").tag("reason", "late").counter().count())
+                .isEqualTo(1);
+    }
+
+    private WindowedAggregator aggregator(Duration retention, int topProducts) {
+        return new WindowedAggregator(meterRegistry, Duration.ofMinutes(1), retention, topProducts, 4, 1024);
+    }
+}
@@ -0,0 +1,107 @@
+package tsukoyachi.camelshop.eventingestion.lifecycle;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+import tsukoyachi.camelshop.common.models.Cart;
+import tsukoyachi.camelshop.common.models.OrderCreatedEvent;
+import tsukoyachi.camelshop.common.models.PaymentProcessedEvent;
+import tsukoyachi.camelshop.common.models.ShipmentDeliveredEvent;
+import tsukoyachi.camelshop.common.models.SignupEvent;
+import tsukoyachi.camelshop.entity.Order;
+import tsukoyachi.camelshop.enums.OrderState;
+import tsukoyachi.camelshop.eventingestion.persistence.Acknowledgement;
+import tsukoyachi.camelshop.eventingestion.persistence.EventBatchWriter;
+import tsukoyachi.camelshop.repository.OrderRepository;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+@SpringBootTest(properties = {
+        "camelshop.datasource.url=jdbc:sqlite:target/order-lifecycle-engine-test.db",
+        "camelshop.persistence.batch-size=100",
+        "camelshop.persistence.flush-interval=1h"
+})
+class OrderLifecycleEngineTest {
+    @Autowired
+    private EventBatchWriter batchWriter;
+    @Autowired
+    private OrderRepository orderRepository;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Test
+    void movesOrdersForwardWhateverTheOrderOfTheirEvents() {
+        String prefix = UUID.randomUUID().toString();
+        String userId = prefix + "-U";
+        String early = prefix + "-EARLY";
+        String late = prefix + "-LATE";
+
+        // Payment and delivery before the order is created
+        write(new ShipmentDeliveredEvent(userId, early, "P1", 3L));
+        write(new PaymentProcessedEvent(early, userId, "B1", 2L));
+        batchWriter.flush();
+        assertThat(orderRepository.findById(early)).isEmpty();
+
+        write(new SignupEvent(userId, "lifecycle", prefix + "@camelshop.com", 0L));
+        write(order(early, userId));
+        write(order(late, userId));
+        batchWriter.flush();
+        assertThat(state(early)).isEqualTo(OrderState.DELIVERED);
+        assertThat(state(late)).isEqualTo(OrderState.CREATED);
+
+        // A late payment does not move a delivered order back
+        write(new ShipmentDeliveredEvent(userId, late, "P2", 5L));
+        write(new PaymentProcessedEvent(late, userId, "B2", 4L));
+        batchWriter.flush();
+        assertThat(state(late)).isEqualTo(OrderState.DELIVERED);
+    }
+
+    @Test
+    void neverMovesAnOrderBackInTheDatabase() {
+        String prefix = UUID.randomUUID().toString();
+        String userId = prefix + "-U";
+        String orderId = prefix + "-O";
+        write(new SignupEvent(userId, "lifecycle", prefix + "@camelshop.com", 0L));
+        write(order(orderId, userId));
+        write(new ShipmentDeliveredEvent(userId, orderId, "P1", 3L));
+        batchWriter.flush();
+
+        // Another consumer that saw the order created, but not delivered
+        OrderLifecycleEngine stale = new OrderLifecycleEngine(orderRepository, transactionTemplate, 2, 10, Duration.ofHours(1));
+        stale.created(orderId, OrderState.CREATED);
+        stale.apply(orderId, OrderState.PAID);
+        stale.flush();
+
+        assertThat(state(orderId)).isEqualTo(OrderState.DELIVERED);
+    }
+
+    @Test
+    void dropsBufferedStatesOfOrdersThatNeverShowUp() {
+        OrderLifecycleEngine engine = new OrderLifecycleEngine(orderRepository, transactionTemplate, 2, 10, Duration.ZERO);
+        engine.apply("MISSING", OrderState.PAID);
+        assertThat(engine.initialState("MISSING")).isEqualTo(OrderState.PAID);
+
+        engine.flush();
+
+        assertThat(engine.initialState("MISSING")).isEqualTo(OrderState.CREATED);
+    }
+
+    private void write(Object event) {
+        batchWriter.writeAll(List.of(event), mock(Acknowledgement.class));
+    }
+
+    private OrderState state(String orderId) {
+        return orderRepository.findById(orderId).map(Order::getState).orElseThrow();
+    }
+
+    private static OrderCreatedEvent order(String orderId, String userId) {
+        return new OrderCreatedEvent(orderId, userId, Cart.of(Map.of("ITEM1", 1)), 1L);
+    }
+}
@@ -0,0 +1,171 @@
+package tsukoyachi.camelshop.eventingestion.messaging;
+
+import com.rabbitmq.client.Channel;
+import org.apache.camel.CamelContext;
+import org.apache.camel.Exchange;
+import org.apache.camel.ProducerTemplate;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.component.springrabbit.SpringRabbitMQConstants;
+import org.apache.camel.support.DefaultExchange;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import tsukoyachi.camelshop.common.codec.EventCodec;
+import tsukoyachi.camelshop.common.models.SignupEvent;
+import tsukoyachi.camelshop.eventingestion.persistence.EventBatchWriter;
+import tsukoyachi.camelshop.repository.UserRepository;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+@SpringBootTest(properties = {
+        "camelshop.datasource.url=jdbc:sqlite:target/event-message-processor-test.db",
+        "camelshop.persistence.batch-size=100",
+        "camelshop.persistence.flush-interval=1h"
+})
+class EventMessageProcessorTest {
+    private static final int DELIVERIES = 60;
+    private static final int EVENTS_PER_DELIVERY = 5;
+    private static final long DELIVERY_LATENCY_MILLIS = 40;
+
+    @Autowired
+    private EventMessageProcessor processor;
+    @Autowired
+    private EventBatchWriter batchWriter;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private CamelContext camelContext;
+
+    @Test
+    void acksEveryDeliveryOfTheBatchAtOnceAfterTheCommit() throws IOException {
+        Channel channel = mock(Channel.class);
+        for (long tag = 1; tag <= 3; tag++) {
+            processor.process(delivery(channel, tag, EventCodec.encode(List.of(signup("ACK-USER" + tag)))));
+        }
+        verify(channel, never()).basicAck(anyLong(), anyBoolean());
+
+        batchWriter.flush();
+
+        verify(channel).basicAck(3, true);
+        verify(channel, never()).basicAck(1, true);
+        verify(channel, never()).basicAck(2, true);
+        assertThat(userRepository.findAllById(List.of("ACK-USER1", "ACK-USER2", "ACK-USER3"))).hasSize(3);
+    }
+
+    @Test
+    void requeuesAFailedBatchOnceThenDeadLettersIt() throws IOException {
+        Channel channel = mock(Channel.class);
+        // Same email twice, the unique constraint fails the batch
+        SignupEvent first = new SignupEvent("NACK-USER1", "nack", "nack@camelshop.com", 1_756_894_500_000L);
+        SignupEvent second = new SignupEvent("NACK-USER2", "nack", "nack@camelshop.com", 1_756_894_500_000L);
+        processor.process(delivery(channel, 1, EventCodec.encode(List.of(first)), false));
+        processor.process(delivery(channel, 2, EventCodec.encode(List.of(second)), true));
+
+        assertThatThrownBy(batchWriter::flush).isInstanceOf(RuntimeException.class);
+
+        verify(channel).basicNack(1, false, true);
+        verify(channel).basicNack(2, false, false);
+        verify(channel, never()).basicAck(anyLong(), anyBoolean());
+        assertThat(userRepository.findAllById(List.of("NACK-USER1", "NACK-USER2"))).isEmpty();
+    }
+
+    @Test
+    void consumesFasterWithMoreConsumers() throws Exception {
+        // The first run pays for the JIT and the first commits
+        deliveriesPerSecond(2);
+        double single = deliveriesPerSecond(1);
+        double concurrent = deliveriesPerSecond(4);
+
+        // The other consumers keep receiving while one of them waits on the broker or commits a batch
+        assertThat(concurrent).isGreaterThan(2 * single);
+    }
+
+    @Test
+    void rejectsUndecodableMessagesWithoutRequeue() throws IOException {
+        Channel channel = mock(Channel.class);
+
+        processor.process(delivery(channel, 7, new byte[]{42}));
+
+        verify(channel).basicReject(7, false);
+    }
+
+    /**
+     * Rate at which {@code consumers} consumers take {@link #DELIVERIES} messages through the processor and
+     * the batch writer. A seda queue stands in for the broker, each delivery costs its consumer a round trip.
+     */
+    private double deliveriesPerSecond(int consumers) throws Exception {
+        String uri = "seda:broker-%d?concurrentConsumers=%d&size=%d&pollTimeout=10"
+                .formatted(consumers, consumers, DELIVERIES);
+        String routeId = "broker-" + consumers;
+        CountDownLatch consumed = new CountDownLatch(DELIVERIES);
+        camelContext.addRoutes(new RouteBuilder() {
+            @Override
+            public void configure() {
+                from(uri).routeId(routeId).autoStartup(false)
+                        .process(exchange -> Thread.sleep(DELIVERY_LATENCY_MILLIS))
+                        .process(processor)
+                        .process(exchange -> consumed.countDown());
+            }
+        });
+
+        Channel channel = mock(Channel.class);
+        List<String> userIds = new ArrayList<>();
+        try (ProducerTemplate producer = camelContext.createProducerTemplate()) {
+            for (int tag = 1; tag <= DELIVERIES; tag++) {
+                List<SignupEvent> events = new ArrayList<>();
+                for (int i = 0; i < EVENTS_PER_DELIVERY; i++) {
+                    events.add(signup("SCALE%d-USER%d-%d".formatted(consumers, tag, i)));
+                }
+                events.forEach(event -> userIds.add(event.userId()));
+                producer.send(uri, delivery(channel, tag, EventCodec.encode(events)));
+            }
+        }
+
+        Duration elapsed;
+        try {
+            long start = System.nanoTime();
+            camelContext.getRouteController().startRoute(routeId);
+            assertThat(consumed.await(30, TimeUnit.SECONDS)).isTrue();
+            batchWriter.flush();
+            elapsed = Duration.ofNanos(System.nanoTime() - start);
+        } finally {
+            camelContext.getRouteController().stopRoute(routeId);
+            camelContext.removeRoute(routeId);
+        }
+        double rate = DELIVERIES / (elapsed.toMillis() / 1_000.0);
+
+        assertThat(userRepository.findAllById(userIds)).hasSize(DELIVERIES * EVENTS_PER_DELIVERY);
+        return rate;
+    }
+
+    private Exchange delivery(Channel channel, long deliveryTag, byte[] body) {
+        return delivery(channel, deliveryTag, body, false);
+    }
+
+    private Exchange delivery(Channel channel, long deliveryTag, byte[] body, boolean redelivered) {
+        Exchange exchange = new DefaultExchange(camelContext);
+        exchange.getIn().setHeader(SpringRabbitMQConstants.REDELIVERED, redelivered);
+        exchange.getIn().setHeader(SpringRabbitMQConstants.CHANNEL, channel);
+        exchange.getIn().setHeader(SpringRabbitMQConstants.DELIVERY_TAG, deliveryTag);
+        exchange.getIn().setHeader(SpringRabbitMQConstants.ROUTING_KEY, "camelshop.signup");
+        exchange.getIn().setBody(body);
+        return exchange;
+    }
+
+    private static SignupEvent signup(String userId) {
+        return new SignupEvent(userId, userId.toLowerCase(), userId.toLowerCase() + "@camelshop.com", 1_756_894_500_000L);
+    }
+}
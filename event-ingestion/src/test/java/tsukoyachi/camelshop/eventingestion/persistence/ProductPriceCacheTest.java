@@ -0,0 +1,36 @@
+package tsukoyachi.camelshop.eventingestion.persistence;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import tsukoyachi.camelshop.entity.Product;
+import tsukoyachi.camelshop.repository.ProductRepository;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ProductPriceCacheTest {
+    private final ProductRepository productRepository = mock(ProductRepository.class);
+    private final ProductPriceCache cache =
+            new ProductPriceCache(productRepository, new SimpleMeterRegistry(), 100, Duration.ofMinutes(10));
+
+    @Test
+    void cachesUnknownProductsToo() {
+        when(productRepository.findAllById(any()))
+                .thenReturn(List.of(new Product("ITEM1", "Mug", new BigDecimal("4.50"))));
+
+        assertThat(cache.getPrices(Set.of("ITEM1", "GHOST"))).containsOnlyKeys("ITEM1");
+        assertThat(cache.getPrices(Set.of("ITEM1", "GHOST"))).containsOnlyKeys("ITEM1");
+        assertThat(cache.getPrices(Set.of("GHOST"))).isEmpty();
+
+        verify(productRepository, times(1)).findAllById(any());
+    }
+}
@@ -0,0 +1,288 @@
+package tsukoyachi.camelshop.benchmark;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates input files in the formats accepted by event-routing. Users sign up then place orders that
+ * are paid and delivered, carts hold 1 to 8 lines of 1 to 5 units. The sequence is seeded, a file only
+ * depends on its number of events and is cached between benchmark runs.
+ */
+public final class EventFileGenerator {
+    private static final Path CACHE_DIRECTORY = Path.of(System.getProperty("java.io.tmpdir"), "camelshop-benchmark");
+    private static final Instant START = Instant.parse("2025-09-01T00:00:00Z");
+    private static final int MAX_CART_LINES = 8;
+    private static final int MAX_QUANTITY = 5;
+    private static final int PRODUCTS = 500;
+
+    private EventFileGenerator() {
+    }
+
+    /**
+     * Returns a file holding {@code events} events, it is generated on first use.
+     */
+    public static Path file(InputFormat format, int events) {
+        Path file = CACHE_DIRECTORY.resolve("events-%d.%s".formatted(events, format.extension()));
+        if (Files.exists(file)) {
+            return file;
+        }
+
+        try {
+            Files.createDirectories(CACHE_DIRECTORY);
+            Path partial = Files.createTempFile(CACHE_DIRECTORY, "events-", ".tmp");
+            try (BufferedWriter writer = Files.newBufferedWriter(partial, StandardCharsets.UTF_8)) {
+                write(writer, format, events, -1);
+            }
+            Files.move(partial, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return file;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to generate %s".formatted(file), e);
+        }
+    }
+
+    /**
+     * Returns the first {@code count} events of the generated sequence, each one as a document of its own.
+     */
+    public static List<byte[]> singleEventDocuments(InputFormat format, int count) {
+        List<byte[]> documents = new ArrayList<>(count);
+        try {
+            for (int i = 0; i < count; i++) {
+                StringWriter writer = new StringWriter();
+                write(new BufferedWriter(writer), format, i + 1, i);
+                documents.add(writer.toString().getBytes(StandardCharsets.UTF_8));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return documents;
+    }
+
+    /**
+     * Writes the first {@code events} events of the sequence, or only the one at index {@code only}
+     * when it is not negative.
+     */
+    private static void write(BufferedWriter writer, InputFormat format, int events, int only) throws IOException {
+        EventWriter eventWriter = switch (format) {
+            case CSV, CSV_MAPPED -> new CsvEventWriter(writer);
+            case JSON -> new JsonEventWriter(writer);
+            case XML, XML_DOM -> new XmlEventWriter(writer);
+        };
+
+        Random random = new Random(42L);
+        eventWriter.begin();
+        int index = 0;
+        int user = 0;
+        int order = 0;
+        Instant time = START;
+        while (index < events) {
+            String userId = "USER%d".formatted(user++);
+            if (only < 0 || index == only) {
+                eventWriter.signup(userId, time);
+            }
+            index++;
+
+            // Each order produces up to three events: created, paid and delivered
+            int orders = 1 + random.nextInt(3);
+            for (int i = 0; i < orders && index < events; i++) {
+                String orderId = "ORDER%d".formatted(order++);
+                time = time.plusSeconds(1 + random.nextInt(60));
+                int[][] cart = cart(random);
+                if (only < 0 || index == only) {
+                    eventWriter.orderCreated(userId, orderId, cart, time);
+                }
+                index++;
+                if (index < events && (only < 0 || index == only)) {
+                    eventWriter.paymentProcessed(userId, orderId, "BILL%d".formatted(order), time.plusSeconds(30));
+                }
+                index++;
+                if (index < events && (only < 0 || index == only)) {
+                    eventWriter.shipmentDelivered(userId, orderId, "PARCEL%d".formatted(order), time.plusSeconds(86_400));
+                }
+                index++;
+            }
+        }
+        eventWriter.end();
+        writer.flush();
+    }
+
+    private static int[][] cart(Random random) {
+        int[][] lines = new int[1 + random.nextInt(MAX_CART_LINES)][];
+        for (int i = 0; i < lines.length; i++) {
+            // The line index is part of the product id so that the items of a cart stay distinct
+            lines[i] = new int[]{random.nextInt(PRODUCTS) * MAX_CART_LINES + i, 1 + random.nextInt(MAX_QUANTITY)};
+        }
+        return lines;
+    }
+
+    private interface EventWriter {
+        void begin() throws IOException;
+
+        void signup(String userId, Instant createdAt) throws IOException;
+
+        void orderCreated(String userId, String orderId, int[][] cart, Instant createdAt) throws IOException;
+
+        void paymentProcessed(String userId, String orderId, String billId, Instant processedAt) throws IOException;
+
+        void shipmentDelivered(String userId, String orderId, String parcelId, Instant deliveredAt) throws IOException;
+
+        void end() throws IOException;
+    }
+
+    private record CsvEventWriter(BufferedWriter writer) implements EventWriter {
+        @Override
+        public void begin() {
+        }
+
+        @Override
+        public void signup(String userId, Instant createdAt) throws IOException {
+            writer.write("signup,%s,%s,%s@camelshop.com,%s\n".formatted(userId, userId.toLowerCase(), userId.toLowerCase(), createdAt));
+        }
+
+        @Override
+        public void orderCreated(String userId, String orderId, int[][] cart, Instant createdAt) throws IOException {
+            StringBuilder items = new StringBuilder();
+            for (int[] line : cart) {
+                if (!items.isEmpty()) {
+                    items.append('|');
+                }
+                items.append("ITEM").append(line[0]).append(':').append(line[1]);
+            }
+            writer.write("order_created,%s,%s,\"%s\",%s\n".formatted(userId, orderId, items, createdAt));
+        }
+
+        @Override
+        public void paymentProcessed(String userId, String orderId, String billId, Instant processedAt) throws IOException {
+            writer.write("payment_processed,%s,%s,%s,%s\n".formatted(userId, orderId, billId, processedAt));
+        }
+
+        @Override
+        public void shipmentDelivered(String userId, String orderId, String parcelId, Instant deliveredAt) throws IOException {
+            writer.write("shipment_delivered,%s,%s,%s,%s\n".formatted(userId, orderId, parcelId, deliveredAt));
+        }
+
+        @Override
+        public void end() {
+        }
+    }
+
+    private static final class JsonEventWriter implements EventWriter {
+        private final BufferedWriter writer;
+        private boolean first = true;
+
+        private JsonEventWriter(BufferedWriter writer) {
+            this.writer = writer;
+        }
+
+        @Override
+        public void begin() throws IOException {
+            writer.write("[\n");
+        }
+
+        @Override
+        public void signup(String userId, Instant createdAt) throws IOException {
+            object("""
+                    {"eventType":"signup","userId":"%s","username":"%s","email":"%s@camelshop.com","createdAt":"%s"}"""
+                    .formatted(userId, userId.toLowerCase(), userId.toLowerCase(), createdAt));
+        }
+
+        @Override
+        public void orderCreated(String userId, String orderId, int[][] cart, Instant createdAt) throws IOException {
+            StringBuilder items = new StringBuilder();
+            for (int[] line : cart) {
+                if (!items.isEmpty()) {
+                    items.append(',');
+                }
+                items.append("{\"itemId\":\"ITEM").append(line[0]).append("\",\"quantity\":").append(line[1]).append('}');
+            }
+            object("""
+                    {"eventType":"order_created","userId":"%s","orderId":"%s","items":[%s],"createdAt":"%s"}"""
+                    .formatted(userId, orderId, items, createdAt));
+        }
+
+        @Override
+        public void paymentProcessed(String userId, String orderId, String billId, Instant processedAt) throws IOException {
+            object("""
+                    {"eventType":"payment_processed","userId":"%s","orderId":"%s","billId":"%s","processedAt":"%s"}"""
+                    .formatted(userId, orderId, billId, processedAt));
+        }
+
+        @Override
+        public void shipmentDelivered(String userId, String orderId, String parcelId, Instant deliveredAt) throws IOException {
+            object("""
+                    {"eventType":"shipment_delivered","userId":"%s","orderId":"%s","parcelId":"%s","deliveredAt":"%s"}"""
+                    .formatted(userId, orderId, parcelId, deliveredAt));
+        }
+
+        @Override
+        public void end() throws IOException {
+            writer.write("\n]\n");
+        }
+
+        private void object(String json) throws IOException {
+            if (!first) {
+                writer.write(",\n");
+            }
+            first = false;
+            writer.write(json);
+        }
+    }
+
+    private record XmlEventWriter(BufferedWriter writer) implements EventWriter {
+        @Override
+        public void begin() throws IOException {
+            writer.write("<events>\n");
+        }
+
+        @Override
+        public void signup(String userId, Instant createdAt) throws IOException {
+            writer.write("""
+                    <event><eventType>signup</eventType><userId>%s</userId><username>%s</username>\
+                    <email>%s@camelshop.com</email><createdAt>%s</createdAt></event>
+                    """.formatted(userId, userId.toLowerCase(), userId.toLowerCase(), createdAt));
+        }
+
+        @Override
+        public void orderCreated(String userId, String orderId, int[][] cart, Instant createdAt) throws IOException {
+            StringBuilder items = new StringBuilder();
+            for (int[] line : cart) {
+                items.append("<item><itemId>ITEM").append(line[0]).append("</itemId><quantity>")
+                        .append(line[1]).append("</quantity></item>");
+            }
+            writer.write("""
+                    <event><eventType>order_created</eventType><userId>%s</userId><orderId>%s</orderId>\
+                    <items>%s</items><createdAt>%s</createdAt></event>
+                    """.formatted(userId, orderId, items, createdAt));
+        }
+
+        @Override
+        public void paymentProcessed(String userId, String orderId, String billId, Instant processedAt) throws IOException {
+            writer.write("""
+                    <event><eventType>payment_processed</eventType><userId>%s</userId><orderId>%s</orderId>\
+                    <billId>%s</billId><createdAt>%s</createdAt></event>
+                    """.formatted(userId, orderId, billId, processedAt));
+        }
+
+        @Override
+        public void shipmentDelivered(String userId, String orderId, String parcelId, Instant deliveredAt) throws IOException {
+            writer.write("""
+                    <event><eventType>shipment_delivered</eventType><userId>%s</userId><orderId>%s</orderId>\
+                    <parcelId>%s</parcelId><createdAt>%s</createdAt></event>
+                    """.formatted(userId, orderId, parcelId, deliveredAt));
+        }
+
+        @Override
+        public void end() throws IOException {
+            writer.write("</events>\n");
+        }
+    }
+}
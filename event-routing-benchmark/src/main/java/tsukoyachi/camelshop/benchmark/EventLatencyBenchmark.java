@@ -0,0 +1,60 @@
+package tsukoyachi.camelshop.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency distribution (p50/p99/p99.9) of a single event going through a handler. Every invocation
+ * processes a one-event document taken in turn from a pool covering all event types and cart sizes.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class EventLatencyBenchmark {
+    private static final int DOCUMENTS = 1024;
+
+    // CSV_MAPPED only reads files
+    @Param({"CSV", "JSON", "XML", "XML_DOM"})
+    public InputFormat format;
+
+    private List<byte[]> documents;
+    private HandlerFixture fixture;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp(Blackhole blackhole) {
+        documents = EventFileGenerator.singleEventDocuments(format, DOCUMENTS);
+        fixture = new HandlerFixture(blackhole);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        fixture.close();
+    }
+
+    @Benchmark
+    public void processEvent() {
+        byte[] document = documents.get(next);
+        next = (next + 1) % DOCUMENTS;
+        fixture.process(format, new ByteArrayInputStream(document));
+    }
+}
@@ -0,0 +1,73 @@
+package tsukoyachi.camelshop.benchmark;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Whole file throughput of each handler, from the bytes on disk to the event records. One operation is
+ * one file, the {@code events} counter gives the matching event rate. Files are generated on first use.
+ * The DOM path keeps the whole document in memory, avoid it with 10M events unless the heap allows it.
+ *
+ * <pre>java -jar target/benchmarks.jar FileHandlerBenchmark -prof gc -p events=100000</pre>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class FileHandlerBenchmark {
+    @Param({"CSV", "CSV_MAPPED", "JSON", "XML", "XML_DOM"})
+    public InputFormat format;
+
+    @Param({"1000", "100000", "10000000"})
+    public int events;
+
+    private Path file;
+    private HandlerFixture fixture;
+
+    @Setup(Level.Trial)
+    public void setUp(Blackhole blackhole) {
+        file = EventFileGenerator.file(format, events);
+        fixture = new HandlerFixture(blackhole);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        fixture.close();
+    }
+
+    @Benchmark
+    public void processFile(EventCounter counter) throws IOException {
+        fixture.process(format, file);
+        counter.events += events;
+    }
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class EventCounter {
+        public long events;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            events = 0;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package tsukoyachi.camelshop.benchmark;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.camel.CamelContext;
+import org.apache.camel.Exchange;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.support.DefaultExchange;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.util.unit.DataSize;
+import org.w3c.dom.Document;
+import org.xml.sax.SAXException;
+import tsukoyachi.camelshop.common.models.ShopEvent;
+import tsukoyachi.camelshop.eventrouting.audit.EventAuditLogger;
+import tsukoyachi.camelshop.eventrouting.checkpoint.FileCheckpointer;
+import tsukoyachi.camelshop.eventrouting.deadletter.DeadLetterStore;
+import tsukoyachi.camelshop.eventrouting.handler.file.CsvFileHandler;
+import tsukoyachi.camelshop.eventrouting.handler.file.JsonFileHandler;
+import tsukoyachi.camelshop.eventrouting.handler.file.MappedCsvReader;
+import tsukoyachi.camelshop.eventrouting.handler.file.StaxXmlFileHandler;
+import tsukoyachi.camelshop.eventrouting.handler.file.XmlFileHandler;
+import tsukoyachi.camelshop.eventrouting.idempotency.IdempotencyStore;
+import tsukoyachi.camelshop.eventrouting.metrics.EventMetrics;
+import tsukoyachi.camelshop.eventrouting.output.ColumnarEventWriter;
+import tsukoyachi.camelshop.eventrouting.processing.EventDispatcher;
+import tsukoyachi.camelshop.eventrouting.processing.KeyedLaneExecutor;
+import tsukoyachi.camelshop.eventrouting.publish.EventPublisher;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Wires the file handlers the way the application does, without Spring: events run on the caller thread,
+ * the idempotency store is disabled, meters are kept in memory and the parsed events end up in a JMH
+ * {@link Blackhole}.
+ */
+final class HandlerFixture implements AutoCloseable {
+    private final CamelContext camelContext = new DefaultCamelContext();
+    private final KeyedLaneExecutor laneExecutor = new KeyedLaneExecutor(false, 0, 256, 64, false);
+    private final MappedCsvReader mappedCsvReader = new MappedCsvReader(true, DataSize.ofBytes(0), DataSize.ofMegabytes(16), 0);
+    private final CsvFileHandler csvFileHandler;
+    private final JsonFileHandler jsonFileHandler;
+    private final StaxXmlFileHandler staxXmlFileHandler;
+    private final XmlFileHandler xmlFileHandler;
+    private final DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
+
+    HandlerFixture(Blackhole blackhole) {
+        EventMetrics metrics = new EventMetrics(new SimpleMeterRegistry());
+        EventDispatcher dispatcher = new BlackholeDispatcher(blackhole, metrics);
+        // Generated events are all valid, nothing is written there
+        DeadLetterStore deadLetterStore = new DeadLetterStore("target/dead-letter", "target/input");
+        // Files are read once from the start, no checkpoint
+        FileCheckpointer checkpointer = new FileCheckpointer(new IdempotencyStore(false, "jdbc:sqlite::memory:", 1, 0.5, 1),
+                new EventPublisher(null, metrics, false, "none", 1, 1, Duration.ZERO, 1),
+                new ColumnarEventWriter(false, "target", Duration.ofHours(1), 1), deadLetterStore, false, Duration.ZERO);
+        this.csvFileHandler = new CsvFileHandler(laneExecutor, dispatcher, metrics, mappedCsvReader, deadLetterStore,
+                checkpointer);
+        this.jsonFileHandler = new JsonFileHandler(laneExecutor, dispatcher, metrics, deadLetterStore, checkpointer);
+        this.staxXmlFileHandler = new StaxXmlFileHandler(laneExecutor, dispatcher, metrics, deadLetterStore, checkpointer);
+        this.xmlFileHandler = new XmlFileHandler(dispatcher, metrics, deadLetterStore, checkpointer);
+    }
+
+    /**
+     * Runs the handler of {@code format} over a whole file.
+     */
+    void process(InputFormat format, Path file) throws IOException {
+        if (format == InputFormat.CSV_MAPPED) {
+            csvFileHandler.processMapped(file, new DefaultExchange(camelContext));
+            return;
+        }
+        try (InputStream input = new BufferedInputStream(Files.newInputStream(file), 64 * 1024)) {
+            process(format, input);
+        }
+    }
+
+    /**
+     * Runs the handler of {@code format} over the content of {@code input}, from raw bytes to events.
+     */
+    void process(InputFormat format, InputStream input) {
+        Exchange exchange = new DefaultExchange(camelContext);
+        switch (format) {
+            case CSV_MAPPED -> throw new IllegalArgumentException("The mapped CSV reader only reads files");
+            case CSV -> {
+                exchange.getIn().setBody(input);
+                csvFileHandler.processStream(exchange);
+            }
+            case JSON -> {
+                exchange.getIn().setBody(input);
+                jsonFileHandler.processStream(exchange);
+            }
+            case XML -> {
+                exchange.getIn().setBody(input);
+                staxXmlFileHandler.process(exchange);
+            }
+            case XML_DOM -> {
+                exchange.getIn().setBody(parse(input));
+                xmlFileHandler.process(exchange);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        laneExecutor.shutdown();
+        mappedCsvReader.shutdown();
+        camelContext.stop();
+    }
+
+    private Document parse(InputStream input) {
+        try {
+            return documentBuilderFactory.newDocumentBuilder().parse(input);
+        } catch (ParserConfigurationException | SAXException e) {
+            throw new IllegalArgumentException("Invalid XML content", e);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static final class BlackholeDispatcher extends EventDispatcher {
+        private final Blackhole blackhole;
+
+        private BlackholeDispatcher(Blackhole blackhole, EventMetrics metrics) {
+            super(new IdempotencyStore(false, "jdbc:sqlite::memory:", 1, 0.5, 1), metrics,
+                    new EventAuditLogger(false, 0, false, 1),
+                    new ColumnarEventWriter(false, "target", Duration.ofHours(1), 1),
+                    new EventPublisher(null, metrics, false, "none", 1, 1, Duration.ZERO, 1));
+            this.blackhole = blackhole;
+        }
+
+        @Override
+        public void dispatch(ShopEvent event, FileCheckpointer.Cursor file) {
+            blackhole.consume(event);
+        }
+    }
+}
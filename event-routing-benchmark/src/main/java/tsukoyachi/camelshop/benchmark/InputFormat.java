@@ -0,0 +1,23 @@
+package tsukoyachi.camelshop.benchmark;
+
+/**
+ * Input formats benchmarked, {@code XML_DOM} is the legacy DOM based XML path and {@code CSV_MAPPED} the
+ * memory-mapped reader used for large CSV files.
+ */
+public enum InputFormat {
+    CSV("csv"),
+    CSV_MAPPED("csv"),
+    JSON("json"),
+    XML("xml"),
+    XML_DOM("xml");
+
+    private final String extension;
+
+    InputFormat(String extension) {
+        this.extension = extension;
+    }
+
+    public String extension() {
+        return extension;
+    }
+}
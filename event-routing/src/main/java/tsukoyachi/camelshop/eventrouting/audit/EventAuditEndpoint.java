@@ -0,0 +1,34 @@
+package tsukoyachi.camelshop.eventrouting.audit;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * Runtime switch of the audit mode, exposed on {@code /actuator/eventaudit}. A POST with
+ * {@code {"fullFidelity": true}} logs every event until it is switched back.
+ */
+@Component
+@Endpoint(id = "eventaudit")
+@RequiredArgsConstructor
+public class EventAuditEndpoint {
+    private final EventAuditLogger auditLogger;
+
+    @ReadOperation
+    public Map<String, Object> status() {
+        return Map.of(
+                "fullFidelity", auditLogger.isFullFidelity(),
+                "maxPerSecond", auditLogger.getMaxPerSecond(),
+                "dropped", auditLogger.getDropped());
+    }
+
+    @WriteOperation
+    public Map<String, Object> configure(boolean fullFidelity) {
+        auditLogger.setFullFidelity(fullFidelity);
+        return status();
+    }
+}
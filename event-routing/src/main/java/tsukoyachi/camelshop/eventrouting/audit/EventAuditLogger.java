@@ -0,0 +1,185 @@
+package tsukoyachi.camelshop.eventrouting.audit;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import tsukoyachi.camelshop.common.models.ShopEvent;
+
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Audit trail of the dispatched events, written to the {@code camelshop.audit} logger as key=value lines.
+ * <p>
+ * By default at most {@code max-per-second} events of each type are logged, the others are only counted
+ * and reported once per second. In full-fidelity mode (switchable at runtime, see {@link EventAuditEndpoint})
+ * every event is logged. Events are formatted and written by a background thread: the caller only pays
+ * for the rate check and a queue offer. When the queue is full, sampled entries are dropped while
+ * full-fidelity entries wait for room.
+ */
+@Slf4j(topic = "camelshop.audit")
+@Component
+public class EventAuditLogger {
+    private static final long POLL_TIMEOUT_MILLIS = 200;
+
+    private final boolean enabled;
+    private final int maxPerSecond;
+    private final AtomicBoolean fullFidelity;
+    private final BlockingQueue<Object> queue;
+    private final Map<String, RateWindow> windows = new ConcurrentHashMap<>();
+    private final AtomicLong dropped = new AtomicLong();
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    public EventAuditLogger(@Value("${camelshop.event-routing.audit.enabled:true}") boolean enabled,
+                            @Value("${camelshop.event-routing.audit.max-per-second:5}") int maxPerSecond,
+                            @Value("${camelshop.event-routing.audit.full-fidelity:false}") boolean fullFidelity,
+                            @Value("${camelshop.event-routing.audit.queue-capacity:10000}") int queueCapacity) {
+        this.enabled = enabled;
+        this.maxPerSecond = Math.max(0, maxPerSecond);
+        this.fullFidelity = new AtomicBoolean(fullFidelity);
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+        this.writer = Thread.ofPlatform().name("event-audit").daemon().unstarted(this::writeLoop);
+        if (enabled) {
+            writer.start();
+        }
+    }
+
+    /**
+     * Audits a dispatched event, depending on the mode and on the rate of its type.
+     */
+    public void record(ShopEvent event) {
+        if (!enabled || !log.isInfoEnabled()) {
+            return;
+        }
+
+        if (fullFidelity.get()) {
+            try {
+                queue.put(event);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return;
+        }
+
+        RateWindow window = windows.computeIfAbsent(event.eventType(), RateWindow::new);
+        if (window.tryAcquire(System.currentTimeMillis() / 1000, maxPerSecond) && !queue.offer(event)) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    public boolean isFullFidelity() {
+        return fullFidelity.get();
+    }
+
+    public void setFullFidelity(boolean enabled) {
+        if (fullFidelity.getAndSet(enabled) != enabled) {
+            log.info("audit mode={}", enabled ? "full-fidelity" : "sampled");
+        }
+    }
+
+    public int getMaxPerSecond() {
+        return maxPerSecond;
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        writer.interrupt();
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeLoop() {
+        while (running || !queue.isEmpty()) {
+            try {
+                Object entry = queue.poll(POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                if (entry != null) {
+                    write(entry);
+                }
+            } catch (InterruptedException e) {
+                // Shutting down: drain what is left without waiting
+                running = false;
+                Object entry;
+                while ((entry = queue.poll()) != null) {
+                    write(entry);
+                }
+            } catch (RuntimeException e) {
+                log.warn("Unable to write audit entry: {}", e.getMessage());
+            }
+            reportSuppressed();
+        }
+    }
+
+    private void write(Object entry) {
+        if (entry instanceof ShopEvent event) {
+            log.info("audit type={} userId={} event={}", event.eventType(), event.userId(), event);
+        }
+    }
+
+    /**
+     * Reports, once their second is over, how many events of each type were not logged.
+     */
+    private void reportSuppressed() {
+        long second = System.currentTimeMillis() / 1000;
+        for (RateWindow window : windows.values()) {
+            int suppressed = window.drainSuppressed(second);
+            if (suppressed > 0) {
+                log.info("audit type={} suppressed={}", window.eventType, suppressed);
+            }
+        }
+    }
+
+    /**
+     * Fixed one-second window per event type. Counters are reset lazily by the first event of a new
+     * second, races on the reset may let a few extra events through, which is fine for sampling.
+     */
+    private static final class RateWindow {
+        private final String eventType;
+        private final AtomicLong second = new AtomicLong();
+        private final AtomicInteger accepted = new AtomicInteger();
+        private final AtomicInteger suppressed = new AtomicInteger();
+        private final AtomicInteger pendingReport = new AtomicInteger();
+        private final AtomicLong reportSecond = new AtomicLong();
+
+        private RateWindow(String eventType) {
+            this.eventType = eventType;
+        }
+
+        boolean tryAcquire(long now, int limit) {
+            long current = second.get();
+            if (now != current && second.compareAndSet(current, now)) {
+                pendingReport.addAndGet(suppressed.getAndSet(0));
+                reportSecond.set(now);
+                accepted.set(0);
+            }
+            if (accepted.incrementAndGet() <= limit) {
+                return true;
+            }
+            suppressed.incrementAndGet();
+            return false;
+        }
+
+        int drainSuppressed(long now) {
+            // Events of the current second may still be counted, they are reported with the next window
+            if (second.get() < now) {
+                pendingReport.addAndGet(suppressed.getAndSet(0));
+            }
+            return pendingReport.getAndSet(0);
+        }
+    }
+}
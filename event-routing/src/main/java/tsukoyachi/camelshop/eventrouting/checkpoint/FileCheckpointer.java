@@ -0,0 +1,191 @@
+package tsukoyachi.camelshop.eventrouting.checkpoint;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.camel.Exchange;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import tsukoyachi.camelshop.eventrouting.deadletter.DeadLetterStore;
+import tsukoyachi.camelshop.eventrouting.idempotency.FileDigester;
+import tsukoyachi.camelshop.eventrouting.idempotency.IdempotencyStore;
+import tsukoyachi.camelshop.eventrouting.output.ColumnarEventWriter;
+import tsukoyachi.camelshop.eventrouting.processing.KeyedLaneExecutor;
+import tsukoyachi.camelshop.eventrouting.publish.EventPublisher;
+
+import java.time.Duration;
+
+/**
+ * Commit points of the input files. A file is only recorded as done, with the keys of its events, once
+ * its outputs are flushed and its published events confirmed ({@link #complete}); a file that fails has its keys forgotten ({@link #abort}),
+ * its events are processed again the next time it is read.
+ * <p>
+ * Checkpoints also let a file interrupted halfway (crash, broker down...) resume where it stopped instead
+ * of being read again from the start. While a file is read, its handler reports each event boundary to a
+ * {@link Cursor}:
+ * at most once per {@code interval}, the events read so far are committed (lanes drained, outputs flushed)
+ * and the byte offset of the next event is stored in the {@link IdempotencyStore}, under the file digest,
+ * together with the keys of these events only.
+ * The next time the file is read, the handler seeks to that offset: the start of a CSV record or of a JSON
+ * array element, or the end of an XML {@code <event>}. The checkpoint is dropped once the file is done.
+ * <p>
+ * Offsets are counted in the content given to the decoders: byte order mark and compression removed. The
+ * events read between the last checkpoint and the interruption are read again, the event level check
+ * drops them.
+ */
+@Slf4j
+@Component
+public class FileCheckpointer {
+    private static final String CURSOR_PROPERTY = "CamelShopFileCursor";
+
+    private final IdempotencyStore idempotencyStore;
+    private final EventPublisher eventPublisher;
+    private final ColumnarEventWriter columnarWriter;
+    private final DeadLetterStore deadLetterStore;
+    private final boolean enabled;
+    private final long intervalNanos;
+
+    public FileCheckpointer(IdempotencyStore idempotencyStore,
+                            EventPublisher eventPublisher,
+                            ColumnarEventWriter columnarWriter,
+                            DeadLetterStore deadLetterStore,
+                            @Value("${camelshop.event-routing.checkpoint.enabled:true}") boolean enabled,
+                            @Value("${camelshop.event-routing.checkpoint.interval:10s}") Duration interval) {
+        this.idempotencyStore = idempotencyStore;
+        this.eventPublisher = eventPublisher;
+        this.columnarWriter = columnarWriter;
+        this.deadLetterStore = deadLetterStore;
+        // Checkpoints live in the idempotency store, and resuming relies on its event level check
+        this.enabled = enabled && idempotencyStore.isEnabled();
+        this.intervalNanos = interval.toNanos();
+    }
+
+    /**
+     * Cursor over the file being processed by the exchange, positioned at its last checkpoint. The cursor
+     * is kept on the exchange, every call for the same exchange returns it. Files without a digest (not
+     * read by the route) are not checkpointed.
+     */
+    public Cursor open(Exchange exchange) {
+        Cursor cursor = exchange.getProperty(CURSOR_PROPERTY, Cursor.class);
+        if (cursor == null) {
+            cursor = open(exchange.getIn().getHeader(FileDigester.DIGEST_HEADER, String.class));
+            exchange.setProperty(CURSOR_PROPERTY, cursor);
+        }
+        return cursor;
+    }
+
+    /**
+     * Flushes the outputs of the file of the exchange, then records it as done, with the keys of its events,
+     * and drops its checkpoint.
+     */
+    public void complete(Exchange exchange) {
+        Cursor cursor = exchange.getProperty(CURSOR_PROPERTY, Cursor.class);
+        if (cursor == null) {
+            cursor = new Cursor(null, IdempotencyStore.Checkpoint.START);
+        }
+        cursor.flush();
+        idempotencyStore.completeFile(exchange.getIn().getHeader(FileDigester.DIGEST_HEADER, String.class),
+                cursor.keys);
+    }
+
+    /**
+     * Forgets the keys of the events read from the file of the exchange since its last checkpoint: it
+     * failed, they may not have reached the outputs.
+     */
+    public void abort(Exchange exchange) {
+        Cursor cursor = exchange.getProperty(CURSOR_PROPERTY, Cursor.class);
+        if (cursor != null) {
+            idempotencyStore.discard(cursor.keys);
+        }
+    }
+
+    private Cursor open(String digest) {
+        if (!enabled || digest == null) {
+            return new Cursor(null, IdempotencyStore.Checkpoint.START);
+        }
+
+        IdempotencyStore.Checkpoint checkpoint = idempotencyStore.checkpoint(digest);
+        if (checkpoint.position() > 0) {
+            log.info("Resuming {} at byte {} (event {})", digest, checkpoint.position(), checkpoint.index());
+        }
+        return new Cursor(digest, checkpoint);
+    }
+
+    /**
+     * Progress of a handler in one file. Used by the thread reading the file only, apart from the keys and
+     * deliveries of its events, which are recorded from the event lanes.
+     */
+    public final class Cursor {
+        private final String digest;
+        private final IdempotencyStore.Checkpoint start;
+        private final IdempotencyStore.FileKeys keys = new IdempotencyStore.FileKeys();
+        private final EventPublisher.Deliveries deliveries = new EventPublisher.Deliveries();
+        private long lastCommit = System.nanoTime();
+
+        private Cursor(String digest, IdempotencyStore.Checkpoint start) {
+            this.digest = digest;
+            this.start = start;
+        }
+
+        /**
+         * Whether checkpoints are stored for this file, handlers only track offsets when they are.
+         */
+        public boolean isTracking() {
+            return digest != null;
+        }
+
+        /**
+         * Keys of the events of this file, for {@link IdempotencyStore#markIfAbsent(IdempotencyStore.FileKeys,
+         * String, String)}.
+         */
+        public IdempotencyStore.FileKeys keys() {
+            return keys;
+        }
+
+        /**
+         * Batches holding the published events of this file, for {@link EventPublisher#publish}.
+         */
+        public EventPublisher.Deliveries deliveries() {
+            return deliveries;
+        }
+
+        /**
+         * Byte offset to resume at, 0 to read the file from the start.
+         */
+        public long position() {
+            return start.position();
+        }
+
+        /**
+         * Index of the event at {@link #position()}.
+         */
+        public long index() {
+            return start.index();
+        }
+
+        /**
+         * Called at an event boundary: every event before {@code position} has been submitted to
+         * {@code batch}, the next one has index {@code index}. Stores a checkpoint there if the interval
+         * has elapsed since the previous one.
+         */
+        public void advance(KeyedLaneExecutor.Batch batch, long position, long index) {
+            if (digest == null || System.nanoTime() - lastCommit < intervalNanos) {
+                return;
+            }
+
+            batch.drain();
+            flush();
+            idempotencyStore.saveCheckpoint(digest, new IdempotencyStore.Checkpoint(position, index), keys);
+            lastCommit = System.nanoTime();
+            log.debug("Checkpoint of {} at byte {} (event {})", digest, position, index);
+        }
+
+        /**
+         * Publishing goes first as it is the step most likely to fail (broker down or slow), it only waits
+         * for the events of this file.
+         */
+        private void flush() {
+            eventPublisher.flush(deliveries);
+            columnarWriter.flush();
+            deadLetterStore.flush();
+        }
+    }
+}
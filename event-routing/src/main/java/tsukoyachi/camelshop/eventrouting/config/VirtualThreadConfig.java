@@ -0,0 +1,24 @@
+package tsukoyachi.camelshop.eventrouting.config;
+
+import org.apache.camel.spi.ThreadPoolFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import tsukoyachi.camelshop.common.concurrent.VirtualThreadPoolFactory;
+
+/**
+ * Opt-in {@code virtual-threads} profile. Camel picks the thread pool factory up from the registry, so
+ * the file consumer, the {@code threads()} pool of the file route and every other Camel pool run on
+ * virtual threads. The event lanes switch to virtual threads through {@code spring.threads.virtual.enabled}.
+ */
+@Configuration
+@Profile("virtual-threads")
+public class VirtualThreadConfig {
+
+    @Bean
+    public ThreadPoolFactory virtualThreadPoolFactory(
+            @Value("${camelshop.virtual-threads.max-concurrency:1000}") int maxConcurrency) {
+        return new VirtualThreadPoolFactory(maxConcurrency);
+    }
+}
@@ -0,0 +1,30 @@
+package tsukoyachi.camelshop.eventrouting.deadletter;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * Dead-lettered events, exposed on {@code /actuator/deadletter}. A POST replays them: only these events
+ * are processed again, not the files they came from.
+ */
+@Component
+@Endpoint(id = "deadletter")
+@RequiredArgsConstructor
+public class DeadLetterEndpoint {
+    private final DeadLetterStore deadLetterStore;
+
+    @ReadOperation
+    public Map<String, Object> status() {
+        return Map.of("pending", deadLetterStore.pending());
+    }
+
+    @WriteOperation
+    public Map<String, Object> replay() {
+        return Map.of("replayed", deadLetterStore.replay());
+    }
+}
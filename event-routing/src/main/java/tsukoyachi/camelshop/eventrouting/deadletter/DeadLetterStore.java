@@ -0,0 +1,252 @@
+package tsukoyachi.camelshop.eventrouting.deadletter;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+/**
+ * Events that could not be turned into a {@code ShopEvent} (missing field, bad timestamp, unknown type...)
+ * are set aside here instead of failing their whole file. Each one is a line of {@code dead-letter.jsonl}
+ * in the dead-letter directory, holding the source file, the offset of the event in it (index of the CSV
+ * record, JSON array element or XML {@code <event>} element), the reason and the event itself in its
+ * source format. Lines are buffered and appended by {@link #flush()}, at the end of each input file.
+ * <p>
+ * {@link #replay()} feeds the dead-lettered events back to the route: they are written to the input
+ * directory as new files, one per format, and go through the usual processing. Events still invalid end
+ * up here again.
+ */
+@Slf4j
+@Component
+public class DeadLetterStore {
+    static final String FILE_NAME = "dead-letter.jsonl";
+    private static final String REPLAYING_PREFIX = "replaying-";
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final int MAX_BUFFERED = 1024;
+
+    private final Path directory;
+    private final Path inputDirectory;
+    private final List<String> buffer = new ArrayList<>();
+
+    /**
+     * One dead-lettered event, {@code event} is the event as found in the source, in {@code format}.
+     */
+    public record DeadLetter(String source, long offset, String format, String reason, String event) {
+    }
+
+    public DeadLetterStore(
+            @Value("${camelshop.event-routing.dead-letter-directory}") String directory,
+            @Value("${camelshop.event-routing.input-directory}") String inputDirectory) {
+        this.directory = Path.of(directory);
+        this.inputDirectory = Path.of(inputDirectory);
+    }
+
+    /**
+     * Sets an event aside, {@code reason} is the error that prevented reading it.
+     */
+    public void write(String source, long offset, String format, RuntimeException reason, String event) {
+        write(source, offset, format,
+                reason.getMessage() != null ? reason.getMessage() : reason.getClass().getSimpleName(), event);
+    }
+
+    public void write(String source, long offset, String format, String reason, String event) {
+        DeadLetter deadLetter = new DeadLetter(source, offset, format, reason, event);
+        log.debug("Dead-lettering event {} of {}: {}", deadLetter.offset(), deadLetter.source(), deadLetter.reason());
+        String line;
+        try {
+            line = OBJECT_MAPPER.writeValueAsString(deadLetter);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Unable to serialize dead letter", e);
+        }
+
+        boolean full;
+        synchronized (buffer) {
+            buffer.add(line);
+            full = buffer.size() >= MAX_BUFFERED;
+        }
+        if (full) {
+            flush();
+        }
+    }
+
+    /**
+     * Appends the buffered events to the dead-letter file and forces them to disk.
+     */
+    public synchronized void flush() {
+        List<String> lines;
+        synchronized (buffer) {
+            if (buffer.isEmpty()) {
+                return;
+            }
+            lines = List.copyOf(buffer);
+            buffer.clear();
+        }
+
+        Path file = directory.resolve(FILE_NAME);
+        StringBuilder content = new StringBuilder();
+        lines.forEach(line -> content.append(line).append('\n'));
+        try {
+            Files.createDirectories(directory);
+            try (FileChannel channel = FileChannel.open(file,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                ByteBuffer bytes = StandardCharsets.UTF_8.encode(content.toString());
+                while (bytes.hasRemaining()) {
+                    channel.write(bytes);
+                }
+                channel.force(false);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to write %s".formatted(file), e);
+        }
+        log.info("Dead-lettered {} event(s) to {}", lines.size(), file);
+    }
+
+    @PreDestroy
+    public void close() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.error("Unable to write dead-lettered events to {}: {}", directory, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Number of events waiting for a replay.
+     */
+    public synchronized long pending() {
+        long pending;
+        synchronized (buffer) {
+            pending = buffer.size();
+        }
+        for (Path file : deadLetterFiles()) {
+            try (Stream<String> lines = Files.lines(file, StandardCharsets.UTF_8)) {
+                pending += lines.filter(line -> !line.isBlank()).count();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to read %s".formatted(file), e);
+            }
+        }
+        return pending;
+    }
+
+    /**
+     * Writes the dead-lettered events to the input directory, one file per format, and empties the store.
+     * The files are renamed into place once complete, so the route never reads a partial file.
+     *
+     * @return the number of events replayed per format
+     */
+    public synchronized Map<String, Integer> replay() {
+        flush();
+        List<Path> files = new ArrayList<>();
+        for (Path file : deadLetterFiles()) {
+            if (file.getFileName().toString().equals(FILE_NAME)) {
+                // New dead letters go to a fresh file while this one is replayed
+                Path replaying = file.resolveSibling(REPLAYING_PREFIX + System.currentTimeMillis() + ".jsonl");
+                move(file, replaying);
+                files.add(replaying);
+            } else {
+                // Left over by a replay that did not complete
+                files.add(file);
+            }
+        }
+
+        Map<String, List<String>> events = new TreeMap<>();
+        for (Path file : files) {
+            for (DeadLetter deadLetter : read(file)) {
+                events.computeIfAbsent(deadLetter.format(), format -> new ArrayList<>()).add(deadLetter.event());
+            }
+        }
+
+        Map<String, Integer> replayed = new LinkedHashMap<>();
+        long now = System.currentTimeMillis();
+        events.forEach((format, formatEvents) -> {
+            String name = "replay-%d.%s".formatted(now, format);
+            Path target = inputDirectory.resolve(name);
+            Path partial = inputDirectory.resolve("." + name);
+            try {
+                Files.createDirectories(inputDirectory);
+                Files.writeString(partial, document(format, formatEvents), StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to write %s".formatted(partial), e);
+            }
+            move(partial, target);
+            replayed.put(format, formatEvents.size());
+            log.info("Replaying {} dead-lettered {} event(s) from {}", formatEvents.size(), format, target);
+        });
+
+        for (Path file : files) {
+            try {
+                Files.delete(file);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to delete %s".formatted(file), e);
+            }
+        }
+        return replayed;
+    }
+
+    /**
+     * Wraps the events of one format in a document the matching decoder accepts.
+     */
+    private static String document(String format, List<String> events) {
+        return switch (format) {
+            case "json" -> "[\n" + String.join(",\n", events) + "\n]\n";
+            case "xml" -> "<events>\n" + String.join("\n", events) + "\n</events>\n";
+            case "csv" -> String.join("\n", events) + "\n";
+            default -> throw new IllegalStateException("Unknown dead letter format: %s".formatted(format));
+        };
+    }
+
+    private static List<DeadLetter> read(Path file) {
+        List<DeadLetter> deadLetters = new ArrayList<>();
+        try (Stream<String> lines = Files.lines(file, StandardCharsets.UTF_8)) {
+            for (String line : (Iterable<String>) lines::iterator) {
+                if (!line.isBlank()) {
+                    deadLetters.add(OBJECT_MAPPER.readValue(line, DeadLetter.class));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to read %s".formatted(file), e);
+        }
+        return deadLetters;
+    }
+
+    private List<Path> deadLetterFiles() {
+        List<Path> files = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return files;
+        }
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory, "*.jsonl")) {
+            entries.forEach(files::add);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to list %s".formatted(directory), e);
+        }
+        files.sort(null);
+        return files;
+    }
+
+    private static void move(Path source, Path target) {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to move %s to %s".formatted(source, target), e);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package tsukoyachi.camelshop.eventrouting.handler.decoder;
+
+import com.github.luben.zstd.ZstdInputStreamNoFinalizer;
+import net.jpountz.lz4.LZ4FrameInputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Compression formats accepted in the input directory. A compressed file is recognised by its magic
+ * number, its content is decompressed on the fly while the decoder reads it, nothing is written to disk.
+ */
+enum Compression {
+    NONE(new byte[0], List.of()),
+    GZIP(new byte[]{(byte) 0x1F, (byte) 0x8B}, List.of(".gz", ".gzip")),
+    ZSTD(new byte[]{(byte) 0x28, (byte) 0xB5, (byte) 0x2F, (byte) 0xFD}, List.of(".zst", ".zstd")),
+    LZ4(new byte[]{(byte) 0x04, (byte) 0x22, (byte) 0x4D, (byte) 0x18}, List.of(".lz4"));
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final byte[] magic;
+    private final List<String> extensions;
+
+    Compression(byte[] magic, List<String> extensions) {
+        this.magic = magic;
+        this.extensions = extensions;
+    }
+
+    static Compression detect(byte[] head) {
+        for (Compression compression : values()) {
+            if (compression != NONE && head.length >= compression.magic.length
+                    && Arrays.equals(head, 0, compression.magic.length, compression.magic, 0, compression.magic.length)) {
+                return compression;
+            }
+        }
+        return NONE;
+    }
+
+    InputStream decompress(InputStream input) throws IOException {
+        return switch (this) {
+            case NONE -> input;
+            case GZIP -> new GZIPInputStream(input, BUFFER_SIZE);
+            case ZSTD -> new ZstdInputStreamNoFinalizer(input);
+            case LZ4 -> new LZ4FrameInputStream(input);
+        };
+    }
+
+    /**
+     * Name of the file once decompressed: {@code events.csv.gz} gives {@code events.csv}.
+     */
+    String innerName(String fileName) {
+        String lowerCase = fileName.toLowerCase();
+        for (String extension : extensions) {
+            if (lowerCase.endsWith(extension)) {
+                return fileName.substring(0, fileName.length() - extension.length());
+            }
+        }
+        return fileName;
+    }
+}
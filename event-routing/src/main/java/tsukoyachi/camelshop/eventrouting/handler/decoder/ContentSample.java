@@ -0,0 +1,36 @@
+package tsukoyachi.camelshop.eventrouting.handler.decoder;
+
+/**
+ * First bytes of a file, once the byte order mark and the compression have been removed.
+ * {@code complete} tells whether {@code head} holds the whole content.
+ */
+public record ContentSample(String fileName, byte[] head, boolean complete) {
+
+    /**
+     * The first byte that is not whitespace, or -1 if the sample is blank.
+     */
+    public int firstSignificantByte() {
+        for (byte b : head) {
+            if (b != ' ' && b != '\t' && b != '\r' && b != '\n') {
+                return b & 0xFF;
+            }
+        }
+        return -1;
+    }
+
+    public boolean isBlank() {
+        return complete && firstSignificantByte() < 0;
+    }
+
+    /**
+     * Text formats never contain NUL bytes, binary content does almost always.
+     */
+    public boolean isText() {
+        for (byte b : head) {
+            if (b == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,80 @@
+package tsukoyachi.camelshop.eventrouting.handler.decoder;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Looks at the first bytes of a stream to prepare it for decoding: compressed content is decompressed on
+ * the fly and a UTF-8 byte order mark is skipped. Only {@link #SAMPLE_SIZE} bytes are buffered, the rest of the stream
+ * is left untouched.
+ */
+final class ContentSniffer {
+    static final int SAMPLE_SIZE = 512;
+
+    private static final byte[] UTF8_BOM = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF};
+    private static final byte[] UTF16BE_BOM = {(byte) 0xFE, (byte) 0xFF};
+    private static final byte[] UTF16LE_BOM = {(byte) 0xFF, (byte) 0xFE};
+
+    private ContentSniffer() {
+    }
+
+    /**
+     * Content ready to be decoded: {@code input} starts right after the byte order mark, if any.
+     * The sample holds the name of the file once decompressed. Closing it closes the decompressor, which
+     * may hold native memory, and the raw stream.
+     */
+    record Sniffed(InputStream input, ContentSample sample, Compression compression) implements Closeable {
+        @Override
+        public void close() throws IOException {
+            input.close();
+        }
+    }
+
+    static Sniffed sniff(String fileName, InputStream raw) throws IOException {
+        InputStream input = raw.markSupported() ? raw : new BufferedInputStream(raw);
+        byte[] head = peek(input);
+
+        Compression compression = Compression.detect(head);
+        if (compression == Compression.NONE) {
+            return prepare(fileName, input, head, compression);
+        }
+
+        InputStream decompressed = new BufferedInputStream(compression.decompress(input));
+        try {
+            return prepare(fileName, decompressed, peek(decompressed), compression);
+        } catch (IOException | RuntimeException e) {
+            decompressed.close();
+            throw e;
+        }
+    }
+
+    private static Sniffed prepare(String fileName, InputStream input, byte[] head, Compression compression)
+            throws IOException {
+        if (startsWith(head, UTF8_BOM)) {
+            input.skipNBytes(UTF8_BOM.length);
+            head = Arrays.copyOfRange(head, UTF8_BOM.length, head.length);
+        } else if (startsWith(head, UTF16BE_BOM) || startsWith(head, UTF16LE_BOM)) {
+            throw new IllegalArgumentException("File %s must be UTF-8 encoded".formatted(fileName));
+        }
+
+        ContentSample sample = new ContentSample(compression.innerName(fileName), head, head.length < SAMPLE_SIZE);
+        return new Sniffed(input, sample, compression);
+    }
+
+    /**
+     * Reads up to {@link #SAMPLE_SIZE} bytes without consuming them.
+     */
+    private static byte[] peek(InputStream input) throws IOException {
+        input.mark(SAMPLE_SIZE);
+        byte[] head = input.readNBytes(SAMPLE_SIZE);
+        input.reset();
+        return head;
+    }
+
+    private static boolean startsWith(byte[] head, byte[] prefix) {
+        return head.length >= prefix.length && Arrays.equals(head, 0, prefix.length, prefix, 0, prefix.length);
+    }
+}
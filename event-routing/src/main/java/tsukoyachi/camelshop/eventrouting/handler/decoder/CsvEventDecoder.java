@@ -0,0 +1,102 @@
+package tsukoyachi.camelshop.eventrouting.handler.decoder;
+
+import lombok.RequiredArgsConstructor;
+import org.apache.camel.Exchange;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import tsukoyachi.camelshop.common.models.OrderCreatedEvent;
+import tsukoyachi.camelshop.common.models.PaymentProcessedEvent;
+import tsukoyachi.camelshop.common.models.ShipmentDeliveredEvent;
+import tsukoyachi.camelshop.common.models.SignupEvent;
+import tsukoyachi.camelshop.eventrouting.handler.file.CsvFileHandler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * CSV has no signature: text content the other decoders turned down is read as CSV when the file is named
+ * {@code .csv} or when its first record starts with a known event type. Anything else (a README, a JSON
+ * file with leading junk...) is left to the error directory.
+ * Large plain files are memory-mapped instead of being read through the body stream.
+ */
+@Component
+@Order(Ordered.LOWEST_PRECEDENCE)
+@RequiredArgsConstructor
+public class CsvEventDecoder implements EventDecoder {
+    private static final Set<String> EVENT_TYPES = Set.of(
+            SignupEvent.TYPE, OrderCreatedEvent.TYPE, PaymentProcessedEvent.TYPE, ShipmentDeliveredEvent.TYPE);
+
+    private final CsvFileHandler csvFileHandler;
+
+    @Value("${camelshop.event-routing.streaming.csv:true}")
+    private boolean streaming;
+
+    @Override
+    public String format() {
+        return "csv";
+    }
+
+    @Override
+    public boolean accepts(ContentSample sample) {
+        int first = sample.firstSignificantByte();
+        if (!sample.isText() || first == '{' || first == '[' || first == '<') {
+            return false;
+        }
+        return sample.fileName().toLowerCase().endsWith(".csv") || EVENT_TYPES.contains(firstField(sample.head()));
+    }
+
+    /**
+     * First field of the first record, without its quotes.
+     */
+    private static String firstField(byte[] head) {
+        int start = 0;
+        while (start < head.length && Character.isWhitespace(head[start])) {
+            start++;
+        }
+        boolean quoted = start < head.length && head[start] == '"';
+        if (quoted) {
+            start++;
+        }
+        int end = start;
+        while (end < head.length && head[end] != (quoted ? '"' : ',') && head[end] != '\n' && head[end] != '\r') {
+            end++;
+        }
+        return new String(head, start, end - start, StandardCharsets.UTF_8).trim();
+    }
+
+    @Override
+    public void process(Exchange exchange) {
+        long length = exchange.getIn().getHeader(Exchange.FILE_LENGTH, 0L, Long.class);
+        String path = exchange.getIn().getHeader(Exchange.FILE_PATH, String.class);
+        boolean compressed = exchange.getIn().getHeader(EventDecoderRegistry.COMPRESSED_HEADER, false, Boolean.class);
+        if (path != null && !compressed && csvFileHandler.isMappable(length)) {
+            csvFileHandler.processMapped(Path.of(path), exchange);
+            return;
+        }
+
+        if (streaming) {
+            csvFileHandler.processStream(exchange);
+            return;
+        }
+
+        InputStream input = exchange.getIn().getBody(InputStream.class);
+        try (CSVParser parser = CSVParser.parse(new InputStreamReader(input, StandardCharsets.UTF_8), CSVFormat.DEFAULT)) {
+            List<List<String>> rows = parser.stream().map(CSVRecord::toList).toList();
+            exchange.getIn().setBody(rows);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to read CSV content", e);
+        }
+        csvFileHandler.process(exchange);
+    }
+}
@@ -0,0 +1,21 @@
+package tsukoyachi.camelshop.eventrouting.handler.decoder;
+
+import tsukoyachi.camelshop.eventrouting.handler.file.FileHandler;
+
+/**
+ * A file format the route can read events from. Decoders are Spring beans picked up by
+ * {@link EventDecoderRegistry}: adding a format only takes a new implementation, the route is left as is.
+ * <p>
+ * The format is chosen from the content, not from the file name: the first decoder (in {@code @Order})
+ * accepting the {@link ContentSample} wins. {@link #process} is then called with the body set to an
+ * {@code InputStream} positioned at the start of the document, byte order mark and compression removed.
+ */
+public interface EventDecoder extends FileHandler {
+
+    /**
+     * Short lowercase name of the format, used as metrics tag.
+     */
+    String format();
+
+    boolean accepts(ContentSample sample);
+}
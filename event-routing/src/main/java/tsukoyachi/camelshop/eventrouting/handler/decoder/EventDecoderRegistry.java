@@ -0,0 +1,97 @@
+package tsukoyachi.camelshop.eventrouting.handler.decoder;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.camel.Exchange;
+import org.apache.camel.Message;
+import org.springframework.stereotype.Component;
+import tsukoyachi.camelshop.eventrouting.metrics.EventMetrics;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+/**
+ * Entry point of the route for every input file: sniffs the content, picks the {@link EventDecoder}
+ * and hands the file over to it. The original body is put back afterwards, so that a file failing
+ * halfway is copied as is to the error directory.
+ */
+@Slf4j
+@Component
+public class EventDecoderRegistry {
+    public static final String FORMAT_HEADER = "CamelShopEventFormat";
+    /**
+     * Set to {@code true} when the file is read through a decompressor: the body stream is then the only
+     * way to reach the content, the file itself cannot be read directly.
+     */
+    public static final String COMPRESSED_HEADER = "CamelShopCompressed";
+    private static final String EMPTY_FORMAT = "empty";
+
+    private final List<EventDecoder> decoders;
+    private final EventMetrics eventMetrics;
+
+    public EventDecoderRegistry(List<EventDecoder> decoders, EventMetrics eventMetrics) {
+        this.decoders = List.copyOf(decoders);
+        this.eventMetrics = eventMetrics;
+        log.info("Event decoders: {}", this.decoders.stream().map(EventDecoder::format).toList());
+    }
+
+    public void decode(Exchange exchange) {
+        Message in = exchange.getIn();
+        String fileName = in.getHeader(Exchange.FILE_NAME, "", String.class);
+        long length = in.getHeader(Exchange.FILE_LENGTH, 0L, Long.class);
+        InputStream body = in.getBody(InputStream.class);
+        if (body == null) {
+            throw new IllegalArgumentException("Body must be readable as an InputStream");
+        }
+
+        Object original = in.getBody();
+        try (InputStream raw = body;
+             ContentSniffer.Sniffed sniffed = ContentSniffer.sniff(fileName, raw)) {
+            if (sniffed.sample().isBlank()) {
+                in.setHeader(FORMAT_HEADER, EMPTY_FORMAT);
+                eventMetrics.fileReceived(EMPTY_FORMAT, length);
+                log.info("File {} is empty, skipping processing", fileName);
+                return;
+            }
+
+            EventDecoder decoder = select(sniffed);
+            in.setHeader(FORMAT_HEADER, decoder.format());
+            in.setHeader(COMPRESSED_HEADER, sniffed.compression() != Compression.NONE);
+            eventMetrics.fileReceived(decoder.format(), length);
+            if (sniffed.compression() == Compression.NONE) {
+                log.info("Decoding {} as {}", fileName, decoder.format());
+            } else {
+                log.info("Decoding {} as {} ({} compressed)", fileName, decoder.format(),
+                        sniffed.compression().name().toLowerCase());
+            }
+
+            in.setBody(sniffed.input());
+            decoder.process(exchange);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to read file %s".formatted(fileName), e);
+        } finally {
+            in.setBody(original);
+        }
+    }
+
+    /**
+     * Compressed files are named after their content ({@code events.csv.gz}): the inner extension picks
+     * the decoder when it names a known format, the content is sniffed otherwise.
+     */
+    private EventDecoder select(ContentSniffer.Sniffed sniffed) {
+        ContentSample sample = sniffed.sample();
+        if (sniffed.compression() != Compression.NONE) {
+            String innerName = sample.fileName().toLowerCase();
+            for (EventDecoder decoder : decoders) {
+                if (innerName.endsWith("." + decoder.format())) {
+                    return decoder;
+                }
+            }
+        }
+        return decoders.stream()
+                .filter(candidate -> candidate.accepts(sample))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Unknown file type."));
+    }
+}
@@ -0,0 +1,56 @@
+package tsukoyachi.camelshop.eventrouting.handler.decoder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import org.apache.camel.Exchange;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import tsukoyachi.camelshop.eventrouting.handler.file.JsonFileHandler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+
+/**
+ * JSON documents start with an array or an object.
+ */
+@Component
+@Order(100)
+@RequiredArgsConstructor
+public class JsonEventDecoder implements EventDecoder {
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private final JsonFileHandler jsonFileHandler;
+
+    @Value("${camelshop.event-routing.streaming.json:true}")
+    private boolean streaming;
+
+    @Override
+    public String format() {
+        return "json";
+    }
+
+    @Override
+    public boolean accepts(ContentSample sample) {
+        int first = sample.firstSignificantByte();
+        return first == '[' || first == '{';
+    }
+
+    @Override
+    public void process(Exchange exchange) {
+        if (streaming) {
+            jsonFileHandler.processStream(exchange);
+            return;
+        }
+
+        // Tree mode: the whole document is bound to lists and maps first
+        InputStream input = exchange.getIn().getBody(InputStream.class);
+        try {
+            exchange.getIn().setBody(OBJECT_MAPPER.readValue(input, Object.class));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to read JSON content", e);
+        }
+        jsonFileHandler.process(exchange);
+    }
+}
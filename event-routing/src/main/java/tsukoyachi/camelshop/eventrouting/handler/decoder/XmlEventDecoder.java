@@ -0,0 +1,43 @@
+package tsukoyachi.camelshop.eventrouting.handler.decoder;
+
+import lombok.RequiredArgsConstructor;
+import org.apache.camel.Exchange;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import tsukoyachi.camelshop.eventrouting.handler.file.StaxXmlFileHandler;
+import tsukoyachi.camelshop.eventrouting.handler.file.XmlFileHandler;
+
+/**
+ * XML documents start with a tag, the prolog and comments included.
+ */
+@Component
+@Order(200)
+@RequiredArgsConstructor
+public class XmlEventDecoder implements EventDecoder {
+    private final StaxXmlFileHandler staxXmlFileHandler;
+    private final XmlFileHandler xmlFileHandler;
+
+    @Value("${camelshop.event-routing.streaming.xml:true}")
+    private boolean streaming;
+
+    @Override
+    public String format() {
+        return "xml";
+    }
+
+    @Override
+    public boolean accepts(ContentSample sample) {
+        return sample.firstSignificantByte() == '<';
+    }
+
+    @Override
+    public void process(Exchange exchange) {
+        if (streaming) {
+            staxXmlFileHandler.process(exchange);
+        } else {
+            // The DOM handler converts the stream body to a Document itself
+            xmlFileHandler.process(exchange);
+        }
+    }
+}
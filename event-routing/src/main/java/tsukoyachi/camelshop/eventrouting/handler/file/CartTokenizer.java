@@ -0,0 +1,68 @@
+package tsukoyachi.camelshop.eventrouting.handler.file;
+
+import tsukoyachi.camelshop.common.models.Cart;
+
+/**
+ * Reads the cart column of the CSV format, {@code ITEM1:2|ITEM2:1}, in a single pass over the characters.
+ * Only the item ids are allocated, quantities are parsed in place. Lines that are not {@code id:quantity}
+ * are ignored, a quantity that is not a number fails the whole event.
+ */
+final class CartTokenizer {
+
+    private CartTokenizer() {
+    }
+
+    static Cart parse(String cart) {
+        Cart result = new Cart();
+        int length = cart.length();
+        int start = 0;
+        while (start <= length) {
+            int end = cart.indexOf('|', start);
+            if (end < 0) {
+                end = length;
+            }
+            parseLine(cart, start, end, result);
+            start = end + 1;
+        }
+        return result;
+    }
+
+    private static void parseLine(String cart, int start, int end, Cart result) {
+        int separator = -1;
+        for (int i = start; i < end; i++) {
+            if (cart.charAt(i) == ':') {
+                if (separator >= 0) {
+                    return;
+                }
+                separator = i;
+            }
+        }
+        if (separator < 0 || separator == end - 1) {
+            return;
+        }
+
+        int idStart = skipWhitespace(cart, start, separator);
+        int idEnd = trimWhitespace(cart, idStart, separator);
+        int quantityStart = skipWhitespace(cart, separator + 1, end);
+        int quantityEnd = trimWhitespace(cart, quantityStart, end);
+        try {
+            result.put(cart.substring(idStart, idEnd), Integer.parseInt(cart, quantityStart, quantityEnd, 10));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid quantity in cart line '%s'".formatted(cart.substring(start, end)), e);
+        }
+    }
+
+    private static int skipWhitespace(String value, int from, int to) {
+        while (from < to && value.charAt(from) <= ' ') {
+            from++;
+        }
+        return from;
+    }
+
+    private static int trimWhitespace(String value, int from, int to) {
+        while (to > from && value.charAt(to - 1) <= ' ') {
+            to--;
+        }
+        return to;
+    }
+}
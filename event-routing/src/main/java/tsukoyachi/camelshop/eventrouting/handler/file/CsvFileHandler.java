@@ -1,42 +1,203 @@
 package tsukoyachi.camelshop.eventrouting.handler.file;
 
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.camel.Exchange;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
 import org.springframework.stereotype.Component;
+import tsukoyachi.camelshop.common.models.Cart;
 import tsukoyachi.camelshop.common.models.OrderCreatedEvent;
 import tsukoyachi.camelshop.common.models.PaymentProcessedEvent;
 import tsukoyachi.camelshop.common.models.ShipmentDeliveredEvent;
+import tsukoyachi.camelshop.common.models.ShopEvent;
 import tsukoyachi.camelshop.common.models.SignupEvent;
+import tsukoyachi.camelshop.common.time.IsoTimestamps;
+import tsukoyachi.camelshop.eventrouting.checkpoint.FileCheckpointer;
+import tsukoyachi.camelshop.eventrouting.deadletter.DeadLetterStore;
+import tsukoyachi.camelshop.eventrouting.metrics.EventMetrics;
+import tsukoyachi.camelshop.eventrouting.processing.EventDispatcher;
+import tsukoyachi.camelshop.eventrouting.processing.KeyedLaneExecutor;
 
-import java.time.Instant;
-import java.util.Date;
-import java.util.HashMap;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
 
 @Slf4j
 @Component
+@RequiredArgsConstructor
 public class CsvFileHandler implements FileHandler {
+    private static final String FORMAT = "csv";
+
+    private final KeyedLaneExecutor laneExecutor;
+    private final EventDispatcher eventDispatcher;
+    private final EventMetrics eventMetrics;
+    private final MappedCsvReader mappedCsvReader;
+    private final DeadLetterStore deadLetterStore;
+    private final FileCheckpointer fileCheckpointer;
+
     @Override
     public void process(Exchange exchange) {
         @SuppressWarnings("unchecked")
         List<List<String>> csv = (List<List<String>>) exchange.getIn().getBody();
+        String source = exchange.getIn().getHeader(Exchange.FILE_NAME, "", String.class);
+        FileCheckpointer.Cursor cursor = fileCheckpointer.open(exchange);
+
+        try (KeyedLaneExecutor.Batch batch = laneExecutor.openBatch()) {
+            for (int offset = 0; offset < csv.size(); offset++) {
+                if (!csv.get(offset).isEmpty()) {
+                    submitRow(batch, cursor, source, offset, csv.get(offset));
+                }
+            }
+        }
+    }
+
+    /**
+     * Streaming variant of {@link #process(Exchange)}: records are parsed from the file one at a time
+     * and dispatched before the next line is read, so peak memory does not depend on the file size.
+     * A file with a checkpoint is read from the record it points to.
+     */
+    public void processStream(Exchange exchange) {
+        if (exchange == null || exchange.getIn() == null || exchange.getIn().getBody() == null) {
+            throw new IllegalArgumentException("Exchange and its input message must not be null");
+        }
+
+        InputStream input = exchange.getIn().getBody(InputStream.class);
+        if (input == null) {
+            throw new IllegalArgumentException("Body must be readable as an InputStream");
+        }
+
+        String source = exchange.getIn().getHeader(Exchange.FILE_NAME, "", String.class);
+        FileCheckpointer.Cursor cursor = fileCheckpointer.open(exchange);
+        long count = stream(input, source, cursor, cursor.position(), cursor.index());
+        log.info("Processed CSV with {} row(s)", count);
+    }
+
+    /**
+     * Parses the records of {@code input} from byte {@code from}, the start of record {@code index}.
+     *
+     * @return the number of records read
+     */
+    private long stream(InputStream input, String source, FileCheckpointer.Cursor cursor, long from, long index) {
+        long count = 0;
+        try {
+            input.skipNBytes(from);
+            BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+            try (CSVParser parser = CSVParser.builder()
+                    .setReader(reader)
+                    .setFormat(CSVFormat.DEFAULT)
+                    .setCharset(StandardCharsets.UTF_8)
+                    .setTrackBytes(cursor.isTracking())
+                    .setRecordNumber(index + 1)
+                    .get();
+                 KeyedLaneExecutor.Batch batch = laneExecutor.openBatch()) {
+                Iterator<CSVRecord> records = parser.iterator();
+                while (true) {
+                    long start = System.nanoTime();
+                    if (!records.hasNext()) {
+                        break;
+                    }
+                    CSVRecord record = records.next();
+                    List<String> row = record.toList();
+                    eventMetrics.recordParse(FORMAT, System.nanoTime() - start);
+                    cursor.advance(batch, from + record.getBytePosition(), record.getRecordNumber() - 1);
+                    if (!row.isEmpty()) {
+                        submitRow(batch, cursor, source, record.getRecordNumber() - 1, row);
+                        count++;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to read CSV stream", e);
+        }
+        return count;
+    }
+
+    /**
+     * Variant of {@link #processStream(Exchange)} for large plain files: the file is memory-mapped and
+     * parsed in parallel by {@link MappedCsvReader}, rows are still submitted in file order. Checkpoints
+     * are taken at the end of the mapped chunks. {@code exchange} is the one of the file, only its headers
+     * are used.
+     * <p>
+     * A quoted field spanning several lines can not be parsed from a chunk: the file is read on with the
+     * streaming parser from the chunk holding it.
+     */
+    public void processMapped(Path file, Exchange exchange) {
+        String source = file.getFileName().toString();
+        FileCheckpointer.Cursor cursor = fileCheckpointer.open(exchange);
+        long[] offset = {cursor.index()};
+        long[] chunkEnd = {cursor.position()};
+        long count;
+        try (KeyedLaneExecutor.Batch batch = laneExecutor.openBatch()) {
+            count = mappedCsvReader.read(file, cursor.position(),
+                    row -> submitRow(batch, cursor, source, offset[0]++, row),
+                    end -> {
+                        chunkEnd[0] = end;
+                        cursor.advance(batch, end, offset[0]);
+                    });
+        } catch (MappedCsvReader.MultiLineRecordException e) {
+            log.info("{} has a quoted field spanning several lines, streaming it from byte {}", source, chunkEnd[0]);
+            try (InputStream input = mappedCsvReader.open(file)) {
+                count = offset[0] - cursor.index() + stream(input, source, cursor, chunkEnd[0], offset[0]);
+            } catch (IOException ioe) {
+                throw new UncheckedIOException("Unable to read %s".formatted(file), ioe);
+            }
+        }
+        log.info("Processed mapped CSV with {} row(s)", count);
+    }
+
+    public boolean isMappable(long size) {
+        return mappedCsvReader.accepts(size);
+    }
 
-        csv.stream()
-                .filter(row -> !row.isEmpty())
-                .forEach(row -> processEvent(row.getFirst(), row));
+    /**
+     * Every event type carries the user id in the second column, it is used as ordering key so that all
+     * events of a user (and therefore of each of their orders) are processed in file order.
+     * {@code offset} is the index of the record in the file, reported with the row if it is dead-lettered.
+     */
+    private void submitRow(KeyedLaneExecutor.Batch batch, FileCheckpointer.Cursor cursor, String source, long offset,
+                           List<String> row) {
+        String userId = row.size() > 1 ? row.get(1) : null;
+        batch.submit(userId, () -> processEvent(cursor, source, offset, row));
     }
 
-    private void processEvent(String eventType, List<String> row) {
-        log.info("Processing {} event: {}", eventType, row);
+    private void processEvent(FileCheckpointer.Cursor cursor, String source, long offset, List<String> row) {
+        String eventType = row.getFirst();
+        log.trace("Processing {} event: {}", eventType, row);
 
-        switch (eventType) {
-            case "signup" -> processSignup(row);
-            case "order_created" -> processOrderCreated(row);
-            case "payment_processed" -> processPaymentProcessed(row);
-            case "shipment_delivered" -> processShipmentDelivered(row);
-            default -> log.warn("Unknown event type: {}", eventType);
+        long start = System.nanoTime();
+        ShopEvent event;
+        try {
+            event = switch (eventType) {
+                case "signup" -> processSignup(row);
+                case "order_created" -> processOrderCreated(row);
+                case "payment_processed" -> processPaymentProcessed(row);
+                case "shipment_delivered" -> processShipmentDelivered(row);
+                default -> null;
+            };
+        } catch (RuntimeException e) {
+            // One invalid row does not fail the file, it is set aside with the reason
+            eventMetrics.eventRejected(FORMAT, "invalid");
+            deadLetterStore.write(source, offset, FORMAT, e, CSVFormat.DEFAULT.format(row.toArray()));
+            return;
         }
+        if (event == null) {
+            log.warn("Unknown event type: {}", eventType);
+            eventMetrics.eventRejected(FORMAT, "unknown_type");
+            deadLetterStore.write(source, offset, FORMAT, "Unknown event type: %s".formatted(eventType),
+                    CSVFormat.DEFAULT.format(row.toArray()));
+            return;
+        }
+
+        eventMetrics.recordValidation(FORMAT, eventType, System.nanoTime() - start);
+        eventDispatcher.dispatch(event, cursor);
     }
 
     private void validateRow(List<String> row, int expectedColumns, String eventType) {
@@ -56,12 +217,12 @@ public class CsvFileHandler implements FileHandler {
         }
     }
 
-    private Date parseDate(String dateString) {
+    private long parseDate(String dateString) {
         validateNotEmpty(dateString, "Date string");
-        return Date.from(Instant.parse(dateString));
+        return IsoTimestamps.parseEpochMillis(dateString);
     }
 
-    private void processSignup(List<String> row) {
+    private SignupEvent processSignup(List<String> row) {
         validateRow(row, 5, "signup");
 
         String userId = row.get(1);
@@ -73,16 +234,16 @@ public class CsvFileHandler implements FileHandler {
         validateNotEmpty(username, "Username");
         validateNotEmpty(email, "Email");
 
-        Date createdAt = parseDate(dateString);
+        long createdAt = parseDate(dateString);
         SignupEvent event = new SignupEvent(userId, username, email, createdAt);
-        log.info("Signup event: {}", event);
+        return event;
     }
 
-    private void processOrderCreated(List<String> row) {
+    private OrderCreatedEvent processOrderCreated(List<String> row) {
         validateRow(row, 5, "order_created");
 
-        String orderId = row.get(1);
-        String userId = row.get(2);
+        String userId = row.get(1);
+        String orderId = row.get(2);
         String cartString = row.get(3);
         String dateString = row.get(4);
 
@@ -90,17 +251,17 @@ public class CsvFileHandler implements FileHandler {
         validateNotEmpty(userId, "User ID");
         validateNotEmpty(cartString, "Cart string");
 
-        Map<String, Integer> cart = parseCart(cartString);
-        Date createdAt = parseDate(dateString);
+        Cart cart = CartTokenizer.parse(cartString);
+        long createdAt = parseDate(dateString);
         OrderCreatedEvent event = new OrderCreatedEvent(orderId, userId, cart, createdAt);
-        log.info("Order created event: {}", event);
+        return event;
     }
 
-    private void processPaymentProcessed(List<String> row) {
+    private PaymentProcessedEvent processPaymentProcessed(List<String> row) {
         validateRow(row, 5, "payment_processed");
 
-        String orderId = row.get(1);
-        String userId = row.get(2);
+        String userId = row.get(1);
+        String orderId = row.get(2);
         String billingId = row.get(3);
         String dateString = row.get(4);
 
@@ -108,12 +269,12 @@ public class CsvFileHandler implements FileHandler {
         validateNotEmpty(userId, "User ID");
         validateNotEmpty(billingId, "Billing ID");
 
-        Date processedAt = parseDate(dateString);
+        long processedAt = parseDate(dateString);
         PaymentProcessedEvent event = new PaymentProcessedEvent(orderId, userId, billingId, processedAt);
-        log.info("Payment processed event: {}", event);
+        return event;
     }
 
-    private void processShipmentDelivered(List<String> row) {
+    private ShipmentDeliveredEvent processShipmentDelivered(List<String> row) {
         validateRow(row, 5, "shipment_delivered");
 
         String userId = row.get(1);
@@ -125,21 +286,8 @@ public class CsvFileHandler implements FileHandler {
         validateNotEmpty(orderId, "Order ID");
         validateNotEmpty(parcelId, "Parcel ID");
 
-        Date deliveredAt = parseDate(dateString);
+        long deliveredAt = parseDate(dateString);
         ShipmentDeliveredEvent event = new ShipmentDeliveredEvent(userId, orderId, parcelId, deliveredAt);
-        log.info("Shipment delivered event: {}", event);
-    }
-
-    private Map<String, Integer> parseCart(String cartString) {
-        Map<String, Integer> cart = new HashMap<>();
-
-        for (String item : cartString.split("\\|")) {
-            String[] parts = item.split(":");
-            if (parts.length == 2) {
-                cart.put(parts[0].trim(), Integer.parseInt(parts[1].trim()));
-            }
-        }
-
-        return cart;
+        return event;
     }
 }
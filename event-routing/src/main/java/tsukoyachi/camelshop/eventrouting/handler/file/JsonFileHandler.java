@@ -1,22 +1,51 @@
 package tsukoyachi.camelshop.eventrouting.handler.file;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.camel.Exchange;
 import org.springframework.stereotype.Component;
+import tsukoyachi.camelshop.common.models.Cart;
 import tsukoyachi.camelshop.common.models.OrderCreatedEvent;
 import tsukoyachi.camelshop.common.models.PaymentProcessedEvent;
 import tsukoyachi.camelshop.common.models.ShipmentDeliveredEvent;
+import tsukoyachi.camelshop.common.models.ShopEvent;
 import tsukoyachi.camelshop.common.models.SignupEvent;
+import tsukoyachi.camelshop.common.time.IsoTimestamps;
+import tsukoyachi.camelshop.eventrouting.checkpoint.FileCheckpointer;
+import tsukoyachi.camelshop.eventrouting.deadletter.DeadLetterStore;
+import tsukoyachi.camelshop.eventrouting.metrics.EventMetrics;
+import tsukoyachi.camelshop.eventrouting.processing.EventDispatcher;
+import tsukoyachi.camelshop.eventrouting.processing.KeyedLaneExecutor;
 
-import java.time.Instant;
-import java.util.Date;
-import java.util.HashMap;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
 import java.util.List;
 import java.util.Map;
 
 @Slf4j
 @Component
+@RequiredArgsConstructor
 public class JsonFileHandler implements FileHandler {
+    private static final String FORMAT = "json";
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final TypeReference<Map<String, Object>> JSON_OBJECT = new TypeReference<>() {
+    };
+    private static final byte[] ARRAY_START = {'['};
+
+    private final KeyedLaneExecutor laneExecutor;
+    private final EventDispatcher eventDispatcher;
+    private final EventMetrics eventMetrics;
+    private final DeadLetterStore deadLetterStore;
+    private final FileCheckpointer fileCheckpointer;
+
     @Override
     @SuppressWarnings("unchecked")
     public void process(Exchange exchange) {
@@ -25,45 +54,184 @@ public class JsonFileHandler implements FileHandler {
         }
 
         Object body = exchange.getIn().getBody();
+        String source = exchange.getIn().getHeader(Exchange.FILE_NAME, "", String.class);
+        FileCheckpointer.Cursor cursor = fileCheckpointer.open(exchange);
+
+        try (KeyedLaneExecutor.Batch batch = laneExecutor.openBatch()) {
+            switch (body) {
+                case List<?> list -> {
+                    log.info("Processing JSON list of size {}", list.size());
+                    processJsonList(list, batch, cursor, source);
+                }
+                case Map<?, ?> map -> {
+                    log.info("Processing single JSON object");
+                    submitJsonObject(batch, cursor, source, 0, (Map<String, Object>) map);
+                }
+                default -> throw new IllegalArgumentException(
+                        "Unsupported body type: %s".formatted(body.getClass().getName())
+                );
+            }
+        }
+    }
+
+    /**
+     * Streaming variant of {@link #process(Exchange)}: the file is read token by token and each
+     * element of the root array is bound and handed on before the next one is read, so memory
+     * use only depends on the size of a single event, not on the size of the file. A file with a
+     * checkpoint is read from the array element it points to.
+     */
+    public void processStream(Exchange exchange) {
+        if (exchange == null || exchange.getIn() == null || exchange.getIn().getBody() == null) {
+            throw new IllegalArgumentException("Exchange and its input message must not be null");
+        }
+
+        InputStream input = exchange.getIn().getBody(InputStream.class);
+        if (input == null) {
+            throw new IllegalArgumentException("Body must be readable as an InputStream");
+        }
+
+        String source = exchange.getIn().getHeader(Exchange.FILE_NAME, "", String.class);
+        FileCheckpointer.Cursor cursor = fileCheckpointer.open(exchange);
+        try (JsonParser parser = OBJECT_MAPPER.createParser(resume(input, cursor))) {
+            JsonToken rootToken = parser.nextToken();
+            if (rootToken == null) {
+                log.info("JSON file is empty, skipping processing");
+                return;
+            }
+
+            switch (rootToken) {
+                case START_ARRAY -> {
+                    int count;
+                    try (KeyedLaneExecutor.Batch batch = laneExecutor.openBatch()) {
+                        count = processJsonArray(parser, batch, source, cursor);
+                    }
+                    log.info("Processed JSON list of size {}", count);
+                }
+                case START_OBJECT -> {
+                    log.info("Processing single JSON object");
+                    try (KeyedLaneExecutor.Batch batch = laneExecutor.openBatch()) {
+                        submitJsonObject(batch, cursor, source, 0, parser.readValueAs(JSON_OBJECT));
+                    }
+                }
+                default -> throw new IllegalArgumentException(
+                        "Unsupported JSON root token: %s".formatted(rootToken)
+                );
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to read JSON stream", e);
+        }
+    }
+
+    /**
+     * Skips the content before the checkpoint of the file, the root array is opened again in front of the
+     * element it points to.
+     */
+    private static InputStream resume(InputStream input, FileCheckpointer.Cursor cursor) throws IOException {
+        if (cursor.position() == 0) {
+            return input;
+        }
+        input.skipNBytes(cursor.position());
+        return new SequenceInputStream(new ByteArrayInputStream(ARRAY_START), input);
+    }
 
-        switch (body) {
-            case List<?> list -> {
-                log.info("Processing JSON list of size {}", list.size());
-                processJsonList(list);
+    private int processJsonArray(JsonParser parser, KeyedLaneExecutor.Batch batch, String source,
+                                 FileCheckpointer.Cursor cursor) throws IOException {
+        int count = 0;
+        long offset = cursor.index();
+        // Offset of the parser input in the file, the reopened array is not part of it
+        long origin = cursor.position() > 0 ? cursor.position() - ARRAY_START.length : 0;
+        JsonToken token;
+        long start = System.nanoTime();
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if (token == null) {
+                throw new IllegalArgumentException("Unexpected end of JSON array");
             }
-            case Map<?, ?> map -> {
-                log.info("Processing single JSON object");
-                processJsonObject((Map<String, Object>) map);
+            // Byte offsets are only known for byte based (UTF-8) content
+            long position = parser.currentTokenLocation().getByteOffset();
+            if (token == JsonToken.START_OBJECT) {
+                Map<String, Object> jsonObject = parser.readValueAs(JSON_OBJECT);
+                eventMetrics.recordParse(FORMAT, System.nanoTime() - start);
+                if (position >= 0) {
+                    cursor.advance(batch, origin + position, offset);
+                }
+                submitJsonObject(batch, cursor, source, offset, jsonObject);
+                count++;
+            } else {
+                // Same behaviour as the tree mode: anything that is not an object is ignored
+                parser.skipChildren();
             }
-            default -> throw new IllegalArgumentException(
-                    "Unsupported body type: %s".formatted(body.getClass().getName())
-            );
+            offset++;
+            start = System.nanoTime();
         }
+        return count;
     }
 
     @SuppressWarnings("unchecked")
-    private void processJsonList(List<?> jsonList) {
-        jsonList.stream()
-                .filter(Map.class::isInstance)
-                .map(item -> (Map<String, Object>) item)
-                .forEach(this::processJsonObject);
+    private void processJsonList(List<?> jsonList, KeyedLaneExecutor.Batch batch, FileCheckpointer.Cursor cursor,
+                                 String source) {
+        for (int offset = 0; offset < jsonList.size(); offset++) {
+            if (jsonList.get(offset) instanceof Map<?, ?> jsonObject) {
+                submitJsonObject(batch, cursor, source, offset, (Map<String, Object>) jsonObject);
+            }
+        }
+    }
+
+    /**
+     * Events are ordered per user id, which also keeps the events of each order in file order.
+     * {@code offset} is the index of the object in the root array, reported with it if it is dead-lettered.
+     */
+    private void submitJsonObject(KeyedLaneExecutor.Batch batch, FileCheckpointer.Cursor cursor, String source,
+                                  long offset, Map<String, Object> jsonObject) {
+        String userId = jsonObject.get("userId") instanceof String value ? value : null;
+        batch.submit(userId, () -> processJsonObject(cursor, source, offset, jsonObject));
     }
 
-    private void processJsonObject(Map<String, Object> jsonObject) {
-        String eventType = (String) jsonObject.get("eventType");
-        if (eventType == null || eventType.isEmpty()) {
-            log.warn("Missing or empty eventType in JSON object: {}", jsonObject);
+    private void processJsonObject(FileCheckpointer.Cursor cursor, String source, long offset,
+                                   Map<String, Object> jsonObject) {
+        if (!(jsonObject.get("eventType") instanceof String eventType) || eventType.isEmpty()) {
+            // Only the position is logged, the event itself is in the dead-letter file
+            log.warn("Missing or empty eventType in JSON event {} of {}", offset, source);
+            log.trace("Event without type: {}", jsonObject);
+            eventMetrics.eventRejected(FORMAT, "missing_type");
+            deadLetterStore.write(source, offset, FORMAT, "Missing or empty eventType", toJson(jsonObject));
+            return;
+        }
+
+        log.trace("Processing {} event from JSON: {}", eventType, jsonObject);
+
+        long start = System.nanoTime();
+        ShopEvent event;
+        try {
+            event = switch (eventType) {
+                case "signup" -> processSignupFromJson(jsonObject);
+                case "order_created" -> processOrderCreatedFromJson(jsonObject);
+                case "payment_processed" -> processPaymentProcessedFromJson(jsonObject);
+                case "shipment_delivered" -> processShipmentDeliveredFromJson(jsonObject);
+                default -> null;
+            };
+        } catch (RuntimeException e) {
+            // One invalid object does not fail the file, it is set aside with the reason
+            eventMetrics.eventRejected(FORMAT, "invalid");
+            deadLetterStore.write(source, offset, FORMAT, e, toJson(jsonObject));
+            return;
+        }
+        if (event == null) {
+            log.warn("Unknown event type: {}", eventType);
+            eventMetrics.eventRejected(FORMAT, "unknown_type");
+            deadLetterStore.write(source, offset, FORMAT, "Unknown event type: %s".formatted(eventType),
+                    toJson(jsonObject));
             return;
         }
 
-        log.info("Processing {} event from JSON: {}", eventType, jsonObject);
+        eventMetrics.recordValidation(FORMAT, eventType, System.nanoTime() - start);
+        eventDispatcher.dispatch(event, cursor);
+    }
 
-        switch (eventType) {
-            case "signup" -> processSignupFromJson(jsonObject);
-            case "order_created" -> processOrderCreatedFromJson(jsonObject);
-            case "payment_processed" -> processPaymentProcessedFromJson(jsonObject);
-            case "shipment_delivered" -> processShipmentDeliveredFromJson(jsonObject);
-            default -> log.warn("Unknown event type: {}", eventType);
+    private static String toJson(Map<String, Object> jsonObject) {
+        try {
+            return OBJECT_MAPPER.writeValueAsString(jsonObject);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Unable to serialize JSON object", e);
         }
     }
 
@@ -79,54 +247,54 @@ public class JsonFileHandler implements FileHandler {
         return (String) json.get(fieldName);
     }
 
-    private Date parseDateFromJson(Map<String, Object> json, String fieldName) {
+    private long parseDateFromJson(Map<String, Object> json, String fieldName) {
         String dateString = getStringValue(json, fieldName);
-        return Date.from(Instant.parse(dateString));
+        return IsoTimestamps.parseEpochMillis(dateString);
     }
 
-    private void processSignupFromJson(Map<String, Object> json) {
+    private SignupEvent processSignupFromJson(Map<String, Object> json) {
         String userId = getStringValue(json, "userId");
         String username = getStringValue(json, "username");
         String email = getStringValue(json, "email");
-        Date createdAt = parseDateFromJson(json, "createdAt");
+        long createdAt = parseDateFromJson(json, "createdAt");
 
         SignupEvent event = new SignupEvent(userId, username, email, createdAt);
-        log.info("Signup event: {}", event);
+        return event;
     }
 
-    private void processOrderCreatedFromJson(Map<String, Object> json) {
+    private OrderCreatedEvent processOrderCreatedFromJson(Map<String, Object> json) {
         String orderId = getStringValue(json, "orderId");
         String userId = getStringValue(json, "userId");
-        Date createdAt = parseDateFromJson(json, "createdAt");
-        Map<String, Integer> cart = parseCartFromJson(json);
+        long createdAt = parseDateFromJson(json, "createdAt");
+        Cart cart = parseCartFromJson(json);
 
         OrderCreatedEvent event = new OrderCreatedEvent(orderId, userId, cart, createdAt);
-        log.info("Order created event: {}", event);
+        return event;
     }
 
-    private void processPaymentProcessedFromJson(Map<String, Object> json) {
+    private PaymentProcessedEvent processPaymentProcessedFromJson(Map<String, Object> json) {
         String orderId = getStringValue(json, "orderId");
         String userId = getStringValue(json, "userId");
         String billingId = getStringValue(json, "billId");
-        Date processedAt = parseDateFromJson(json, "processedAt");
+        long processedAt = parseDateFromJson(json, "processedAt");
 
         PaymentProcessedEvent event = new PaymentProcessedEvent(orderId, userId, billingId, processedAt);
-        log.info("Payment processed event: {}", event);
+        return event;
     }
 
-    private void processShipmentDeliveredFromJson(Map<String, Object> json) {
+    private ShipmentDeliveredEvent processShipmentDeliveredFromJson(Map<String, Object> json) {
         String userId = getStringValue(json, "userId");
         String orderId = getStringValue(json, "orderId");
         String parcelId = getStringValue(json, "parcelId");
-        Date deliveredAt = parseDateFromJson(json, "deliveredAt");
+        long deliveredAt = parseDateFromJson(json, "deliveredAt");
 
         ShipmentDeliveredEvent event = new ShipmentDeliveredEvent(userId, orderId, parcelId, deliveredAt);
-        log.info("Shipment delivered event: {}", event);
+        return event;
     }
 
     @SuppressWarnings("unchecked")
-    private Map<String, Integer> parseCartFromJson(Map<String, Object> json) {
-        Map<String, Integer> cart = new HashMap<>();
+    private Cart parseCartFromJson(Map<String, Object> json) {
+        Cart cart = new Cart();
         Object itemsObj = json.get("items");
 
         switch (itemsObj) {
@@ -138,7 +306,7 @@ public class JsonFileHandler implements FileHandler {
                         Object quantityObj = itemData.get("quantity");
 
                         if (itemId != null && quantityObj != null) {
-                            Integer quantity = switch (quantityObj) {
+                            int quantity = switch (quantityObj) {
                                 case Integer i -> i;
                                 case Object obj -> Integer.parseInt(obj.toString());
                             };
@@ -149,7 +317,7 @@ public class JsonFileHandler implements FileHandler {
             case Map<?, ?> itemsMap -> {
                 Map<String, Object> items = (Map<String, Object>) itemsMap;
                 items.forEach((key, value) -> {
-                    Integer quantity = switch (value) {
+                    int quantity = switch (value) {
                         case Integer i -> i;
                         case Object obj -> Integer.parseInt(obj.toString());
                     };
@@ -0,0 +1,288 @@
+package tsukoyachi.camelshop.eventrouting.handler.file;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+/**
+ * CSV reader for large files. The file is cut into chunks of about {@code chunk-size} bytes ending on a
+ * line break, each chunk is memory-mapped and parsed on its own thread. Parsed chunks are handed to the
+ * consumer in file order, so rows come out exactly as with a sequential parser; at most two chunks per
+ * parser thread are mapped at a time.
+ * <p>
+ * Chunks are cut on line breaks: a quoted field spanning several lines stops the read with a
+ * {@link MultiLineRecordException}, the rest of the file is left to a sequential parser. Blank lines are
+ * skipped, like with {@code CSVFormat.DEFAULT}.
+ */
+@Slf4j
+@Component
+public class MappedCsvReader {
+    private static final int MAX_FIELDS = 64;
+    private static final int BOUNDARY_PROBE = 8 * 1024;
+
+    private final boolean enabled;
+    private final long minSize;
+    private final long chunkSize;
+    private final int parallelism;
+    private final ExecutorService parsers;
+
+    /**
+     * Chunk being parsed, {@code end} is its offset in the file.
+     */
+    private record Chunk(Future<List<List<String>>> rows, long end) {
+    }
+
+    /**
+     * A quoted field spans several lines. The records of the chunks before it were handed to the consumer,
+     * up to the last chunk end reported; none of the chunk holding it were.
+     */
+    public static final class MultiLineRecordException extends IllegalArgumentException {
+        MultiLineRecordException() {
+            super("Quoted field spanning several lines");
+        }
+    }
+
+    public MappedCsvReader(@Value("${camelshop.event-routing.mapped-csv.enabled:true}") boolean enabled,
+                           @Value("${camelshop.event-routing.mapped-csv.min-size:64MB}") DataSize minSize,
+                           @Value("${camelshop.event-routing.mapped-csv.chunk-size:16MB}") DataSize chunkSize,
+                           @Value("${camelshop.event-routing.mapped-csv.parallelism:0}") int parallelism) {
+        this.enabled = enabled;
+        this.minSize = minSize.toBytes();
+        // A mapping is limited to 2 GB
+        this.chunkSize = Math.clamp(chunkSize.toBytes(), BOUNDARY_PROBE, Integer.MAX_VALUE / 2);
+        this.parallelism = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        this.parsers = enabled
+                ? Executors.newFixedThreadPool(this.parallelism, Thread.ofPlatform().name("csv-parser-", 0).daemon().factory())
+                : null;
+    }
+
+    /**
+     * Whether a plain (uncompressed) file of this size should be read with this reader.
+     */
+    public boolean accepts(long size) {
+        return enabled && size >= minSize;
+    }
+
+    /**
+     * Reads every record of the file, in order.
+     *
+     * @return the number of records
+     */
+    public long read(Path file, Consumer<List<String>> consumer) {
+        return read(file, 0, consumer, end -> {
+        });
+    }
+
+    /**
+     * Reads the records of the file starting at {@code from}, in order. {@code chunkEnd} is called with
+     * the end of each chunk once its records were handed to the consumer: the start of the next record.
+     * Offsets are counted after the byte order mark, {@code from} must be the start of a line.
+     *
+     * @return the number of records read
+     */
+    public long read(Path file, long from, Consumer<List<String>> consumer, LongConsumer chunkEnd) {
+        if (!enabled) {
+            throw new IllegalStateException("Memory-mapped CSV reader is disabled");
+        }
+
+        Deque<Chunk> inFlight = new ArrayDeque<>();
+        long count = 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long origin = skipByteOrderMark(channel);
+            long position = origin + from;
+            while (position < size || !inFlight.isEmpty()) {
+                while (position < size && inFlight.size() < 2 * parallelism) {
+                    long end = nextBoundary(channel, Math.min(size, position + chunkSize), size);
+                    ByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, position, end - position);
+                    inFlight.add(new Chunk(parsers.submit(() -> parse(chunk)), end));
+                    position = end;
+                }
+
+                Chunk chunk = inFlight.removeFirst();
+                for (List<String> row : await(chunk.rows())) {
+                    consumer.accept(row);
+                    count++;
+                }
+                chunkEnd.accept(chunk.end() - origin);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to map %s".formatted(file), e);
+        } finally {
+            inFlight.forEach(chunk -> chunk.rows().cancel(true));
+        }
+        return count;
+    }
+
+    /**
+     * Stream over the file after its byte order mark, where the offsets of
+     * {@link #read(Path, long, Consumer, LongConsumer)} are counted from.
+     */
+    public InputStream open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            channel.position(skipByteOrderMark(channel));
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return Channels.newInputStream(channel);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (parsers != null) {
+            parsers.shutdownNow();
+        }
+    }
+
+    /**
+     * Parses the records of a chunk, the chunk ends with a line break or at the end of the file.
+     */
+    static List<List<String>> parse(ByteBuffer chunk) {
+        List<List<String>> rows = new ArrayList<>();
+        int limit = chunk.limit();
+        int position = 0;
+        int[] bounds = new int[2 * MAX_FIELDS];
+
+        while (position < limit) {
+            int fields = 0;
+            long escaped = 0;
+            boolean quotedRecord = false;
+            boolean endOfRecord = false;
+            while (!endOfRecord) {
+                if (fields == MAX_FIELDS) {
+                    throw new IllegalArgumentException("CSV record has more than %d fields".formatted(MAX_FIELDS));
+                }
+
+                int start;
+                int end;
+                if (position < limit && chunk.get(position) == '"') {
+                    quotedRecord = true;
+                    start = ++position;
+                    while (true) {
+                        if (position >= limit) {
+                            throw new IllegalArgumentException("Unterminated quoted field");
+                        }
+                        byte b = chunk.get(position);
+                        if (b == '\n') {
+                            // Chunks are cut on line breaks, a record must hold on a single line
+                            throw new MultiLineRecordException();
+                        }
+                        if (b == '"') {
+                            if (position + 1 < limit && chunk.get(position + 1) == '"') {
+                                escaped |= 1L << fields;
+                                position += 2;
+                                continue;
+                            }
+                            end = position++;
+                            break;
+                        }
+                        position++;
+                    }
+                } else {
+                    start = position;
+                    while (position < limit) {
+                        byte b = chunk.get(position);
+                        if (b == ',' || b == '\n' || b == '\r') {
+                            break;
+                        }
+                        position++;
+                    }
+                    end = position;
+                }
+                bounds[2 * fields] = start;
+                bounds[2 * fields + 1] = end;
+                fields++;
+
+                if (position >= limit) {
+                    endOfRecord = true;
+                } else {
+                    byte separator = chunk.get(position++);
+                    if (separator == '\r') {
+                        if (position < limit && chunk.get(position) == '\n') {
+                            position++;
+                        }
+                        endOfRecord = true;
+                    } else if (separator == '\n') {
+                        endOfRecord = true;
+                    } else if (separator != ',') {
+                        throw new IllegalArgumentException("Invalid character after quoted field: %c".formatted((char) separator));
+                    }
+                }
+            }
+
+            boolean blank = fields == 1 && !quotedRecord && bounds[0] == bounds[1];
+            if (!blank) {
+                // Decoded here, on the parser thread, rather than on the thread consuming the rows
+                rows.add(MappedCsvRow.decode(chunk, bounds, fields, escaped));
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Offset right after the first line break at or after {@code from}, or the end of the file.
+     */
+    private static long nextBoundary(FileChannel channel, long from, long size) throws IOException {
+        ByteBuffer probe = ByteBuffer.allocate(BOUNDARY_PROBE);
+        long position = from;
+        while (position < size) {
+            probe.clear();
+            int read = channel.read(probe, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (probe.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    private static long skipByteOrderMark(FileChannel channel) throws IOException {
+        ByteBuffer head = ByteBuffer.allocate(3);
+        channel.read(head, 0);
+        boolean bom = head.position() == 3
+                && head.get(0) == (byte) 0xEF && head.get(1) == (byte) 0xBB && head.get(2) == (byte) 0xBF;
+        return bom ? 3 : 0;
+    }
+
+    private static <T> T await(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while parsing CSV chunk", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException("Unable to parse CSV chunk", e.getCause());
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package tsukoyachi.camelshop.eventrouting.handler.file;
+
+import tsukoyachi.camelshop.common.models.OrderCreatedEvent;
+import tsukoyachi.camelshop.common.models.PaymentProcessedEvent;
+import tsukoyachi.camelshop.common.models.ShipmentDeliveredEvent;
+import tsukoyachi.camelshop.common.models.SignupEvent;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Decodes a CSV record of a mapped file region. Each cell goes straight from the mapped bytes to its final
+ * {@code String}, the event type column is matched against the known types byte by byte and never allocated.
+ * The decoded record keeps no reference to the mapping, which is released once the rows of its chunk are
+ * consumed.
+ */
+final class MappedCsvRow {
+    private static final byte[][] EVENT_TYPES = {
+            SignupEvent.TYPE.getBytes(StandardCharsets.US_ASCII),
+            OrderCreatedEvent.TYPE.getBytes(StandardCharsets.US_ASCII),
+            PaymentProcessedEvent.TYPE.getBytes(StandardCharsets.US_ASCII),
+            ShipmentDeliveredEvent.TYPE.getBytes(StandardCharsets.US_ASCII)
+    };
+    private static final String[] EVENT_TYPE_NAMES = {
+            SignupEvent.TYPE, OrderCreatedEvent.TYPE, PaymentProcessedEvent.TYPE, ShipmentDeliveredEvent.TYPE
+    };
+
+    private MappedCsvRow() {
+    }
+
+    /**
+     * @param bounds  start (inclusive) and end (exclusive) offset of each field, quotes excluded
+     * @param fields  number of fields of the record, the first {@code 2 * fields} bounds are used
+     * @param escaped bit i is set when field i holds escaped quotes ({@code ""})
+     */
+    static List<String> decode(ByteBuffer buffer, int[] bounds, int fields, long escaped) {
+        String[] values = new String[fields];
+        for (int i = 0; i < fields; i++) {
+            String eventType = i == 0 ? eventType(buffer, bounds[0], bounds[1]) : null;
+            values[i] = eventType != null ? eventType : decode(buffer, bounds[2 * i], bounds[2 * i + 1],
+                    i < Long.SIZE && (escaped & (1L << i)) != 0);
+        }
+        return Arrays.asList(values);
+    }
+
+    private static String eventType(ByteBuffer buffer, int start, int end) {
+        for (int i = 0; i < EVENT_TYPES.length; i++) {
+            if (matches(buffer, start, end - start, EVENT_TYPES[i])) {
+                return EVENT_TYPE_NAMES[i];
+            }
+        }
+        return null;
+    }
+
+    private static boolean matches(ByteBuffer buffer, int start, int length, byte[] expected) {
+        if (length != expected.length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (buffer.get(start + i) != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String decode(ByteBuffer buffer, int start, int end, boolean unescape) {
+        byte[] bytes = new byte[end - start];
+        buffer.get(start, bytes);
+        String value = new String(bytes, StandardCharsets.UTF_8);
+        return unescape ? value.replace("\"\"", "\"") : value;
+    }
+}
@@ -0,0 +1,382 @@
+package tsukoyachi.camelshop.eventrouting.handler.file;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.camel.Exchange;
+import org.springframework.stereotype.Component;
+import tsukoyachi.camelshop.common.models.Cart;
+import tsukoyachi.camelshop.common.models.OrderCreatedEvent;
+import tsukoyachi.camelshop.common.models.PaymentProcessedEvent;
+import tsukoyachi.camelshop.common.models.ShipmentDeliveredEvent;
+import tsukoyachi.camelshop.common.models.ShopEvent;
+import tsukoyachi.camelshop.common.models.SignupEvent;
+import tsukoyachi.camelshop.common.time.IsoTimestamps;
+import tsukoyachi.camelshop.eventrouting.checkpoint.FileCheckpointer;
+import tsukoyachi.camelshop.eventrouting.deadletter.DeadLetterStore;
+import tsukoyachi.camelshop.eventrouting.metrics.EventMetrics;
+import tsukoyachi.camelshop.eventrouting.processing.EventDispatcher;
+import tsukoyachi.camelshop.eventrouting.processing.KeyedLaneExecutor;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Pull-parser counterpart of {@link XmlFileHandler}. The document is read in a single forward pass
+ * and every {@code <event>} element is handed on as soon as its end tag is reached, no DOM is built.
+ * Checkpoints are taken after the children of the root element, tracked by {@link XmlBoundaryInputStream}.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class StaxXmlFileHandler implements FileHandler {
+    private static final String FORMAT = "xml";
+    private static final XMLInputFactory XML_INPUT_FACTORY = createInputFactory();
+    private static final XMLOutputFactory XML_OUTPUT_FACTORY = XMLOutputFactory.newFactory();
+
+    private final KeyedLaneExecutor laneExecutor;
+    private final EventDispatcher eventDispatcher;
+    private final EventMetrics eventMetrics;
+    private final DeadLetterStore deadLetterStore;
+    private final FileCheckpointer fileCheckpointer;
+
+    @Override
+    public void process(Exchange exchange) {
+        if (exchange == null || exchange.getIn() == null || exchange.getIn().getBody() == null) {
+            throw new IllegalArgumentException("Exchange and its input message must not be null");
+        }
+
+        InputStream body = exchange.getIn().getBody(InputStream.class);
+        if (body == null) {
+            throw new IllegalArgumentException("Body must be readable as an InputStream");
+        }
+
+        try (InputStream input = new BufferedInputStream(body)) {
+            if (isBlank(input)) {
+                log.info("XML file is empty, skipping processing");
+                return;
+            }
+
+            long count = processEvents(input, exchange.getIn().getHeader(Exchange.FILE_NAME, "", String.class),
+                    fileCheckpointer.open(exchange));
+            log.info("Processed XML with {} event(s)", count);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to read XML stream", e);
+        }
+    }
+
+    /**
+     * Reads the events of the document, from the checkpoint of the cursor if it has one.
+     *
+     * @return the number of events read, including the ones before the checkpoint
+     */
+    private long processEvents(InputStream input, String source, FileCheckpointer.Cursor cursor) throws IOException {
+        XmlBoundaryInputStream boundaries = cursor.isTracking()
+                ? new XmlBoundaryInputStream(input, cursor.position())
+                : null;
+        XMLStreamReader reader = null;
+        try (KeyedLaneExecutor.Batch batch = laneExecutor.openBatch()) {
+            reader = XML_INPUT_FACTORY.createXMLStreamReader(boundaries != null ? boundaries : input);
+            long count = cursor.index();
+            int depth = 0;
+            long start = System.nanoTime();
+            while (reader.hasNext()) {
+                int token = reader.next();
+                if (token == XMLStreamConstants.START_ELEMENT && "event".equals(reader.getLocalName())) {
+                    readEvent(reader, batch, cursor, source, count, start);
+                    count++;
+                    if (boundaries != null && depth == 1) {
+                        cursor.advance(batch, boundaries.nextBoundary(), count);
+                    }
+                    start = System.nanoTime();
+                } else if (token == XMLStreamConstants.START_ELEMENT) {
+                    depth++;
+                } else if (token == XMLStreamConstants.END_ELEMENT && --depth == 1 && boundaries != null) {
+                    // End of another child of the root element, a point to resume at as well
+                    cursor.advance(batch, boundaries.nextBoundary(), count);
+                }
+            }
+            return count;
+        } catch (XMLStreamException e) {
+            throw new IllegalArgumentException("Invalid XML content: %s".formatted(e.getMessage()), e);
+        } finally {
+            closeQuietly(reader);
+        }
+    }
+
+    /**
+     * Reads the children of the current {@code <event>} element, the reader is left on its end tag.
+     * The event is then processed in its user's lane, which keeps the events of each order in file order.
+     * {@code offset} is the index of the event in the file, {@code start} is the time at which reading the
+     * event began, for the parse timer.
+     */
+    private void readEvent(XMLStreamReader reader, KeyedLaneExecutor.Batch batch, FileCheckpointer.Cursor cursor,
+                           String source, long offset, long start) throws XMLStreamException {
+        Map<String, String> fields = new HashMap<>();
+        Cart cart = new Cart();
+
+        while (reader.hasNext()) {
+            int token = reader.next();
+            if (token == XMLStreamConstants.END_ELEMENT) {
+                break;
+            }
+            if (token == XMLStreamConstants.START_ELEMENT) {
+                String name = reader.getLocalName();
+                if ("items".equals(name)) {
+                    readItems(reader, cart);
+                } else {
+                    fields.put(name, readElementText(reader));
+                }
+            }
+        }
+
+        eventMetrics.recordParse(FORMAT, System.nanoTime() - start);
+        batch.submit(fields.get("userId"), () -> processXmlEvent(cursor, source, offset, fields, cart));
+    }
+
+    private void readItems(XMLStreamReader reader, Cart cart) throws XMLStreamException {
+        while (reader.hasNext()) {
+            int token = reader.next();
+            if (token == XMLStreamConstants.END_ELEMENT) {
+                return;
+            }
+            if (token == XMLStreamConstants.START_ELEMENT) {
+                if ("item".equals(reader.getLocalName())) {
+                    readItem(reader, cart);
+                } else {
+                    readElementText(reader);
+                }
+            }
+        }
+    }
+
+    private void readItem(XMLStreamReader reader, Cart cart) throws XMLStreamException {
+        String itemId = null;
+        String quantityStr = null;
+
+        while (reader.hasNext()) {
+            int token = reader.next();
+            if (token == XMLStreamConstants.END_ELEMENT) {
+                break;
+            }
+            if (token == XMLStreamConstants.START_ELEMENT) {
+                String name = reader.getLocalName();
+                String text = readElementText(reader);
+                switch (name) {
+                    case "itemId" -> itemId = text;
+                    case "quantity" -> quantityStr = text;
+                    default -> { /* Unknown item field */ }
+                }
+            }
+        }
+
+        if (itemId != null && quantityStr != null) {
+            try {
+                cart.put(itemId, Integer.parseInt(quantityStr));
+            } catch (NumberFormatException e) {
+                log.warn("Invalid quantity value '{}' for item '{}'", quantityStr, itemId);
+            }
+        }
+    }
+
+    /**
+     * Returns the trimmed text of the current element and moves the reader to its end tag,
+     * text of nested elements is skipped.
+     */
+    private String readElementText(XMLStreamReader reader) throws XMLStreamException {
+        StringBuilder text = new StringBuilder();
+        int depth = 1;
+
+        while (depth > 0) {
+            switch (reader.next()) {
+                case XMLStreamConstants.CHARACTERS, XMLStreamConstants.CDATA -> {
+                    if (depth == 1) {
+                        text.append(reader.getText());
+                    }
+                }
+                case XMLStreamConstants.START_ELEMENT -> depth++;
+                case XMLStreamConstants.END_ELEMENT -> depth--;
+                default -> { /* Comments and processing instructions are ignored */ }
+            }
+        }
+
+        return text.toString().trim();
+    }
+
+    private void processXmlEvent(FileCheckpointer.Cursor cursor, String source, long offset,
+                                 Map<String, String> fields, Cart cart) {
+        String eventType = fields.get("eventType");
+        if (eventType == null || eventType.isEmpty()) {
+            log.warn("Missing or empty eventType in XML event {} of {}", offset, source);
+            log.trace("Event without type: {}", fields);
+            eventMetrics.eventRejected(FORMAT, "missing_type");
+            deadLetterStore.write(source, offset, FORMAT, "Missing or empty eventType", toXml(fields, cart));
+            return;
+        }
+
+        log.trace("Processing {} event from XML", eventType);
+
+        long start = System.nanoTime();
+        ShopEvent event;
+        try {
+            event = switch (eventType) {
+                case "signup" -> processSignupFromXml(fields);
+                case "order_created" -> processOrderCreatedFromXml(fields, cart);
+                case "payment_processed" -> processPaymentProcessedFromXml(fields);
+                case "shipment_delivered" -> processShipmentDeliveredFromXml(fields);
+                default -> null;
+            };
+        } catch (RuntimeException e) {
+            // One invalid event does not fail the file, it is set aside with the reason
+            eventMetrics.eventRejected(FORMAT, "invalid");
+            deadLetterStore.write(source, offset, FORMAT, e, toXml(fields, cart));
+            return;
+        }
+        if (event == null) {
+            log.warn("Unknown event type: {}", eventType);
+            eventMetrics.eventRejected(FORMAT, "unknown_type");
+            deadLetterStore.write(source, offset, FORMAT, "Unknown event type: %s".formatted(eventType),
+                    toXml(fields, cart));
+            return;
+        }
+
+        eventMetrics.recordValidation(FORMAT, eventType, System.nanoTime() - start);
+        eventDispatcher.dispatch(event, cursor);
+    }
+
+    private String getRequiredField(Map<String, String> fields, String fieldName) {
+        String value = fields.get(fieldName);
+        if (value == null || value.isEmpty()) {
+            throw new IllegalArgumentException("%s must not be null or empty".formatted(fieldName));
+        }
+        return value;
+    }
+
+    private long parseDateFromXml(Map<String, String> fields, String fieldName) {
+        return IsoTimestamps.parseEpochMillis(getRequiredField(fields, fieldName));
+    }
+
+    private SignupEvent processSignupFromXml(Map<String, String> fields) {
+        String userId = getRequiredField(fields, "userId");
+        String username = getRequiredField(fields, "username");
+        String email = getRequiredField(fields, "email");
+        long createdAt = parseDateFromXml(fields, "createdAt");
+
+        SignupEvent event = new SignupEvent(userId, username, email, createdAt);
+        return event;
+    }
+
+    private OrderCreatedEvent processOrderCreatedFromXml(Map<String, String> fields, Cart cart) {
+        String orderId = getRequiredField(fields, "orderId");
+        String userId = getRequiredField(fields, "userId");
+        long createdAt = parseDateFromXml(fields, "createdAt");
+
+        OrderCreatedEvent event = new OrderCreatedEvent(orderId, userId, cart, createdAt);
+        return event;
+    }
+
+    private PaymentProcessedEvent processPaymentProcessedFromXml(Map<String, String> fields) {
+        String orderId = getRequiredField(fields, "orderId");
+        String userId = getRequiredField(fields, "userId");
+        String billingId = getRequiredField(fields, "billId");
+        long processedAt = parseDateFromXml(fields, "createdAt"); // XML uses "createdAt" for all timestamps
+
+        PaymentProcessedEvent event = new PaymentProcessedEvent(orderId, userId, billingId, processedAt);
+        return event;
+    }
+
+    private ShipmentDeliveredEvent processShipmentDeliveredFromXml(Map<String, String> fields) {
+        String userId = getRequiredField(fields, "userId");
+        String orderId = getRequiredField(fields, "orderId");
+        String parcelId = getRequiredField(fields, "parcelId");
+        long deliveredAt = parseDateFromXml(fields, "createdAt"); // XML uses "createdAt" for all timestamps
+
+        ShipmentDeliveredEvent event = new ShipmentDeliveredEvent(userId, orderId, parcelId, deliveredAt);
+        return event;
+    }
+
+    /**
+     * Writes the event back as an {@code <event>} element, from what was read of it.
+     */
+    private static String toXml(Map<String, String> fields, Cart cart) {
+        StringWriter xml = new StringWriter();
+        try {
+            XMLStreamWriter writer = XML_OUTPUT_FACTORY.createXMLStreamWriter(xml);
+            writer.writeStartElement("event");
+            for (Map.Entry<String, String> field : fields.entrySet()) {
+                writeElement(writer, field.getKey(), field.getValue());
+            }
+            if (!cart.isEmpty()) {
+                writer.writeStartElement("items");
+                for (int i = 0; i < cart.size(); i++) {
+                    writer.writeStartElement("item");
+                    writeElement(writer, "itemId", cart.itemId(i));
+                    writeElement(writer, "quantity", Integer.toString(cart.quantity(i)));
+                    writer.writeEndElement();
+                }
+                writer.writeEndElement();
+            }
+            writer.writeEndElement();
+            writer.close();
+        } catch (XMLStreamException e) {
+            throw new IllegalStateException("Unable to write XML event", e);
+        }
+        return xml.toString();
+    }
+
+    private static void writeElement(XMLStreamWriter writer, String name, String text) throws XMLStreamException {
+        writer.writeStartElement(name);
+        writer.writeCharacters(text);
+        writer.writeEndElement();
+    }
+
+    /**
+     * Peeks at the stream to tell an empty (or whitespace only) file apart from a malformed one.
+     */
+    private static boolean isBlank(InputStream input) throws IOException {
+        input.mark(1024);
+        try {
+            for (int i = 0; i < 1024; i++) {
+                int b = input.read();
+                if (b == -1) {
+                    return true;
+                }
+                if (!Character.isWhitespace(b)) {
+                    return false;
+                }
+            }
+            return false;
+        } finally {
+            input.reset();
+        }
+    }
+
+    private static void closeQuietly(XMLStreamReader reader) {
+        if (reader == null) {
+            return;
+        }
+        try {
+            reader.close();
+        } catch (XMLStreamException e) {
+            log.debug("Unable to close XML stream reader", e);
+        }
+    }
+
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        return factory;
+    }
+}
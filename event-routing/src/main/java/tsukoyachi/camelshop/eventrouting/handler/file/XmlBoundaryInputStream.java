@@ -0,0 +1,229 @@
+package tsukoyachi.camelshop.eventrouting.handler.file;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Stream between an XML document and the StAX parser of {@link StaxXmlFileHandler}, recording the byte
+ * offset right after the end tag of each child of the root element: the points a checkpoint can resume at.
+ * The JDK parser does not report byte offsets, they are found by this small lexer instead. It only tells
+ * tags apart from comments, CDATA sections, processing instructions, DOCTYPE and attribute values, which
+ * is all it takes to follow the element depth of an ASCII compatible document.
+ * <p>
+ * To resume, the head of the document (up to the end of the root start tag) is read and kept, then the
+ * content up to the checkpoint is skipped: the parser sees the head followed by the remaining children,
+ * as if the skipped ones had never been there.
+ */
+final class XmlBoundaryInputStream extends InputStream {
+    private static final int TEXT = 0;
+    private static final int MARKUP = 1;
+    private static final int START_TAG = 2;
+    private static final int ATTRIBUTE_VALUE = 3;
+    private static final int END_TAG = 4;
+    private static final int DECLARATION = 5;
+    private static final int COMMENT_START = 6;
+    private static final int COMMENT = 7;
+    private static final int CDATA_START = 8;
+    private static final int CDATA = 9;
+    private static final int DOCTYPE = 10;
+    private static final int PROCESSING_INSTRUCTION = 11;
+
+    private final InputStream input;
+    private final Deque<Long> boundaries = new ArrayDeque<>();
+    private byte[] head = new byte[0];
+    private int headPosition;
+
+    private long position;
+    private int depth;
+    private int state = TEXT;
+    // Quote closing the current attribute value, or DOCTYPE literal when not 0
+    private int quote;
+    // Last byte of the current tag was '/', or count of '-', ']' or '?' just read in a comment, CDATA or PI
+    private int marker;
+    // Nesting of '[' in a DOCTYPE declaration
+    private int brackets;
+
+    /**
+     * @param resumeAt offset right after a child of the root element, as returned by {@link #nextBoundary()},
+     *                 or 0 to read the document from the start
+     */
+    XmlBoundaryInputStream(InputStream input, long resumeAt) throws IOException {
+        this.input = input;
+        if (resumeAt > 0) {
+            ByteArrayOutputStream rootStart = new ByteArrayOutputStream();
+            while (depth == 0) {
+                int b = input.read();
+                if (b < 0) {
+                    throw new IllegalArgumentException("No root element to resume at byte %d".formatted(resumeAt));
+                }
+                rootStart.write(b);
+                consume(b);
+            }
+            input.skipNBytes(resumeAt - position);
+            head = rootStart.toByteArray();
+            position = resumeAt;
+        }
+    }
+
+    /**
+     * Offset right after the next child of the root element closed, in document order. The parser reads
+     * ahead of the caller: the boundary of a child is known once the parser reports its end tag.
+     */
+    long nextBoundary() {
+        Long boundary = boundaries.pollFirst();
+        if (boundary == null) {
+            throw new IllegalStateException("No child of the root element closed before byte %d".formatted(position));
+        }
+        return boundary;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (headPosition < head.length) {
+            return head[headPosition++] & 0xFF;
+        }
+        int b = input.read();
+        if (b >= 0) {
+            consume(b);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (headPosition < head.length) {
+            int count = Math.min(length, head.length - headPosition);
+            System.arraycopy(head, headPosition, buffer, offset, count);
+            headPosition += count;
+            return count;
+        }
+
+        int count = input.read(buffer, offset, length);
+        for (int i = 0; i < count; i++) {
+            consume(buffer[offset + i] & 0xFF);
+        }
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        input.close();
+    }
+
+    private void consume(int b) {
+        position++;
+        switch (state) {
+            case TEXT -> {
+                if (b == '<') {
+                    state = MARKUP;
+                }
+            }
+            case MARKUP -> {
+                marker = 0;
+                state = switch (b) {
+                    case '/' -> END_TAG;
+                    case '!' -> DECLARATION;
+                    case '?' -> PROCESSING_INSTRUCTION;
+                    default -> START_TAG;
+                };
+            }
+            case START_TAG -> {
+                if (b == '"' || b == '\'') {
+                    quote = b;
+                    state = ATTRIBUTE_VALUE;
+                } else if (b == '>') {
+                    if (marker == 0) {
+                        depth++;
+                    } else {
+                        // Empty element, opened and closed at once
+                        closed(depth + 1);
+                    }
+                    state = TEXT;
+                } else {
+                    marker = b == '/' ? 1 : 0;
+                }
+            }
+            case ATTRIBUTE_VALUE -> {
+                if (b == quote) {
+                    marker = 0;
+                    state = START_TAG;
+                }
+            }
+            case END_TAG -> {
+                if (b == '>') {
+                    closed(depth--);
+                    state = TEXT;
+                }
+            }
+            case DECLARATION -> {
+                state = switch (b) {
+                    case '-' -> COMMENT_START;
+                    case '[' -> CDATA_START;
+                    default -> {
+                        quote = 0;
+                        brackets = 0;
+                        yield DOCTYPE;
+                    }
+                };
+            }
+            case COMMENT_START -> state = COMMENT;
+            case COMMENT -> {
+                if (b == '>' && marker >= 2) {
+                    state = TEXT;
+                } else {
+                    marker = b == '-' ? marker + 1 : 0;
+                }
+            }
+            case CDATA_START -> {
+                if (b == '[') {
+                    state = CDATA;
+                }
+            }
+            case CDATA -> {
+                if (b == '>' && marker >= 2) {
+                    state = TEXT;
+                } else {
+                    marker = b == ']' ? marker + 1 : 0;
+                }
+            }
+            case DOCTYPE -> {
+                if (quote != 0) {
+                    if (b == quote) {
+                        quote = 0;
+                    }
+                } else if (b == '"' || b == '\'') {
+                    quote = b;
+                } else if (b == '[') {
+                    brackets++;
+                } else if (b == ']') {
+                    brackets--;
+                } else if (b == '>' && brackets == 0) {
+                    state = TEXT;
+                }
+            }
+            case PROCESSING_INSTRUCTION -> {
+                if (b == '>' && marker == 1) {
+                    state = TEXT;
+                } else {
+                    marker = b == '?' ? 1 : 0;
+                }
+            }
+            default -> throw new IllegalStateException("Unknown lexer state: %d".formatted(state));
+        }
+    }
+
+    /**
+     * An element at {@code elementDepth} (1 for the root) was closed, {@link #position} is right after it.
+     */
+    private void closed(int elementDepth) {
+        if (elementDepth == 2) {
+            boundaries.addLast(position);
+        }
+    }
+}
@@ -1,24 +1,43 @@
 package tsukoyachi.camelshop.eventrouting.handler.file;
 
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.camel.Exchange;
 import org.springframework.stereotype.Component;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.NodeList;
+import tsukoyachi.camelshop.common.models.Cart;
 import tsukoyachi.camelshop.common.models.OrderCreatedEvent;
 import tsukoyachi.camelshop.common.models.PaymentProcessedEvent;
 import tsukoyachi.camelshop.common.models.ShipmentDeliveredEvent;
+import tsukoyachi.camelshop.common.models.ShopEvent;
 import tsukoyachi.camelshop.common.models.SignupEvent;
-
-import java.time.Instant;
-import java.util.Date;
-import java.util.HashMap;
-import java.util.Map;
+import tsukoyachi.camelshop.common.time.IsoTimestamps;
+import tsukoyachi.camelshop.eventrouting.checkpoint.FileCheckpointer;
+import tsukoyachi.camelshop.eventrouting.deadletter.DeadLetterStore;
+import tsukoyachi.camelshop.eventrouting.metrics.EventMetrics;
+import tsukoyachi.camelshop.eventrouting.processing.EventDispatcher;
+
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import java.io.StringWriter;
 
 @Slf4j
 @Component
+@RequiredArgsConstructor
 public class XmlFileHandler implements FileHandler {
+    private static final String FORMAT = "xml";
+
+    private final EventDispatcher eventDispatcher;
+    private final EventMetrics eventMetrics;
+    private final DeadLetterStore deadLetterStore;
+    private final FileCheckpointer fileCheckpointer;
+
     @Override
     public void process(Exchange exchange) {
         if (exchange == null || exchange.getIn() == null || exchange.getIn().getBody() == null) {
@@ -33,28 +52,64 @@ public class XmlFileHandler implements FileHandler {
         NodeList eventNodes = document.getElementsByTagName("event");
         log.info("Processing XML with {} event(s)", eventNodes.getLength());
 
+        String source = exchange.getIn().getHeader(Exchange.FILE_NAME, "", String.class);
+        FileCheckpointer.Cursor cursor = fileCheckpointer.open(exchange);
         for (int i = 0; i < eventNodes.getLength(); i++) {
             Element eventElement = (Element) eventNodes.item(i);
-            processXmlEvent(eventElement);
+            processXmlEvent(cursor, source, i, eventElement);
         }
     }
 
-    private void processXmlEvent(Element eventElement) {
+    private void processXmlEvent(FileCheckpointer.Cursor cursor, String source, long offset, Element eventElement) {
         String eventType = getElementText(eventElement, "eventType");
         if (eventType == null || eventType.isEmpty()) {
-            log.warn("Missing or empty eventType in XML event: {}", eventElement);
+            log.warn("Missing or empty eventType in XML event {} of {}", offset, source);
+            log.trace("Event without type: {}", eventElement);
+            eventMetrics.eventRejected(FORMAT, "missing_type");
+            deadLetterStore.write(source, offset, FORMAT, "Missing or empty eventType", toXml(eventElement));
             return;
         }
 
-        log.info("Processing {} event from XML", eventType);
+        log.trace("Processing {} event from XML", eventType);
+
+        long start = System.nanoTime();
+        ShopEvent event;
+        try {
+            event = switch (eventType) {
+                case "signup" -> processSignupFromXml(eventElement);
+                case "order_created" -> processOrderCreatedFromXml(eventElement);
+                case "payment_processed" -> processPaymentProcessedFromXml(eventElement);
+                case "shipment_delivered" -> processShipmentDeliveredFromXml(eventElement);
+                default -> null;
+            };
+        } catch (RuntimeException e) {
+            // One invalid event does not fail the file, it is set aside with the reason
+            eventMetrics.eventRejected(FORMAT, "invalid");
+            deadLetterStore.write(source, offset, FORMAT, e, toXml(eventElement));
+            return;
+        }
+        if (event == null) {
+            log.warn("Unknown event type: {}", eventType);
+            eventMetrics.eventRejected(FORMAT, "unknown_type");
+            deadLetterStore.write(source, offset, FORMAT, "Unknown event type: %s".formatted(eventType),
+                    toXml(eventElement));
+            return;
+        }
+
+        eventMetrics.recordValidation(FORMAT, eventType, System.nanoTime() - start);
+        eventDispatcher.dispatch(event, cursor);
+    }
 
-        switch (eventType) {
-            case "signup" -> processSignupFromXml(eventElement);
-            case "order_created" -> processOrderCreatedFromXml(eventElement);
-            case "payment_processed" -> processPaymentProcessedFromXml(eventElement);
-            case "shipment_delivered" -> processShipmentDeliveredFromXml(eventElement);
-            default -> log.warn("Unknown event type: {}", eventType);
+    private static String toXml(Element element) {
+        StringWriter xml = new StringWriter();
+        try {
+            Transformer transformer = TransformerFactory.newInstance().newTransformer();
+            transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+            transformer.transform(new DOMSource(element), new StreamResult(xml));
+        } catch (TransformerException e) {
+            throw new IllegalStateException("Unable to write XML event", e);
         }
+        return xml.toString();
     }
 
     private void validateXmlField(Element element, String fieldName) {
@@ -72,72 +127,72 @@ public class XmlFileHandler implements FileHandler {
         return null;
     }
 
-    private Date parseDateFromXml(Element element, String fieldName) {
+    private long parseDateFromXml(Element element, String fieldName) {
         String dateString = getElementText(element, fieldName);
         if (dateString == null || dateString.isEmpty()) {
             throw new IllegalArgumentException("%s must not be null or empty".formatted(fieldName));
         }
-        return Date.from(Instant.parse(dateString));
+        return IsoTimestamps.parseEpochMillis(dateString);
     }
 
-    private void processSignupFromXml(Element element) {
+    private SignupEvent processSignupFromXml(Element element) {
         String userId = getElementText(element, "userId");
         String username = getElementText(element, "username");
         String email = getElementText(element, "email");
-        Date createdAt = parseDateFromXml(element, "createdAt");
+        long createdAt = parseDateFromXml(element, "createdAt");
 
         validateXmlField(element, "userId");
         validateXmlField(element, "username");
         validateXmlField(element, "email");
 
         SignupEvent event = new SignupEvent(userId, username, email, createdAt);
-        log.info("Signup event: {}", event);
+        return event;
     }
 
-    private void processOrderCreatedFromXml(Element element) {
+    private OrderCreatedEvent processOrderCreatedFromXml(Element element) {
         String orderId = getElementText(element, "orderId");
         String userId = getElementText(element, "userId");
-        Date createdAt = parseDateFromXml(element, "createdAt");
+        long createdAt = parseDateFromXml(element, "createdAt");
 
         validateXmlField(element, "orderId");
         validateXmlField(element, "userId");
 
-        Map<String, Integer> cart = parseCartFromXml(element);
+        Cart cart = parseCartFromXml(element);
 
         OrderCreatedEvent event = new OrderCreatedEvent(orderId, userId, cart, createdAt);
-        log.info("Order created event: {}", event);
+        return event;
     }
 
-    private void processPaymentProcessedFromXml(Element element) {
+    private PaymentProcessedEvent processPaymentProcessedFromXml(Element element) {
         String orderId = getElementText(element, "orderId");
         String userId = getElementText(element, "userId");
         String billingId = getElementText(element, "billId"); // Note: XML uses "billId" not "billId"
-        Date processedAt = parseDateFromXml(element, "createdAt"); // XML uses "createdAt" for all timestamps
+        long processedAt = parseDateFromXml(element, "createdAt"); // XML uses "createdAt" for all timestamps
 
         validateXmlField(element, "orderId");
         validateXmlField(element, "userId");
         validateXmlField(element, "billId");
 
         PaymentProcessedEvent event = new PaymentProcessedEvent(orderId, userId, billingId, processedAt);
-        log.info("Payment processed event: {}", event);
+        return event;
     }
 
-    private void processShipmentDeliveredFromXml(Element element) {
+    private ShipmentDeliveredEvent processShipmentDeliveredFromXml(Element element) {
         String userId = getElementText(element, "userId");
         String orderId = getElementText(element, "orderId");
         String parcelId = getElementText(element, "parcelId"); // Note: XML uses "parcelId" not "parcelId"
-        Date deliveredAt = parseDateFromXml(element, "createdAt"); // XML uses "createdAt" for all timestamps
+        long deliveredAt = parseDateFromXml(element, "createdAt"); // XML uses "createdAt" for all timestamps
 
         validateXmlField(element, "userId");
         validateXmlField(element, "orderId");
         validateXmlField(element, "parcelId");
 
         ShipmentDeliveredEvent event = new ShipmentDeliveredEvent(userId, orderId, parcelId, deliveredAt);
-        log.info("Shipment delivered event: {}", event);
+        return event;
     }
 
-    private Map<String, Integer> parseCartFromXml(Element element) {
-        Map<String, Integer> cart = new HashMap<>();
+    private Cart parseCartFromXml(Element element) {
+        Cart cart = new Cart();
 
         NodeList itemsNodes = element.getElementsByTagName("items");
         if (itemsNodes.getLength() > 0) {
@@ -151,8 +206,7 @@ public class XmlFileHandler implements FileHandler {
 
                 if (itemId != null && quantityStr != null) {
                     try {
-                        Integer quantity = Integer.parseInt(quantityStr);
-                        cart.put(itemId, quantity);
+                        cart.put(itemId, Integer.parseInt(quantityStr));
                     } catch (NumberFormatException e) {
                         log.warn("Invalid quantity value '{}' for item '{}'", quantityStr, itemId);
                     }
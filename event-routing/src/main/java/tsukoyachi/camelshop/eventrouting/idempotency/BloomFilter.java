@@ -0,0 +1,164 @@
+package tsukoyachi.camelshop.eventrouting.idempotency;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Minimal Bloom filter over string keys. A negative answer is definitive, a positive one has to be
+ * confirmed against the backing store. Safe for concurrent use: bits are set atomically, a key put by one
+ * thread is seen by the lookups that follow in any thread.
+ * <p>
+ * The filter counts its insertions, past {@code expectedInsertions} its false positive rate climbs above
+ * the one it was sized for and it should be replaced by a larger one. It can be saved to a file and read
+ * back, so that it does not have to be rebuilt from the keys.
+ */
+final class BloomFilter {
+    private static final int MAGIC = 0x43534246; // CSBF
+    private static final int VERSION = 1;
+
+    private final long expectedInsertions;
+    private final double falsePositiveRate;
+    private final AtomicLongArray words;
+    private final long bitCount;
+    private final int hashCount;
+    private final AtomicLong insertions = new AtomicLong();
+
+    BloomFilter(long expectedInsertions, double falsePositiveRate) {
+        if (expectedInsertions <= 0) {
+            throw new IllegalArgumentException("Expected insertions must be positive");
+        }
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("False positive rate must be between 0 and 1");
+        }
+
+        double ln2 = Math.log(2);
+        long bits = (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveRate) / (ln2 * ln2));
+        this.expectedInsertions = expectedInsertions;
+        this.falsePositiveRate = falsePositiveRate;
+        this.words = new AtomicLongArray((int) Math.min(Integer.MAX_VALUE - 8, (Math.max(64, bits) + 63) / 64));
+        this.bitCount = (long) words.length() * 64;
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / expectedInsertions * ln2));
+    }
+
+    /**
+     * Reads a filter written by {@link #writeTo(Path)}.
+     *
+     * @throws IOException if the file can not be read or was not written by this class
+     */
+    static BloomFilter readFrom(Path file) throws IOException {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+                throw new IOException("%s is not a Bloom filter file".formatted(file));
+            }
+            BloomFilter filter = new BloomFilter(input.readLong(), input.readDouble());
+            filter.insertions.set(input.readLong());
+            if (input.readInt() != filter.words.length()) {
+                throw new IOException("%s does not match its sizing".formatted(file));
+            }
+            for (int i = 0; i < filter.words.length(); i++) {
+                filter.words.set(i, input.readLong());
+            }
+            return filter;
+        }
+    }
+
+    /**
+     * Writes the filter to a temporary file first, then moves it to {@code file}.
+     */
+    void writeTo(Path file) throws IOException {
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream output = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeLong(expectedInsertions);
+            output.writeDouble(falsePositiveRate);
+            output.writeLong(insertions.get());
+            output.writeInt(words.length());
+            for (int i = 0; i < words.length(); i++) {
+                output.writeLong(words.get(i));
+            }
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    long expectedInsertions() {
+        return expectedInsertions;
+    }
+
+    double falsePositiveRate() {
+        return falsePositiveRate;
+    }
+
+    /**
+     * Number of keys put that were not in the filter yet.
+     */
+    long insertions() {
+        return insertions.get();
+    }
+
+    /**
+     * Whether the filter holds more keys than it was sized for.
+     */
+    boolean isSaturated() {
+        return insertions.get() > expectedInsertions;
+    }
+
+    void put(String key) {
+        long hash = hash(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        boolean added = false;
+        for (int i = 1; i <= hashCount; i++) {
+            long bit = Math.floorMod(h1 + (long) i * h2, bitCount);
+            int index = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            // Only written when the bit is missing, set bits are the common case once the filter fills up
+            if ((words.get(index) & mask) == 0) {
+                added |= (words.getAndAccumulate(index, mask, (word, set) -> word | set) & mask) == 0;
+            }
+        }
+        if (added) {
+            insertions.incrementAndGet();
+        }
+    }
+
+    boolean mightContain(String key) {
+        long hash = hash(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= hashCount; i++) {
+            long bit = Math.floorMod(h1 + (long) i * h2, bitCount);
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 64-bit FNV-1a over the UTF-16 code units, finished with the MurmurHash3 mixer so that both
+     * halves of the result are usable as independent hashes (Kirsch-Mitzenmacher double hashing).
+     */
+    private static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,61 @@
+package tsukoyachi.camelshop.eventrouting.idempotency;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.Header;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * Identifies an input file by name, size and a checksum of its first and last {@code sample-size} bytes.
+ * Reading a bounded sample keeps the digest cheap for large files while still telling apart a file that
+ * was replaced by a different one of the same name and size.
+ */
+@Component
+public class FileDigester {
+    /**
+     * Set by the route to the digest of the file being processed.
+     */
+    public static final String DIGEST_HEADER = "CamelShopFileDigest";
+
+    private final int sampleSize;
+
+    public FileDigester(@Value("${camelshop.event-routing.idempotency.sample-size:65536}") int sampleSize) {
+        this.sampleSize = Math.max(1, sampleSize);
+    }
+
+    public String digest(@Header(Exchange.FILE_NAME) String name, @Header(Exchange.FILE_PATH) String path) {
+        try (FileChannel channel = FileChannel.open(Path.of(path), StandardOpenOption.READ)) {
+            long size = channel.size();
+            CRC32C checksum = new CRC32C();
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(sampleSize, size));
+
+            update(checksum, channel, buffer, 0);
+            if (size > sampleSize) {
+                update(checksum, channel, buffer, Math.max(sampleSize, size - sampleSize));
+            }
+            return "%s:%d:%08x".formatted(name, size, checksum.getValue());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to compute digest of %s".formatted(name), e);
+        }
+    }
+
+    private static void update(CRC32C checksum, FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        buffer.clear();
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                break;
+            }
+        }
+        buffer.flip();
+        checksum.update(buffer);
+    }
+}
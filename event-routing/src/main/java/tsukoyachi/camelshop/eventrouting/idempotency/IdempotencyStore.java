@@ -0,0 +1,614 @@
+package tsukoyachi.camelshop.eventrouting.idempotency;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Persistent set of already processed keys, grouped by namespace (file digests, event keys...). Keys are
+ * stored in a SQLite table and mirrored in a Bloom filter, so the common "never seen" answer is given
+ * without any I/O, only possible duplicates are confirmed against the table. New keys are buffered and
+ * inserted in batches of {@code batch-size}, they are visible to lookups right away.
+ * <p>
+ * The filter is saved next to the table on shutdown ({@code <database>.bloom}) and read back at startup,
+ * so a restart does not read every key ever stored. It is only rebuilt from the table after a crash or a
+ * change of its sizing. It starts sized for {@code expected-keys} (twice the stored keys when it is
+ * rebuilt) and is rebuilt twice as large each time it holds more keys than that, so that its false
+ * positive rate stays at {@code false-positive-rate}.
+ * <p>
+ * Keys recorded while an input file is read are held in its {@link FileKeys} instead: they are only
+ * persisted once the outputs of the file are flushed, and forgotten if the file fails.
+ * <p>
+ * The store also keeps the {@link Checkpoint} of the files being read, so that a file interrupted halfway
+ * resumes where it stopped.
+ * <p>
+ * Lookups take no store-wide lock, the event lanes check their keys in parallel: the Bloom filter is
+ * lock-free, a key is claimed in memory before it is looked up, and the table is queried through a few
+ * read connections, each with its own lock. Writes (batch inserts, checkpoints, files done) go through
+ * the write connection one at a time.
+ */
+@Slf4j
+@Component
+public class IdempotencyStore {
+    /**
+     * Namespace of the digests of the input files done.
+     */
+    public static final String FILE_NAMESPACE = "file";
+    private static final String URL_PREFIX = "jdbc:sqlite:";
+    private static final char SEPARATOR = '\u0000';
+    // WAL lets the read connections query alongside the writer
+    private static final int READ_CONNECTIONS = 4;
+
+    private final boolean enabled;
+    private final int batchSize;
+    private final long expectedKeys;
+    private final double falsePositiveRate;
+    // Not synchronized: a virtual thread would pin its carrier thread for the whole query
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final Connection connection;
+    private final Reader[] readers;
+    private final Path filterFile;
+    private volatile BloomFilter bloomFilter;
+    // Every key recorded and not persisted yet, and the ones of them recorded outside of a file
+    private final Set<String> unpersisted = ConcurrentHashMap.newKeySet();
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Keys recorded on behalf of one input file, see {@link #markIfAbsent(FileKeys, String, String)}.
+     * Filled by the event lanes of the file.
+     */
+    public static final class FileKeys {
+        private final Set<String> entries = ConcurrentHashMap.newKeySet();
+    }
+
+    private record Reader(Connection connection, ReentrantLock lock) {
+    }
+
+    /**
+     * Position reached in a file: {@code position} is the byte offset of the first event that was not
+     * committed yet, {@code index} the index of that event in the file.
+     */
+    public record Checkpoint(long position, long index) {
+        public static final Checkpoint START = new Checkpoint(0, 0);
+    }
+
+    public IdempotencyStore(
+            @Value("${camelshop.event-routing.idempotency.enabled:true}") boolean enabled,
+            @Value("${camelshop.event-routing.idempotency.url:jdbc:sqlite:event-routing/data/idempotency.db}") String url,
+            @Value("${camelshop.event-routing.idempotency.expected-keys:1000000}") long expectedKeys,
+            @Value("${camelshop.event-routing.idempotency.false-positive-rate:0.01}") double falsePositiveRate,
+            @Value("${camelshop.event-routing.idempotency.batch-size:1000}") int batchSize) {
+        this.enabled = enabled;
+        this.batchSize = Math.max(1, batchSize);
+        this.expectedKeys = expectedKeys;
+        this.falsePositiveRate = falsePositiveRate;
+        if (!enabled) {
+            this.connection = null;
+            this.readers = null;
+            this.filterFile = null;
+            return;
+        }
+
+        try {
+            Path database = databaseFile(url);
+            this.connection = open(url, database);
+            this.readers = openReaders(url, database);
+            this.filterFile = database != null ? Path.of(database + ".bloom") : null;
+            this.bloomFilter = readFilter();
+            if (bloomFilter != null) {
+                log.info("Idempotency store opened with about {} known key(s), Bloom filter read from {}",
+                        bloomFilter.insertions(), filterFile);
+            } else {
+                long stored = countKeys();
+                this.bloomFilter = buildFilter(Math.max(expectedKeys, stored * 2));
+                log.info("Idempotency store opened with {} known key(s)", stored);
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Unable to open idempotency store %s".formatted(url), e);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public boolean contains(String namespace, String key) {
+        if (!enabled) {
+            return false;
+        }
+        String entry = entry(namespace, key);
+        return unpersisted.contains(entry) || bloomFilter.mightContain(entry) && exists(entry);
+    }
+
+    /**
+     * Records the key unless it is already known.
+     *
+     * @return {@code true} if the key was not seen before
+     */
+    public boolean markIfAbsent(String namespace, String key) {
+        if (!enabled) {
+            return true;
+        }
+        String entry = entry(namespace, key);
+        if (!claim(entry)) {
+            return false;
+        }
+
+        pending.add(entry);
+        // The thread already inserting a batch takes these keys along
+        if (pending.size() >= batchSize && writeLock.tryLock()) {
+            try {
+                flushPending();
+            } finally {
+                writeLock.unlock();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Records the key on behalf of an input file unless it is already known. The key is a duplicate for
+     * every later lookup, from this file or another one, but it is only persisted by
+     * {@link #completeFile(String, FileKeys)}, once the outputs of the file are flushed: a crash before then
+     * leaves no key behind an event that was not delivered.
+     *
+     * @return {@code true} if the key was not seen before
+     */
+    public boolean markIfAbsent(FileKeys keys, String namespace, String key) {
+        if (!enabled) {
+            return true;
+        }
+        String entry = entry(namespace, key);
+        if (!claim(entry)) {
+            return false;
+        }
+
+        keys.entries.add(entry);
+        return true;
+    }
+
+    /**
+     * Records a file as done, once all its outputs are flushed: its digest and the keys of its events are
+     * persisted and its checkpoint is dropped, in a single transaction.
+     *
+     * @param digest digest of the file, {@code null} to only persist the keys
+     */
+    public void completeFile(String digest, FileKeys keys) {
+        if (!enabled) {
+            return;
+        }
+        writeLock.lock();
+        try {
+            insert(keys.entries);
+            if (digest != null) {
+                // Before the commit, so that no lookup misses the digest once it is in the table
+                bloomFilter.put(entry(FILE_NAMESPACE, digest));
+                insertDigest(digest);
+            }
+            connection.commit();
+        } catch (SQLException e) {
+            rollbackQuietly();
+            throw new IllegalStateException("Unable to record file %s as processed".formatted(digest), e);
+        } finally {
+            writeLock.unlock();
+        }
+        release(keys);
+        growFilterIfSaturated();
+    }
+
+    /**
+     * Forgets the keys of a file that failed, its events are processed again when it is read again. The
+     * Bloom filter keeps their bits.
+     */
+    public void discard(FileKeys keys) {
+        release(keys);
+    }
+
+    /**
+     * Forgets a key. The Bloom filter keeps its bits, later lookups for the key only cost a query.
+     */
+    public void remove(String namespace, String key) {
+        if (!enabled) {
+            return;
+        }
+        String entry = entry(namespace, key);
+        writeLock.lock();
+        try {
+            if (pending.remove(entry)) {
+                unpersisted.remove(entry);
+                return;
+            }
+            try (PreparedStatement delete = connection.prepareStatement(
+                    "DELETE FROM processed_key WHERE namespace = ? AND key = ?")) {
+                delete.setString(1, namespace);
+                delete.setString(2, key);
+                delete.executeUpdate();
+                connection.commit();
+            }
+        } catch (SQLException e) {
+            rollbackQuietly();
+            throw new IllegalStateException("Unable to remove idempotency key", e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Forgets every key of a namespace, the pending ones included. As for {@link #remove}, the Bloom filter
+     * keeps its bits.
+     */
+    public void clear(String namespace) {
+        if (!enabled) {
+            return;
+        }
+        String prefix = entry(namespace, "");
+        writeLock.lock();
+        try (PreparedStatement delete = connection.prepareStatement("DELETE FROM processed_key WHERE namespace = ?")) {
+            Iterator<String> entries = pending.iterator();
+            while (entries.hasNext()) {
+                String entry = entries.next();
+                if (entry.startsWith(prefix)) {
+                    entries.remove();
+                    unpersisted.remove(entry);
+                }
+            }
+            delete.setString(1, namespace);
+            delete.executeUpdate();
+            connection.commit();
+        } catch (SQLException e) {
+            rollbackQuietly();
+            throw new IllegalStateException("Unable to clear idempotency keys of %s".formatted(namespace), e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public void flush() {
+        if (enabled) {
+            flushPending();
+        }
+    }
+
+    /**
+     * Last checkpoint stored for the file, {@link Checkpoint#START} if there is none.
+     */
+    public Checkpoint checkpoint(String file) {
+        if (!enabled) {
+            return Checkpoint.START;
+        }
+        writeLock.lock();
+        try (PreparedStatement select = connection.prepareStatement(
+                "SELECT position, event_index FROM file_checkpoint WHERE file = ?")) {
+            select.setString(1, file);
+            try (ResultSet resultSet = select.executeQuery()) {
+                return resultSet.next() ? new Checkpoint(resultSet.getLong(1), resultSet.getLong(2)) : Checkpoint.START;
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Unable to look up checkpoint of %s".formatted(file), e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Stores the checkpoint of a file. The keys recorded for this file so far are persisted in the same
+     * transaction: the events before the checkpoint are never read again, their keys must not be lost. The
+     * keys of the other files are left out, their events may not have reached the outputs yet.
+     */
+    public void saveCheckpoint(String file, Checkpoint checkpoint, FileKeys keys) {
+        if (!enabled) {
+            return;
+        }
+        writeLock.lock();
+        try (PreparedStatement upsert = connection.prepareStatement(
+                "INSERT OR REPLACE INTO file_checkpoint (file, position, event_index) VALUES (?, ?, ?)")) {
+            upsert.setString(1, file);
+            upsert.setLong(2, checkpoint.position());
+            upsert.setLong(3, checkpoint.index());
+            upsert.executeUpdate();
+            insert(keys.entries);
+            connection.commit();
+        } catch (SQLException e) {
+            rollbackQuietly();
+            throw new IllegalStateException("Unable to save checkpoint of %s".formatted(file), e);
+        } finally {
+            writeLock.unlock();
+        }
+        release(keys);
+    }
+
+    @PreDestroy
+    public void close() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            flushPending();
+        } finally {
+            writeFilter();
+            for (Reader reader : readers) {
+                closeQuietly(reader.connection());
+            }
+            closeQuietly(connection);
+        }
+    }
+
+    /**
+     * Takes the key for the caller unless it is already known. The key is claimed before it is looked up
+     * and stays claimed until it is committed: of two threads recording the same key, the second one either
+     * finds the claim or, once it is released, the key in the table.
+     */
+    private boolean claim(String entry) {
+        if (!unpersisted.add(entry)) {
+            return false;
+        }
+        BloomFilter filter = bloomFilter;
+        if (filter.mightContain(entry) && exists(entry)) {
+            unpersisted.remove(entry);
+            return false;
+        }
+        filter.put(entry);
+        growFilterIfSaturated();
+        return true;
+    }
+
+    /**
+     * Releases the keys of a file, once they are committed or discarded.
+     */
+    private void release(FileKeys keys) {
+        unpersisted.removeAll(keys.entries);
+        keys.entries.clear();
+    }
+
+    private void flushPending() {
+        writeLock.lock();
+        try {
+            if (pending.isEmpty()) {
+                return;
+            }
+            List<String> batch = new ArrayList<>(pending);
+            insert(batch);
+            connection.commit();
+            pending.removeAll(batch);
+            unpersisted.removeAll(batch);
+        } catch (SQLException e) {
+            rollbackQuietly();
+            throw new IllegalStateException("Unable to persist idempotency keys", e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void insert(Collection<String> entries) throws SQLException {
+        if (entries.isEmpty()) {
+            return;
+        }
+        try (PreparedStatement insert = connection.prepareStatement(
+                "INSERT OR IGNORE INTO processed_key (namespace, key) VALUES (?, ?)")) {
+            for (String entry : entries) {
+                int separator = entry.indexOf(SEPARATOR);
+                insert.setString(1, entry.substring(0, separator));
+                insert.setString(2, entry.substring(separator + 1));
+                insert.addBatch();
+            }
+            insert.executeBatch();
+        }
+    }
+
+    /**
+     * A file done is recorded under its digest, its checkpoint is not needed anymore.
+     */
+    private void insertDigest(String digest) throws SQLException {
+        try (PreparedStatement insert = connection.prepareStatement(
+                "INSERT OR IGNORE INTO processed_key (namespace, key) VALUES (?, ?)");
+             PreparedStatement delete = connection.prepareStatement("DELETE FROM file_checkpoint WHERE file = ?")) {
+            insert.setString(1, FILE_NAMESPACE);
+            insert.setString(2, digest);
+            insert.executeUpdate();
+            delete.setString(1, digest);
+            delete.executeUpdate();
+        }
+    }
+
+    private boolean exists(String entry) {
+        int separator = entry.indexOf(SEPARATOR);
+        Reader reader = readers[Math.floorMod(entry.hashCode(), readers.length)];
+        reader.lock().lock();
+        try (PreparedStatement select = reader.connection().prepareStatement(
+                "SELECT 1 FROM processed_key WHERE namespace = ? AND key = ?")) {
+            select.setString(1, entry.substring(0, separator));
+            select.setString(2, entry.substring(separator + 1));
+            try (ResultSet resultSet = select.executeQuery()) {
+                return resultSet.next();
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Unable to look up idempotency key", e);
+        } finally {
+            reader.lock().unlock();
+        }
+    }
+
+    private long countKeys() throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT COUNT(*) FROM processed_key")) {
+            return resultSet.next() ? resultSet.getLong(1) : 0;
+        }
+    }
+
+    /**
+     * New filter holding every stored key, and the keys not persisted yet.
+     */
+    private BloomFilter buildFilter(long expectedInsertions) throws SQLException {
+        BloomFilter filter = new BloomFilter(expectedInsertions, falsePositiveRate);
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT namespace, key FROM processed_key")) {
+            while (resultSet.next()) {
+                filter.put(entry(resultSet.getString(1), resultSet.getString(2)));
+            }
+        }
+        unpersisted.forEach(filter::put);
+        return filter;
+    }
+
+    /**
+     * The write lock keeps keys from being committed while the table is read: a key claimed meanwhile is
+     * still unpersisted once the new filter is in place, and added to it then.
+     */
+    private void growFilterIfSaturated() {
+        if (!bloomFilter.isSaturated()) {
+            return;
+        }
+        writeLock.lock();
+        try {
+            BloomFilter current = bloomFilter;
+            if (!current.isSaturated()) {
+                return;
+            }
+            long expectedInsertions = Math.max(current.expectedInsertions(), current.insertions()) * 2;
+            BloomFilter grown = buildFilter(expectedInsertions);
+            bloomFilter = grown;
+            unpersisted.forEach(grown::put);
+            log.info("Idempotency Bloom filter rebuilt for {} key(s)", expectedInsertions);
+        } catch (SQLException e) {
+            throw new IllegalStateException("Unable to rebuild the idempotency Bloom filter", e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * The filter saved by the last shutdown, {@code null} if there is none or if it does not fit the
+     * configured sizing anymore. The file is deleted once read: it is only written back on shutdown, a
+     * filter left by an earlier run would miss the keys stored before a crash.
+     */
+    private BloomFilter readFilter() {
+        if (filterFile == null || !Files.exists(filterFile)) {
+            return null;
+        }
+        try {
+            BloomFilter filter = BloomFilter.readFrom(filterFile);
+            Files.delete(filterFile);
+            if (filter.falsePositiveRate() != falsePositiveRate || filter.expectedInsertions() < expectedKeys
+                    || filter.isSaturated()) {
+                log.info("Idempotency Bloom filter {} does not fit the configured sizing, rebuilding it", filterFile);
+                return null;
+            }
+            return filter;
+        } catch (IOException e) {
+            log.warn("Unable to read idempotency Bloom filter {}, rebuilding it: {}", filterFile, e.getMessage());
+            return null;
+        }
+    }
+
+    private void writeFilter() {
+        if (filterFile == null) {
+            return;
+        }
+        try {
+            bloomFilter.writeTo(filterFile);
+        } catch (IOException e) {
+            log.warn("Unable to save idempotency Bloom filter {}: {}", filterFile, e.getMessage());
+        }
+    }
+
+    private static void closeQuietly(Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            log.warn("Unable to close idempotency store: {}", e.getMessage());
+        }
+    }
+
+    private void rollbackQuietly() {
+        try {
+            connection.rollback();
+        } catch (SQLException e) {
+            log.warn("Unable to roll back idempotency store transaction: {}", e.getMessage());
+        }
+    }
+
+    private static Connection open(String url, Path database) throws SQLException {
+        if (database != null) {
+            try {
+                Files.createDirectories(database.toAbsolutePath().getParent());
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to create idempotency store directory", e);
+            }
+        }
+
+        Connection connection = DriverManager.getConnection(url);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("PRAGMA journal_mode=WAL");
+            statement.execute("PRAGMA synchronous=NORMAL");
+            statement.execute("""
+                    CREATE TABLE IF NOT EXISTS processed_key (
+                        namespace TEXT NOT NULL,
+                        key TEXT NOT NULL,
+                        PRIMARY KEY (namespace, key)
+                    ) WITHOUT ROWID""");
+            statement.execute("""
+                    CREATE TABLE IF NOT EXISTS file_checkpoint (
+                        file TEXT NOT NULL PRIMARY KEY,
+                        position INTEGER NOT NULL,
+                        event_index INTEGER NOT NULL
+                    ) WITHOUT ROWID""");
+        }
+        connection.setAutoCommit(false);
+        return connection;
+    }
+
+    /**
+     * Lookups of an in-memory database go through its only connection, the write one.
+     */
+    private Reader[] openReaders(String url, Path database) throws SQLException {
+        if (database == null) {
+            return new Reader[]{new Reader(connection, writeLock)};
+        }
+        Reader[] opened = new Reader[READ_CONNECTIONS];
+        for (int i = 0; i < opened.length; i++) {
+            opened[i] = new Reader(DriverManager.getConnection(url), new ReentrantLock());
+        }
+        return opened;
+    }
+
+    /**
+     * File of the database, {@code null} for an in-memory one.
+     */
+    private static Path databaseFile(String url) {
+        if (!url.startsWith(URL_PREFIX)) {
+            throw new IllegalArgumentException("Idempotency store URL must start with %s".formatted(URL_PREFIX));
+        }
+        String path = url.substring(URL_PREFIX.length());
+        int query = path.indexOf('?');
+        if (query >= 0) {
+            path = path.substring(0, query);
+        }
+        if (path.isEmpty() || path.startsWith(":memory:") || path.startsWith("file::memory:")) {
+            return null;
+        }
+        return Path.of(path);
+    }
+
+    private static String entry(String namespace, String key) {
+        return namespace + SEPARATOR + key;
+    }
+}
@@ -0,0 +1,43 @@
+package tsukoyachi.camelshop.eventrouting.idempotency;
+
+import org.apache.camel.spi.IdempotentRepository;
+import org.apache.camel.support.service.ServiceSupport;
+
+/**
+ * Camel view of one namespace of the {@link IdempotencyStore}.
+ */
+public class StoreIdempotentRepository extends ServiceSupport implements IdempotentRepository {
+    private final IdempotencyStore store;
+    private final String namespace;
+
+    public StoreIdempotentRepository(IdempotencyStore store, String namespace) {
+        this.store = store;
+        this.namespace = namespace;
+    }
+
+    @Override
+    public boolean add(String key) {
+        return store.markIfAbsent(namespace, key);
+    }
+
+    @Override
+    public boolean contains(String key) {
+        return store.contains(namespace, key);
+    }
+
+    @Override
+    public boolean remove(String key) {
+        store.remove(namespace, key);
+        return true;
+    }
+
+    @Override
+    public boolean confirm(String key) {
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        store.clear(namespace);
+    }
+}
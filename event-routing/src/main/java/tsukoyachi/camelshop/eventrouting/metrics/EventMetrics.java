@@ -0,0 +1,106 @@
+package tsukoyachi.camelshop.eventrouting.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Meters of the event pipeline. Each event goes through three stages, each one with its own timer:
+ * <ul>
+ *     <li>{@code camelshop.event.parse}: reading the raw record from the file (streaming handlers only)</li>
+ *     <li>{@code camelshop.event.validate}: checking the fields and building the event record</li>
+ *     <li>{@code camelshop.event.sink}: handing the event on, duplicate check included</li>
+ * </ul>
+ * Route level timings come from camel-micrometer ({@code camel.route.policy}). Meters are cached per tag
+ * combination, recording does not go through the registry lookup on the hot path.
+ */
+@Component
+public class EventMetrics {
+    private final MeterRegistry registry;
+    private final Map<String, Timer> parseTimers = new ConcurrentHashMap<>();
+    private final Map<String, Timer> validateTimers = new ConcurrentHashMap<>();
+    private final Map<String, Timer> sinkTimers = new ConcurrentHashMap<>();
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+
+    public EventMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    public void recordParse(String format, long nanos) {
+        timer(parseTimers, format, key -> Timer.builder("camelshop.event.parse")
+                .description("Time spent reading one event from its file")
+                .tag("format", format)
+                .register(registry))
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordValidation(String format, String eventType, long nanos) {
+        timer(validateTimers, format + '|' + eventType, key -> Timer.builder("camelshop.event.validate")
+                .description("Time spent validating and building one event")
+                .tag("format", format)
+                .tag("type", eventType)
+                .register(registry))
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordSink(String eventType, long nanos) {
+        timer(sinkTimers, eventType, key -> Timer.builder("camelshop.event.sink")
+                .description("Time spent handing one event on")
+                .tag("type", eventType)
+                .register(registry))
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void fileReceived(String format, long bytes) {
+        counter("camelshop.files", "Files received", "format", format).increment();
+        if (bytes > 0) {
+            counter("camelshop.files.bytes", "Bytes of the files received", "format", format).increment(bytes);
+        }
+    }
+
+    public void fileRejected(String format) {
+        counter("camelshop.files.rejected", "Files sent to the error directory", "format", format).increment();
+    }
+
+    public void eventRejected(String format, String reason) {
+        counter("camelshop.events.rejected", "Events skipped because they can not be processed",
+                "format", format, "reason", reason).increment();
+    }
+
+    public void eventDuplicated(String eventType) {
+        counter("camelshop.events.duplicated", "Events dropped because they were already processed",
+                "type", eventType).increment();
+    }
+
+    public void eventsPublished(String eventType, int count) {
+        counter("camelshop.events.published", "Events confirmed by the broker", "type", eventType).increment(count);
+    }
+
+    public void eventsUndelivered(String eventType, int count) {
+        counter("camelshop.events.undelivered", "Events the broker did not accept after every attempt",
+                "type", eventType).increment(count);
+    }
+
+    private static Timer timer(Map<String, Timer> timers, String key, Function<String, Timer> factory) {
+        Timer timer = timers.get(key);
+        return timer != null ? timer : timers.computeIfAbsent(key, factory);
+    }
+
+    private Counter counter(String name, String description, String... tags) {
+        String key = name + '|' + String.join("|", tags);
+        Counter counter = counters.get(key);
+        if (counter != null) {
+            return counter;
+        }
+        return counters.computeIfAbsent(key, k -> Counter.builder(name)
+                .description(description)
+                .tags(tags)
+                .register(registry));
+    }
+}
@@ -0,0 +1,170 @@
+package tsukoyachi.camelshop.eventrouting.output;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import tsukoyachi.camelshop.common.models.ShopEvent;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Output stage writing the dispatched events to the processed directory in the {@link ColumnarFormat}.
+ * Events are partitioned by type and by {@code window} of event time, each partition has its own file
+ * ({@code <type>/<type>-<window start>.cscol}). Rows are buffered per partition and appended as a record
+ * group once {@code row-group-size} rows are reached, or when {@link #flush()} is called at the end of
+ * each input file.
+ * <p>
+ * {@link #flush()} also forces the files appended to since the previous call to disk: once it returns, their
+ * rows survive a crash of the machine. A record group cut short by a crash is dropped the first time its file
+ * is appended to again.
+ */
+@Slf4j
+@Component
+public class ColumnarEventWriter {
+    private static final DateTimeFormatter WINDOW_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmm'Z'")
+            .withZone(ZoneOffset.UTC);
+
+    private final boolean enabled;
+    private final Path directory;
+    private final long windowMillis;
+    private final int rowGroupSize;
+    private final Map<Partition, RecordGroup> groups = new LinkedHashMap<>();
+    private final ByteSink sink = new ByteSink(64 * 1024);
+    private final ByteSink scratch = new ByteSink(16 * 1024);
+    // Version of the files checked for a truncated record group, and files appended to but not forced to disk yet
+    private final Map<Path, Byte> versions = new HashMap<>();
+    private final Set<Path> unsynced = new LinkedHashSet<>();
+
+    private record Partition(String eventType, long windowStart) {
+    }
+
+    public ColumnarEventWriter(
+            @Value("${camelshop.event-routing.output.columnar.enabled:true}") boolean enabled,
+            @Value("${camelshop.event-routing.processed-directory}") String directory,
+            @Value("${camelshop.event-routing.output.columnar.window:1h}") Duration window,
+            @Value("${camelshop.event-routing.output.columnar.row-group-size:4096}") int rowGroupSize) {
+        if (window.toMillis() <= 0) {
+            throw new IllegalArgumentException("Columnar output window must be positive");
+        }
+        this.enabled = enabled;
+        this.directory = Path.of(directory);
+        this.windowMillis = window.toMillis();
+        this.rowGroupSize = Math.max(1, rowGroupSize);
+    }
+
+    public synchronized void write(ShopEvent event) {
+        if (!enabled) {
+            return;
+        }
+
+        long windowStart = Math.floorDiv(event.occurredAt(), windowMillis) * windowMillis;
+        Partition partition = new Partition(event.eventType(), windowStart);
+        RecordGroup group = groups.computeIfAbsent(partition, key -> new RecordGroup(key.eventType()));
+        group.add(event);
+        if (group.rows() >= rowGroupSize) {
+            append(partition, group);
+            groups.remove(partition);
+        }
+    }
+
+    /**
+     * Appends the buffered rows of every partition to their files, then forces those files to disk.
+     */
+    public synchronized void flush() {
+        Iterator<Map.Entry<Partition, RecordGroup>> iterator = groups.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Partition, RecordGroup> entry = iterator.next();
+            append(entry.getKey(), entry.getValue());
+            iterator.remove();
+        }
+
+        Iterator<Path> files = unsynced.iterator();
+        while (files.hasNext()) {
+            Path file = files.next();
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to sync %s".formatted(file), e);
+            }
+            files.remove();
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.error("Unable to write buffered events to {}: {}", directory, e.getMessage(), e);
+        }
+    }
+
+    private void append(Partition partition, RecordGroup group) {
+        Path file = directory.resolve(partition.eventType()).resolve("%s-%s%s".formatted(partition.eventType(),
+                WINDOW_FORMAT.format(Instant.ofEpochMilli(partition.windowStart())), ColumnarFormat.EXTENSION));
+        try {
+            Files.createDirectories(file.getParent());
+            Byte version = versions.get(file);
+            if (version == null) {
+                version = Files.exists(file) ? dropTruncatedGroup(file) : ColumnarFormat.VERSION;
+                versions.put(file, version);
+            }
+            try (FileChannel channel = FileChannel.open(file,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                sink.reset();
+                if (channel.size() == 0) {
+                    sink.writeBytes(ColumnarFormat.MAGIC);
+                    sink.writeByte(ColumnarFormat.VERSION);
+                    sink.writeString(partition.eventType());
+                }
+                group.encode(sink, scratch, version != ColumnarFormat.VERSION_WITHOUT_CHECKSUM);
+                ByteBuffer buffer = sink.toByteBuffer();
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+            unsynced.add(file);
+        } catch (IOException e) {
+            // The group may have been partly written, check the file again before the next append
+            versions.remove(file);
+            throw new UncheckedIOException("Unable to write %s".formatted(file), e);
+        }
+        log.debug("Appended {} {} event(s) to {}", group.rows(), partition.eventType(), file);
+    }
+
+    /**
+     * Cuts the end of a file left by a crash in the middle of an append, so that the next group follows the
+     * last complete one.
+     *
+     * @return the version the groups appended to the file are written in
+     */
+    private static byte dropTruncatedGroup(Path file) throws IOException {
+        long complete = ColumnarFileReader.completeLength(file);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            if (complete < channel.size()) {
+                log.warn("Dropping {} byte(s) of truncated record group at the end of {}",
+                        channel.size() - complete, file);
+                channel.truncate(complete);
+            }
+        }
+        // An empty file gets a new header
+        return complete == 0 ? ColumnarFormat.VERSION : ColumnarFileReader.version(file);
+    }
+}
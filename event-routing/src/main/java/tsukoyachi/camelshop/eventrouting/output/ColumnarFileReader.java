@@ -0,0 +1,212 @@
+package tsukoyachi.camelshop.eventrouting.output;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+/**
+ * Reads back a file written by {@link ColumnarEventWriter}, mostly for tooling and tests: analytics jobs
+ * are expected to implement {@link ColumnarFormat} themselves and only decode the columns they need.
+ */
+public final class ColumnarFileReader {
+
+    /**
+     * Values of one record group by column name: {@code String} for text columns, {@code Long} otherwise.
+     */
+    public record Group(int rows, Map<String, List<Object>> columns) {
+    }
+
+    public record ColumnarFile(String eventType, List<Group> groups) {
+    }
+
+    private ColumnarFileReader() {
+    }
+
+    private record Header(byte version, String eventType) {
+        /**
+         * Bytes before the content of a group: its length, and its checksum from version 2 on.
+         */
+        int groupPrefix() {
+            return version == ColumnarFormat.VERSION_WITHOUT_CHECKSUM ? Integer.BYTES : 2 * Integer.BYTES;
+        }
+    }
+
+    public static ColumnarFile read(Path file) throws IOException {
+        ByteBuffer buffer = map(file);
+        Header header = readHeader(buffer, file);
+
+        List<Group> groups = new ArrayList<>();
+        while (buffer.hasRemaining()) {
+            int length = groupLength(buffer, header);
+            if (length < 0) {
+                throw new IllegalArgumentException("%s ends with a truncated or corrupt record group at byte %d"
+                        .formatted(file, buffer.position()));
+            }
+            int start = buffer.position() + header.groupPrefix();
+            ByteBuffer group = buffer.slice(start, length).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.position(start + length);
+            groups.add(readGroup(group));
+        }
+        return new ColumnarFile(header.eventType(), groups);
+    }
+
+    /**
+     * Length of the complete part of a file: its header and the record groups written entirely. A crash while
+     * a group was appended leaves the start of that group after them, or zeroes. 0 when even the header is
+     * incomplete.
+     */
+    static long completeLength(Path file) throws IOException {
+        ByteBuffer buffer = map(file);
+        Header header;
+        try {
+            header = readHeader(buffer, file);
+        } catch (BufferUnderflowException e) {
+            return 0;
+        }
+        int length;
+        while ((length = groupLength(buffer, header)) >= 0) {
+            buffer.position(buffer.position() + header.groupPrefix() + length);
+        }
+        return buffer.position();
+    }
+
+    /**
+     * Version of a file holding at least its header.
+     */
+    static byte version(Path file) throws IOException {
+        return readHeader(map(file), file).version();
+    }
+
+    private static ByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+
+    private static Header readHeader(ByteBuffer buffer, Path file) {
+        byte[] magic = new byte[ColumnarFormat.MAGIC.length];
+        buffer.get(magic);
+        byte version = buffer.get();
+        if (!Arrays.equals(magic, ColumnarFormat.MAGIC)
+                || version != ColumnarFormat.VERSION && version != ColumnarFormat.VERSION_WITHOUT_CHECKSUM) {
+            throw new IllegalArgumentException("%s is not a columnar event file".formatted(file));
+        }
+        return new Header(version, readString(buffer));
+    }
+
+    /**
+     * Length of the content of the record group starting at the position of the buffer, -1 if the file ends
+     * before the group does or if the group does not match its checksum.
+     */
+    private static int groupLength(ByteBuffer buffer, Header header) {
+        int prefix = header.groupPrefix();
+        if (buffer.remaining() < prefix) {
+            return -1;
+        }
+        int position = buffer.position();
+        int length = buffer.getInt(position);
+        if (length <= 0 || length > buffer.remaining() - prefix) {
+            return -1;
+        }
+        if (header.version() != ColumnarFormat.VERSION_WITHOUT_CHECKSUM) {
+            CRC32C crc = new CRC32C();
+            crc.update(buffer.slice(position, Integer.BYTES));
+            crc.update(buffer.slice(position + prefix, length));
+            if ((int) crc.getValue() != buffer.getInt(position + Integer.BYTES)) {
+                return -1;
+            }
+        }
+        return length;
+    }
+
+    private static Group readGroup(ByteBuffer buffer) {
+        int rows = (int) readVarint(buffer);
+        int columnCount = (int) readVarint(buffer);
+        Map<String, List<Object>> columns = new LinkedHashMap<>();
+        for (int i = 0; i < columnCount; i++) {
+            String name = readString(buffer);
+            byte encoding = buffer.get();
+            int values = (int) readVarint(buffer);
+            int length = (int) readVarint(buffer);
+            ByteBuffer data = buffer.slice(buffer.position(), length);
+            buffer.position(buffer.position() + length);
+            columns.put(name, readColumn(data, encoding, values));
+        }
+        return new Group(rows, columns);
+    }
+
+    private static List<Object> readColumn(ByteBuffer data, byte encoding, int values) {
+        List<Object> column = new ArrayList<>(values);
+        switch (encoding) {
+            case ColumnarFormat.PLAIN -> {
+                for (int i = 0; i < values; i++) {
+                    int length = (int) readVarint(data);
+                    column.add(length == 0 ? null : readUtf8(data, length - 1));
+                }
+            }
+            case ColumnarFormat.DICTIONARY -> {
+                int entries = (int) readVarint(data);
+                List<String> dictionary = new ArrayList<>(entries);
+                for (int i = 0; i < entries; i++) {
+                    dictionary.add(readString(data));
+                }
+                for (int i = 0; i < values; i++) {
+                    int index = (int) readVarint(data);
+                    column.add(index == 0 ? null : dictionary.get(index - 1));
+                }
+            }
+            case ColumnarFormat.VARINT -> {
+                for (int i = 0; i < values; i++) {
+                    column.add(readZigZag(data));
+                }
+            }
+            case ColumnarFormat.DELTA -> {
+                long previous = 0;
+                for (int i = 0; i < values; i++) {
+                    previous += readZigZag(data);
+                    column.add(previous);
+                }
+            }
+            default -> throw new IllegalArgumentException("Unknown column encoding: %d".formatted(encoding));
+        }
+        return column;
+    }
+
+    private static long readVarint(ByteBuffer buffer) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private static long readZigZag(ByteBuffer buffer) {
+        long value = readVarint(buffer);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        return readUtf8(buffer, (int) readVarint(buffer));
+    }
+
+    private static String readUtf8(ByteBuffer buffer, int length) {
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
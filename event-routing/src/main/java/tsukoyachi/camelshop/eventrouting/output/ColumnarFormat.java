@@ -0,0 +1,43 @@
+package tsukoyachi.camelshop.eventrouting.output;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Layout of the columnar event files ({@value #EXTENSION}) written to the processed directory. One file
+ * holds the events of a single type and time window, all numbers are little-endian or LEB128 varints:
+ * <pre>
+ * file   := "CSCOL" version:u8 eventType:string group*
+ * group  := length:i32 crc:i32 rows:varint columns:varint column*  (length counts from rows on)
+ * column := name:string encoding:u8 values:varint length:varint data
+ * string := length:varint utf8
+ * </pre>
+ * Encodings of the column data:
+ * <ul>
+ *     <li>{@link #PLAIN}: one {@code length + 1} varint then the UTF-8 bytes per value, 0 means null</li>
+ *     <li>{@link #DICTIONARY}: the distinct values as strings, then one {@code index + 1} varint per value</li>
+ *     <li>{@link #VARINT}: one zigzag varint per value</li>
+ *     <li>{@link #DELTA}: zigzag varints of the difference with the previous value (epoch millis)</li>
+ * </ul>
+ * {@code crc} is the CRC32C of the length and of the rest of the group: an append cut short by a crash
+ * (a partial group, or a tail the file system filled with zeroes) is told apart from a complete group.
+ * Version 1 files have no {@code crc}, they are still read and appended to.
+ * <p>
+ * Groups are self-contained (dictionaries included), a file is extended by appending groups. Order carts
+ * are flattened: {@code cart.size} holds the number of lines of each order, {@code cart.itemId} and
+ * {@code cart.quantity} the lines one after the other.
+ */
+public final class ColumnarFormat {
+    public static final String EXTENSION = ".cscol";
+    public static final byte VERSION = 2;
+    static final byte VERSION_WITHOUT_CHECKSUM = 1;
+
+    public static final byte PLAIN = 1;
+    public static final byte DICTIONARY = 2;
+    public static final byte VARINT = 3;
+    public static final byte DELTA = 4;
+
+    static final byte[] MAGIC = "CSCOL".getBytes(StandardCharsets.US_ASCII);
+
+    private ColumnarFormat() {
+    }
+}
@@ -0,0 +1,252 @@
+package tsukoyachi.camelshop.eventrouting.output;
+
+import tsukoyachi.camelshop.common.models.OrderCreatedEvent;
+import tsukoyachi.camelshop.common.models.PaymentProcessedEvent;
+import tsukoyachi.camelshop.common.models.ShipmentDeliveredEvent;
+import tsukoyachi.camelshop.common.models.ShopEvent;
+import tsukoyachi.camelshop.common.models.SignupEvent;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+/**
+ * Events of one type buffered column by column until they are encoded as a record group.
+ */
+final class RecordGroup {
+    private final List<Column> columns = new ArrayList<>();
+    private final DictionaryColumn userId = new DictionaryColumn("userId");
+    private StringColumn orderId;
+    private StringColumn username;
+    private StringColumn email;
+    private StringColumn reference;
+    private LongColumn cartSize;
+    private DictionaryColumn cartItemId;
+    private LongColumn cartQuantity;
+    private final LongColumn time;
+    private int rows;
+
+    RecordGroup(String eventType) {
+        columns.add(userId);
+        switch (eventType) {
+            case SignupEvent.TYPE -> {
+                username = add(new StringColumn("username"));
+                email = add(new StringColumn("email"));
+                time = add(new LongColumn("createdAt", ColumnarFormat.DELTA));
+            }
+            case OrderCreatedEvent.TYPE -> {
+                orderId = add(new StringColumn("orderId"));
+                cartSize = add(new LongColumn("cart.size", ColumnarFormat.VARINT));
+                cartItemId = add(new DictionaryColumn("cart.itemId"));
+                cartQuantity = add(new LongColumn("cart.quantity", ColumnarFormat.VARINT));
+                time = add(new LongColumn("createdAt", ColumnarFormat.DELTA));
+            }
+            case PaymentProcessedEvent.TYPE -> {
+                orderId = add(new StringColumn("orderId"));
+                reference = add(new StringColumn("billingId"));
+                time = add(new LongColumn("processedAt", ColumnarFormat.DELTA));
+            }
+            case ShipmentDeliveredEvent.TYPE -> {
+                orderId = add(new StringColumn("orderId"));
+                reference = add(new StringColumn("parcelId"));
+                time = add(new LongColumn("deliveredAt", ColumnarFormat.DELTA));
+            }
+            default -> throw new IllegalArgumentException("Unknown event type: %s".formatted(eventType));
+        }
+    }
+
+    int rows() {
+        return rows;
+    }
+
+    void add(ShopEvent event) {
+        userId.add(event.userId());
+        switch (event) {
+            case SignupEvent signup -> {
+                username.add(signup.username());
+                email.add(signup.email());
+                time.add(signup.createdAt());
+            }
+            case OrderCreatedEvent order -> {
+                orderId.add(order.orderId());
+                cartSize.add(order.cart().size());
+                order.cart().forEach((itemId, quantity) -> {
+                    cartItemId.add(itemId);
+                    cartQuantity.add(quantity);
+                });
+                time.add(order.createdAt());
+            }
+            case PaymentProcessedEvent payment -> {
+                orderId.add(payment.orderId());
+                reference.add(payment.billingId());
+                time.add(payment.processedAt());
+            }
+            case ShipmentDeliveredEvent shipment -> {
+                orderId.add(shipment.orderId());
+                reference.add(shipment.parcelId());
+                time.add(shipment.deliveredAt());
+            }
+        }
+        rows++;
+    }
+
+    /**
+     * Appends the group, length prefix and checksum included, {@code scratch} is used to encode each column.
+     * The checksum is left out for files of {@link ColumnarFormat#VERSION_WITHOUT_CHECKSUM}.
+     */
+    void encode(ByteSink sink, ByteSink scratch, boolean checksum) {
+        int lengthPosition = sink.size();
+        sink.writeIntLE(0);
+        if (checksum) {
+            sink.writeIntLE(0);
+        }
+        int start = sink.size();
+        sink.writeVarint(rows);
+        sink.writeVarint(columns.size());
+        for (Column column : columns) {
+            scratch.reset();
+            column.encode(scratch);
+            sink.writeString(column.name);
+            sink.writeByte(column.encoding);
+            sink.writeVarint(column.size());
+            sink.writeVarint(scratch.size());
+            sink.writeBytes(scratch);
+        }
+        sink.setIntLE(lengthPosition, sink.size() - start);
+        if (checksum) {
+            CRC32C crc = new CRC32C();
+            sink.updateChecksum(crc, lengthPosition, lengthPosition + Integer.BYTES);
+            sink.updateChecksum(crc, start, sink.size());
+            sink.setIntLE(lengthPosition + Integer.BYTES, (int) crc.getValue());
+        }
+    }
+
+    private <C extends Column> C add(C column) {
+        columns.add(column);
+        return column;
+    }
+
+    private abstract static class Column {
+        final String name;
+        final byte encoding;
+
+        Column(String name, byte encoding) {
+            this.name = name;
+            this.encoding = encoding;
+        }
+
+        abstract int size();
+
+        abstract void encode(ByteSink sink);
+    }
+
+    private static final class StringColumn extends Column {
+        private final List<String> values = new ArrayList<>();
+
+        StringColumn(String name) {
+            super(name, ColumnarFormat.PLAIN);
+        }
+
+        void add(String value) {
+            values.add(value);
+        }
+
+        @Override
+        int size() {
+            return values.size();
+        }
+
+        @Override
+        void encode(ByteSink sink) {
+            for (String value : values) {
+                if (value == null) {
+                    sink.writeVarint(0);
+                } else {
+                    byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+                    sink.writeVarint(utf8.length + 1L);
+                    sink.writeBytes(utf8);
+                }
+            }
+        }
+    }
+
+    /**
+     * Each distinct value is stored once, rows only hold its index.
+     */
+    private static final class DictionaryColumn extends Column {
+        private final Map<String, Integer> dictionary = new HashMap<>();
+        private final List<String> entries = new ArrayList<>();
+        private int[] indexes = new int[256];
+        private int size;
+
+        DictionaryColumn(String name) {
+            super(name, ColumnarFormat.DICTIONARY);
+        }
+
+        void add(String value) {
+            int index = 0;
+            if (value != null) {
+                index = dictionary.computeIfAbsent(value, key -> {
+                    entries.add(key);
+                    return entries.size();
+                });
+            }
+            if (size == indexes.length) {
+                indexes = Arrays.copyOf(indexes, size * 2);
+            }
+            indexes[size++] = index;
+        }
+
+        @Override
+        int size() {
+            return size;
+        }
+
+        @Override
+        void encode(ByteSink sink) {
+            sink.writeVarint(entries.size());
+            entries.forEach(sink::writeString);
+            for (int i = 0; i < size; i++) {
+                sink.writeVarint(indexes[i]);
+            }
+        }
+    }
+
+    private static final class LongColumn extends Column {
+        private long[] values = new long[256];
+        private int size;
+
+        LongColumn(String name, byte encoding) {
+            super(name, encoding);
+        }
+
+        void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        @Override
+        int size() {
+            return size;
+        }
+
+        @Override
+        void encode(ByteSink sink) {
+            long previous = 0;
+            for (int i = 0; i < size; i++) {
+                if (encoding == ColumnarFormat.DELTA) {
+                    sink.writeZigZag(values[i] - previous);
+                    previous = values[i];
+                } else {
+                    sink.writeZigZag(values[i]);
+                }
+            }
+        }
+    }
+}
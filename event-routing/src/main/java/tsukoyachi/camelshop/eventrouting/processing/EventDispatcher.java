@@ -0,0 +1,61 @@
+package tsukoyachi.camelshop.eventrouting.processing;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import tsukoyachi.camelshop.common.models.OrderCreatedEvent;
+import tsukoyachi.camelshop.common.models.PaymentProcessedEvent;
+import tsukoyachi.camelshop.common.models.ShipmentDeliveredEvent;
+import tsukoyachi.camelshop.common.models.ShopEvent;
+import tsukoyachi.camelshop.common.models.SignupEvent;
+import tsukoyachi.camelshop.eventrouting.audit.EventAuditLogger;
+import tsukoyachi.camelshop.eventrouting.checkpoint.FileCheckpointer;
+import tsukoyachi.camelshop.eventrouting.idempotency.IdempotencyStore;
+import tsukoyachi.camelshop.eventrouting.metrics.EventMetrics;
+import tsukoyachi.camelshop.eventrouting.output.ColumnarEventWriter;
+import tsukoyachi.camelshop.eventrouting.publish.EventPublisher;
+
+/**
+ * Single exit point of the file handlers: every parsed event goes through here. Events that were already
+ * processed (a replayed file, an event repeated in the input) are dropped. The key of an event is recorded
+ * with the keys of its file, they are only persisted once the outputs of the file are flushed. Events are
+ * published on behalf of their file, whose flush reports on their delivery.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class EventDispatcher {
+    public static final String EVENT_NAMESPACE = "event";
+
+    private final IdempotencyStore idempotencyStore;
+    private final EventMetrics eventMetrics;
+    private final EventAuditLogger auditLogger;
+    private final ColumnarEventWriter columnarWriter;
+    private final EventPublisher eventPublisher;
+
+    public void dispatch(ShopEvent event, FileCheckpointer.Cursor file) {
+        long start = System.nanoTime();
+        if (!idempotencyStore.markIfAbsent(file.keys(), EVENT_NAMESPACE, idempotencyKey(event))) {
+            log.debug("Skipping already processed {} event: {}", event.eventType(), event);
+            eventMetrics.eventDuplicated(event.eventType());
+            return;
+        }
+
+        columnarWriter.write(event);
+        eventPublisher.publish(event, file.deliveries());
+        auditLogger.record(event);
+        eventMetrics.recordSink(event.eventType(), System.nanoTime() - start);
+    }
+
+    /**
+     * A user signs up once, every other event happens once per order.
+     */
+    static String idempotencyKey(ShopEvent event) {
+        return switch (event) {
+            case SignupEvent signup -> SignupEvent.TYPE + ":" + signup.userId();
+            case OrderCreatedEvent order -> OrderCreatedEvent.TYPE + ":" + order.orderId();
+            case PaymentProcessedEvent payment -> PaymentProcessedEvent.TYPE + ":" + payment.orderId();
+            case ShipmentDeliveredEvent shipment -> ShipmentDeliveredEvent.TYPE + ":" + shipment.orderId();
+        };
+    }
+}
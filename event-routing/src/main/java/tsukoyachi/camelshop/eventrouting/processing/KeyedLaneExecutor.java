@@ -0,0 +1,225 @@
+package tsukoyachi.camelshop.eventrouting.processing;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs event processing tasks on a fixed set of single-threaded lanes. Tasks are assigned to a lane by
+ * hashing their key, so tasks sharing a key always run in submission order while different keys are
+ * processed concurrently. When parallel mode is disabled, tasks simply run on the caller thread.
+ */
+@Slf4j
+@Component
+public class KeyedLaneExecutor {
+    private final boolean parallel;
+    private final int chunkSize;
+    private final ThreadPoolExecutor[] lanes;
+
+    public KeyedLaneExecutor(
+            @Value("${camelshop.event-routing.parallel.enabled:false}") boolean parallel,
+            @Value("${camelshop.event-routing.parallel.lanes:0}") int lanes,
+            @Value("${camelshop.event-routing.parallel.chunk-size:256}") int chunkSize,
+            @Value("${camelshop.event-routing.parallel.queue-capacity:64}") int queueCapacity,
+            @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
+        this.parallel = parallel;
+        this.chunkSize = Math.max(1, chunkSize);
+        this.lanes = parallel
+                ? createLanes(lanes > 0 ? lanes : Runtime.getRuntime().availableProcessors(),
+                        Math.max(1, queueCapacity), virtualThreads)
+                : new ThreadPoolExecutor[0];
+
+        if (parallel) {
+            log.info("Parallel event processing enabled with {} {}lane(s) and chunks of {} event(s)",
+                    this.lanes.length, virtualThreads ? "virtual " : "", this.chunkSize);
+        }
+    }
+
+    public boolean isParallel() {
+        return parallel;
+    }
+
+    /**
+     * Opens a batch for one source (usually a file). Closing the batch waits for all of its tasks and
+     * rethrows the first failure, so errors are still reported against the file that caused them.
+     */
+    public Batch openBatch() {
+        return new Batch();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (ThreadPoolExecutor lane : lanes) {
+            lane.shutdown();
+        }
+        for (ThreadPoolExecutor lane : lanes) {
+            try {
+                if (!lane.awaitTermination(30, TimeUnit.SECONDS)) {
+                    lane.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                lane.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private int laneOf(String key) {
+        if (key == null) {
+            return 0;
+        }
+        int hash = key.hashCode();
+        return Math.floorMod(hash ^ (hash >>> 16), lanes.length);
+    }
+
+    private static ThreadPoolExecutor[] createLanes(int count, int queueCapacity, boolean virtualThreads) {
+        ThreadPoolExecutor[] executors = new ThreadPoolExecutor[count];
+        for (int i = 0; i < count; i++) {
+            executors[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueCapacity),
+                    laneThreadFactory(i, virtualThreads), KeyedLaneExecutor::blockUntilQueued);
+        }
+        return executors;
+    }
+
+    private static ThreadFactory laneThreadFactory(int index, boolean virtualThreads) {
+        if (virtualThreads) {
+            return Thread.ofVirtual().name("event-lane-" + index).factory();
+        }
+        return runnable -> {
+            Thread thread = new Thread(runnable, "event-lane-" + index);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Back-pressure: a full lane blocks the producer instead of running the task on the caller thread,
+     * which would break the per-key ordering.
+     */
+    private static void blockUntilQueued(Runnable task, ThreadPoolExecutor executor) {
+        if (executor.isShutdown()) {
+            throw new RejectedExecutionException("Event lane has been shut down");
+        }
+        try {
+            executor.getQueue().put(task);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted while waiting for a free slot in event lane", e);
+        }
+    }
+
+    public final class Batch implements AutoCloseable {
+        private final List<List<Runnable>> buffers = new ArrayList<>();
+        private final AtomicInteger pending = new AtomicInteger();
+        private final AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        private final Object monitor = new Object();
+
+        private Batch() {
+            for (int i = 0; i < lanes.length; i++) {
+                buffers.add(new ArrayList<>(chunkSize));
+            }
+        }
+
+        /**
+         * Submits a task for the given key. Tasks are buffered per lane and handed over in chunks.
+         */
+        public void submit(String key, Runnable task) {
+            if (!parallel) {
+                task.run();
+                return;
+            }
+
+            rethrowFailure();
+            int lane = laneOf(key);
+            List<Runnable> buffer = buffers.get(lane);
+            buffer.add(task);
+            if (buffer.size() >= chunkSize) {
+                flush(lane);
+            }
+        }
+
+        /**
+         * Waits until every task submitted so far has run, the batch can still be used afterwards.
+         */
+        public void drain() {
+            if (!parallel) {
+                return;
+            }
+
+            for (int lane = 0; lane < buffers.size(); lane++) {
+                if (!buffers.get(lane).isEmpty()) {
+                    flush(lane);
+                }
+            }
+
+            synchronized (monitor) {
+                while (pending.get() > 0) {
+                    try {
+                        monitor.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IllegalStateException("Interrupted while waiting for event lanes", e);
+                    }
+                }
+            }
+            rethrowFailure();
+        }
+
+        @Override
+        public void close() {
+            drain();
+        }
+
+        private void flush(int lane) {
+            List<Runnable> chunk = buffers.set(lane, new ArrayList<>(chunkSize));
+            pending.incrementAndGet();
+            try {
+                lanes[lane].execute(() -> runChunk(chunk));
+            } catch (RejectedExecutionException e) {
+                completeChunk();
+                throw e;
+            }
+        }
+
+        private void runChunk(List<Runnable> chunk) {
+            try {
+                for (Runnable task : chunk) {
+                    if (failure.get() != null) {
+                        break;
+                    }
+                    task.run();
+                }
+            } catch (RuntimeException e) {
+                failure.compareAndSet(null, e);
+            } finally {
+                completeChunk();
+            }
+        }
+
+        private void completeChunk() {
+            if (pending.decrementAndGet() == 0) {
+                synchronized (monitor) {
+                    monitor.notifyAll();
+                }
+            }
+        }
+
+        private void rethrowFailure() {
+            RuntimeException e = failure.get();
+            if (e != null) {
+                throw e;
+            }
+        }
+    }
+}
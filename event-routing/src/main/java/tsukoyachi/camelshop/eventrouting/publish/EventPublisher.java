@@ -0,0 +1,335 @@
+package tsukoyachi.camelshop.eventrouting.publish;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageBuilder;
+import org.springframework.amqp.core.MessageDeliveryMode;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import tsukoyachi.camelshop.common.codec.EventCodec;
+import tsukoyachi.camelshop.common.models.ShopEvent;
+import tsukoyachi.camelshop.eventrouting.metrics.EventMetrics;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Publishing stage sending the dispatched events to the RabbitMQ exchange, with routing key
+ * {@code camelshop.<eventType>}. Events are buffered per type and sent {@code batch-size} at a time,
+ * one message per batch in the {@link EventCodec} form.
+ * <p>
+ * Messages are confirmed asynchronously by the broker. At most {@code max-in-flight} messages wait for
+ * their confirm, past that the publishing thread blocks until the broker catches up, which slows the file
+ * route down instead of piling messages up in memory. Nacked messages are sent again, up to
+ * {@code max-attempts} times.
+ * <p>
+ * Each caller (an input file) publishes with its own {@link Deliveries}. {@link #flush(Deliveries)} sends
+ * the partial batches holding its events and waits for the confirms of every batch it had a share in, it
+ * fails if some of them could not be delivered so that the input file is not marked as processed. The
+ * batches of the other callers do not affect it.
+ */
+@Slf4j
+@Component
+public class EventPublisher {
+    public static final String ROUTING_KEY_PREFIX = "camelshop.";
+    public static final String EVENT_COUNT_HEADER = "camelshop-event-count";
+
+    private final RabbitTemplate rabbitTemplate;
+    private final EventMetrics eventMetrics;
+    private final boolean enabled;
+    private final String exchange;
+    private final int batchSize;
+    private final int maxInFlight;
+    private final Duration confirmTimeout;
+    private final int maxAttempts;
+    private final Semaphore window;
+    private final Map<String, Pending> batches = new HashMap<>();
+    private final Queue<Batch> retries = new ConcurrentLinkedQueue<>();
+    // Completed, then replaced, every time a batch is queued to be sent again
+    private final AtomicReference<CompletableFuture<Void>> retried =
+            new AtomicReference<>(new CompletableFuture<>());
+
+    /**
+     * Outcome of the batches holding the events of one caller: the number of their events that were dropped
+     * by the broker, 0 once they are all confirmed.
+     */
+    public static final class Deliveries {
+        private final Queue<CompletableFuture<Integer>> outcomes = new ConcurrentLinkedQueue<>();
+    }
+
+    /**
+     * Events of a type waiting for their batch to be full, and the callers they come from.
+     */
+    private record Pending(List<ShopEvent> events, Set<Deliveries> callers) {
+    }
+
+    /**
+     * {@code outcome} is shared by every attempt of the batch, it is completed once the batch is confirmed
+     * or dropped.
+     */
+    private record Batch(String eventType, byte[] body, int events, int attempt, CompletableFuture<Integer> outcome) {
+        Batch nextAttempt() {
+            return new Batch(eventType, body, events, attempt + 1, outcome);
+        }
+    }
+
+    public EventPublisher(
+            RabbitTemplate rabbitTemplate,
+            EventMetrics eventMetrics,
+            @Value("${camelshop.event-routing.publish.enabled:true}") boolean enabled,
+            @Value("${camelshop.rabbitmq.exchange}") String exchange,
+            @Value("${camelshop.event-routing.publish.batch-size:256}") int batchSize,
+            @Value("${camelshop.event-routing.publish.max-in-flight:64}") int maxInFlight,
+            @Value("${camelshop.event-routing.publish.confirm-timeout:30s}") Duration confirmTimeout,
+            @Value("${camelshop.event-routing.publish.max-attempts:3}") int maxAttempts) {
+        this.rabbitTemplate = rabbitTemplate;
+        this.eventMetrics = eventMetrics;
+        this.enabled = enabled;
+        this.exchange = exchange;
+        this.batchSize = Math.max(1, batchSize);
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.confirmTimeout = confirmTimeout;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.window = new Semaphore(this.maxInFlight);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Buffers the event in the batch of its type, on behalf of {@code deliveries}.
+     */
+    public void publish(ShopEvent event, Deliveries deliveries) {
+        if (!enabled) {
+            return;
+        }
+
+        Batch full = null;
+        synchronized (batches) {
+            Pending pending = batches.computeIfAbsent(event.eventType(),
+                    type -> new Pending(new ArrayList<>(batchSize), new HashSet<>()));
+            pending.events().add(event);
+            pending.callers().add(deliveries);
+            if (pending.events().size() >= batchSize) {
+                full = seal(event.eventType(), pending);
+                batches.remove(event.eventType());
+            }
+        }
+        if (full != null) {
+            try {
+                resendNacked();
+            } catch (RuntimeException e) {
+                unsent(List.of(full));
+                throw e;
+            }
+            sendAll(List.of(full));
+        }
+    }
+
+    /**
+     * Sends the partial batches holding events of {@code deliveries} and waits until the broker confirmed
+     * every batch it had a share in.
+     *
+     * @throws IllegalStateException if the broker did not confirm in time or some of these events were dropped
+     */
+    public void flush(Deliveries deliveries) {
+        if (!enabled) {
+            return;
+        }
+
+        List<Batch> partial = new ArrayList<>();
+        synchronized (batches) {
+            batches.entrySet().removeIf(entry -> entry.getValue().callers().contains(deliveries)
+                    && partial.add(seal(entry.getKey(), entry.getValue())));
+        }
+        sendAll(partial);
+
+        List<CompletableFuture<Integer>> outcomes = new ArrayList<>();
+        CompletableFuture<Integer> outcome;
+        while ((outcome = deliveries.outcomes.poll()) != null) {
+            outcomes.add(outcome);
+        }
+        CompletableFuture<Void> confirmed = CompletableFuture.allOf(outcomes.toArray(CompletableFuture[]::new));
+        long deadline = System.nanoTime() + confirmTimeout.toNanos();
+        while (!confirmed.isDone()) {
+            CompletableFuture<Void> retry = retried.get();
+            resendNacked();
+            await(CompletableFuture.anyOf(confirmed, retry), deadline);
+        }
+
+        int dropped = outcomes.stream().mapToInt(CompletableFuture::join).sum();
+        if (dropped > 0) {
+            throw new IllegalStateException("%d event(s) were not accepted by the broker".formatted(dropped));
+        }
+    }
+
+    /**
+     * Sends every partial batch and waits for the confirms, dropped batches are only logged.
+     */
+    @PreDestroy
+    public void close() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            List<Batch> partial = new ArrayList<>();
+            synchronized (batches) {
+                batches.forEach((eventType, pending) -> partial.add(seal(eventType, pending)));
+                batches.clear();
+            }
+            sendAll(partial);
+
+            long deadline = System.nanoTime() + confirmTimeout.toNanos();
+            do {
+                resendNacked();
+                awaitConfirms(deadline);
+            } while (!retries.isEmpty());
+        } catch (RuntimeException e) {
+            log.error("Unable to publish buffered events: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Turns buffered events into a batch, its outcome is reported to every caller with events in it.
+     */
+    private static Batch seal(String eventType, Pending pending) {
+        CompletableFuture<Integer> outcome = new CompletableFuture<>();
+        pending.callers().forEach(caller -> caller.outcomes.add(outcome));
+        return new Batch(eventType, EventCodec.encode(pending.events()), pending.events().size(), 1, outcome);
+    }
+
+    /**
+     * Sends the batches in order. If one of them fails, the ones left are not sent.
+     */
+    private void sendAll(List<Batch> sealed) {
+        int sent = 0;
+        try {
+            for (; sent < sealed.size(); sent++) {
+                send(sealed.get(sent));
+            }
+        } finally {
+            unsent(sealed.subList(sent, sealed.size()));
+        }
+    }
+
+    /**
+     * Batches that could not be sent count as dropped: their callers fail now instead of waiting for a
+     * confirm that never comes.
+     */
+    private static void unsent(List<Batch> sealed) {
+        sealed.forEach(batch -> batch.outcome().complete(batch.events()));
+    }
+
+    private void send(Batch batch) {
+        try {
+            acquire(1, System.nanoTime() + confirmTimeout.toNanos());
+        } catch (RuntimeException e) {
+            batch.outcome().complete(batch.events());
+            throw e;
+        }
+        Message message = MessageBuilder.withBody(batch.body())
+                .setContentType(EventCodec.CONTENT_TYPE)
+                .setDeliveryMode(MessageDeliveryMode.PERSISTENT)
+                .setHeader(EVENT_COUNT_HEADER, batch.events())
+                .build();
+        CorrelationData correlation = new CorrelationData();
+        try {
+            rabbitTemplate.send(exchange, ROUTING_KEY_PREFIX + batch.eventType(), message, correlation);
+        } catch (AmqpException e) {
+            window.release();
+            batch.outcome().complete(batch.events());
+            throw e;
+        }
+        correlation.getFuture().whenComplete((confirm, error) -> {
+            try {
+                if (error == null && confirm.isAck() && correlation.getReturned() == null) {
+                    eventMetrics.eventsPublished(batch.eventType(), batch.events());
+                    batch.outcome().complete(0);
+                } else {
+                    rejected(batch, correlation, error != null ? error.getMessage() : confirm.getReason());
+                }
+            } finally {
+                window.release();
+            }
+        });
+    }
+
+    /**
+     * Runs on the connection thread: the batch is queued, it is sent again by the next publishing thread.
+     */
+    private void rejected(Batch batch, CorrelationData correlation, String reason) {
+        if (correlation.getReturned() != null) {
+            // Unroutable, sending it again would give the same result
+            reason = "no queue bound for %s".formatted(correlation.getReturned().getRoutingKey());
+        } else if (batch.attempt() < maxAttempts) {
+            log.warn("Broker rejected a batch of {} {} event(s) ({}), attempt {} of {}",
+                    batch.events(), batch.eventType(), reason, batch.attempt(), maxAttempts);
+            retries.add(batch.nextAttempt());
+            retried.getAndSet(new CompletableFuture<>()).complete(null);
+            return;
+        }
+
+        log.error("Dropping a batch of {} {} event(s): {}", batch.events(), batch.eventType(), reason);
+        eventMetrics.eventsUndelivered(batch.eventType(), batch.events());
+        batch.outcome().complete(batch.events());
+    }
+
+    private void resendNacked() {
+        Batch batch;
+        while ((batch = retries.poll()) != null) {
+            send(batch);
+        }
+    }
+
+    /**
+     * Waits until no message is waiting for its confirm, by taking the whole window for a moment.
+     */
+    private void awaitConfirms(long deadline) {
+        acquire(maxInFlight, deadline);
+        window.release(maxInFlight);
+    }
+
+    private void await(CompletableFuture<?> future, long deadline) {
+        try {
+            future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            throw new IllegalStateException("Broker did not confirm the published events within %s"
+                    .formatted(confirmTimeout));
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Unable to wait for publisher confirms", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for publisher confirms", e);
+        }
+    }
+
+    private void acquire(int permits, long deadline) {
+        try {
+            if (!window.tryAcquire(permits, Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                throw new IllegalStateException("Broker did not confirm the published events within %s"
+                        .formatted(confirmTimeout));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for publisher confirms", e);
+        }
+    }
+}
@@ -1,69 +1,88 @@
 package tsukoyachi.camelshop.eventrouting.route;
 
-import org.apache.camel.builder.PredicateBuilder;
+import lombok.RequiredArgsConstructor;
+import org.apache.camel.Exchange;
 import org.apache.camel.builder.RouteBuilder;
-import org.apache.camel.model.dataformat.JsonLibrary;
+import org.apache.camel.model.RouteDefinition;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
-import tsukoyachi.camelshop.eventrouting.handler.file.CsvFileHandler;
-import tsukoyachi.camelshop.eventrouting.handler.file.JsonFileHandler;
-import tsukoyachi.camelshop.eventrouting.handler.file.XmlFileHandler;
+import tsukoyachi.camelshop.eventrouting.checkpoint.FileCheckpointer;
+import tsukoyachi.camelshop.eventrouting.handler.decoder.EventDecoderRegistry;
+import tsukoyachi.camelshop.eventrouting.idempotency.FileDigester;
+import tsukoyachi.camelshop.eventrouting.idempotency.IdempotencyStore;
+import tsukoyachi.camelshop.eventrouting.idempotency.StoreIdempotentRepository;
+import tsukoyachi.camelshop.eventrouting.metrics.EventMetrics;
+import tsukoyachi.camelshop.eventrouting.processing.KeyedLaneExecutor;
 
 @Component
+@RequiredArgsConstructor
 public class FileRoute extends RouteBuilder {
+    private final EventDecoderRegistry decoderRegistry;
+    private final KeyedLaneExecutor laneExecutor;
+    private final IdempotencyStore idempotencyStore;
+    private final FileDigester fileDigester;
+    private final EventMetrics eventMetrics;
+    private final FileCheckpointer fileCheckpointer;
+
     @Value("${camelshop.event-routing.input-directory}")
     private String inputDir;
     @Value("${camelshop.event-routing.error-directory}")
     private String errorDir;
+    @Value("${camelshop.event-routing.parallel.file-concurrency:4}")
+    private int fileConcurrency;
 
     @Override
     public void configure() throws Exception {
+        // Invalid events are dead-lettered one by one by the handlers, a file only ends up here when it
+        // can not be read as a whole (unknown or malformed content) or when an output fails. Its checkpoint
+        // is kept, the next time the file is read it resumes from there, and the keys of the events read
+        // since then are forgotten so that those events are processed again
         onException(Exception.class)
                 .handled(true)
                 .log("Error during processing of ${header.CamelFileName}: ${exception.message}")
+                .bean(fileCheckpointer, "abort")
+                .process(exchange -> eventMetrics.fileRejected(fileFormat(exchange)))
                 .to(String.format("file:%s", errorDir))
                 .end();
 
-        from(String.format("file:%s?noop=true", inputDir))
-                .routeId("FileRoute")
-                .log("Processing file: ${header.CamelFileName}")
+        RouteDefinition fileRoute = from(String.format("file:%s?noop=true", inputDir))
+                .routeId("FileRoute");
+        if (laneExecutor.isParallel()) {
+            // Several files in flight at once, the events of each file are then spread over the event lanes.
+            // The max pool size is the cap of the virtual thread pool, Camel would otherwise default it to 20
+            fileRoute.threads(fileConcurrency, fileConcurrency);
+        }
+        // Files already processed (same name, size and sampled checksum) are skipped, even after a restart.
+        // The digest is recorded once the file is done, a file interrupted halfway is read again from its
+        // last checkpoint and the events processed after it are then dropped by the event level check.
+        fileRoute
+                .setHeader(FileDigester.DIGEST_HEADER, method(fileDigester, "digest"))
+                .idempotentConsumer(header(FileDigester.DIGEST_HEADER),
+                        new StoreIdempotentRepository(idempotencyStore, IdempotencyStore.FILE_NAMESPACE))
+                    .eager(false)
+                    .skipDuplicate(false)
                 .choice()
-                .when(header("CamelFileName").endsWith(".csv"))
-                .to("direct:handleCsv")
-                .when(header("CamelFileName").endsWith(".json"))
-                .to("direct:handleJson")
-                .when(header("CamelFileName").endsWith(".xml"))
-                .to("direct:handleXml")
-                .otherwise()
-                .throwException(new IllegalArgumentException("Unknown file type."))
-                .end();
-
-        from("direct:handleCsv")
-            .log("This is a CSV file.")
-            .unmarshal()
-            .csv()
-            .bean(CsvFileHandler.class, "process")
-                .end();
-
-        from("direct:handleJson")
-            .log("This is a JSON file.")
-            .choice()
-                .when(PredicateBuilder.and(body().isNotNull(), body().regex("(?s).*[\\{\\[].*")))
-                    .unmarshal()
-                    .json(JsonLibrary.Jackson)
-                    .bean(JsonFileHandler.class, "process")
-                .otherwise()
-                    .log("JSON file is empty or invalid, skipping processing")
+                    .when(exchangeProperty(Exchange.DUPLICATE_MESSAGE).isEqualTo(true))
+                        .log("File ${header.CamelFileName} has already been processed, skipping")
+                    .otherwise()
+                        .log("Processing file: ${header.CamelFileName}")
+                        .bean(decoderRegistry, "decode")
+                        // Outputs are flushed first: once the digest is stored the file is not read again.
+                        // The digest and the event keys of the file are then stored together
+                        .bean(fileCheckpointer, "complete")
                 .end();
+    }
 
-        from("direct:handleXml")
-            .log("This is a XML file.")
-            .choice()
-                .when(PredicateBuilder.and(body().isNotNull(), body().regex("(?s).*<\\w+.*>.*")))
-                    .convertBodyTo(org.w3c.dom.Document.class)
-                    .bean(XmlFileHandler.class, "process")
-                .otherwise()
-                    .log("XML file is empty or invalid, skipping processing")
-                .end();
+    /**
+     * Format detected by the decoder registry, or the file extension when the file was rejected before.
+     */
+    private static String fileFormat(Exchange exchange) {
+        String format = exchange.getIn().getHeader(EventDecoderRegistry.FORMAT_HEADER, String.class);
+        if (format != null) {
+            return format;
+        }
+        String fileName = exchange.getIn().getHeader(Exchange.FILE_NAME, "", String.class);
+        int extension = fileName.lastIndexOf('.');
+        return extension >= 0 ? fileName.substring(extension + 1).toLowerCase() : "none";
     }
 }
@@ -3,7 +3,7 @@ package tsukoyachi.camelshop.eventrouting;
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
 
-@SpringBootTest
+@SpringBootTest(properties = "camelshop.event-routing.idempotency.url=jdbc:sqlite:target/idempotency-test.db")
 class EventRoutingApplicationTests {
 
     @Test
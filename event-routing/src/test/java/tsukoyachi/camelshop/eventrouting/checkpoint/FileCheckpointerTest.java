@@ -0,0 +1,192 @@
+package tsukoyachi.camelshop.eventrouting.checkpoint;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.camel.Exchange;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.support.DefaultExchange;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+import tsukoyachi.camelshop.common.models.ShopEvent;
+import tsukoyachi.camelshop.common.models.SignupEvent;
+import tsukoyachi.camelshop.eventrouting.audit.EventAuditLogger;
+import tsukoyachi.camelshop.eventrouting.deadletter.DeadLetterStore;
+import tsukoyachi.camelshop.eventrouting.handler.file.CsvFileHandler;
+import tsukoyachi.camelshop.eventrouting.handler.file.JsonFileHandler;
+import tsukoyachi.camelshop.eventrouting.handler.file.MappedCsvReader;
+import tsukoyachi.camelshop.eventrouting.handler.file.StaxXmlFileHandler;
+import tsukoyachi.camelshop.eventrouting.idempotency.FileDigester;
+import tsukoyachi.camelshop.eventrouting.idempotency.IdempotencyStore;
+import tsukoyachi.camelshop.eventrouting.metrics.EventMetrics;
+import tsukoyachi.camelshop.eventrouting.output.ColumnarEventWriter;
+import tsukoyachi.camelshop.eventrouting.processing.EventDispatcher;
+import tsukoyachi.camelshop.eventrouting.processing.KeyedLaneExecutor;
+import tsukoyachi.camelshop.eventrouting.publish.EventPublisher;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class FileCheckpointerTest {
+    private static final String DIGEST = "events:1:00000000";
+
+    @TempDir
+    Path directory;
+
+    private final EventMetrics metrics = new EventMetrics(new SimpleMeterRegistry());
+    private final List<String> dispatched = new ArrayList<>();
+    private String failOn;
+
+    @Test
+    void resumesCsvAtTheRecordOfTheLastCheckpoint() throws Exception {
+        String csv = """
+                signup,USER1,Zoë_Doe,zoe.doe@camelshop.com,2025-09-03T19:00:00Z
+                signup,USER2,"José, Jr",jose@camelshop.com,2025-09-03T19:00:00Z
+
+                signup,USER3,Åsa,asa@camelshop.com,2025-09-03T19:00:00Z
+                signup,USER4,Bob,bob@camelshop.com,2025-09-03T19:00:00Z
+                """;
+
+        assertResumes(exchange -> csvHandler().processStream(exchange), csv);
+    }
+
+    @Test
+    void resumesJsonAtTheArrayElementOfTheLastCheckpoint() throws Exception {
+        String json = """
+                [
+                  {"eventType": "signup", "userId": "USER1", "username": "Zoë", "email": "zoe@camelshop.com", "createdAt": "2025-09-03T19:00:00Z"},
+                  {"eventType": "signup", "userId": "USER2", "username": "José", "email": "jose@camelshop.com", "createdAt": "2025-09-03T19:00:00Z"},
+                  {"eventType": "signup", "userId": "USER3", "username": "Åsa", "email": "asa@camelshop.com", "createdAt": "2025-09-03T19:00:00Z"},
+                  {"eventType": "signup", "userId": "USER4", "username": "Bob", "email": "bob@camelshop.com", "createdAt": "2025-09-03T19:00:00Z"}
+                ]
+                """;
+
+        assertResumes(exchange -> jsonHandler().processStream(exchange), json);
+    }
+
+    @Test
+    void resumesXmlAfterTheEventOfTheLastCheckpoint() throws Exception {
+        String xml = """
+                <?xml version="1.0" encoding="UTF-8"?>
+                <!DOCTYPE events [ <!ELEMENT events ANY> ]>
+                <events xmlns:x="urn:x" source='gen>1'>
+                  <event><eventType>signup</eventType><userId>USER1</userId><username>Zoë</username>
+                    <email>zoe@camelshop.com</email><createdAt>2025-09-03T19:00:00Z</createdAt></event>
+                  <!-- </event> in a comment -->
+                  <event><eventType>signup</eventType><userId>USER2</userId><username><![CDATA[José </event>]]></username>
+                    <email>jose@camelshop.com</email><createdAt>2025-09-03T19:00:00Z</createdAt></event>
+                  <metadata generated="yes"/>
+                  <event><eventType>signup</eventType><userId>USER3</userId><username>Åsa</username>
+                    <email>asa@camelshop.com</email><createdAt>2025-09-03T19:00:00Z</createdAt></event>
+                  <?marker </event> ?>
+                  <event><eventType>signup</eventType><userId>USER4</userId><username>Bob</username>
+                    <email>bob@camelshop.com</email><createdAt>2025-09-03T19:00:00Z</createdAt></event>
+                </events>
+                """;
+
+        assertResumes(exchange -> xmlHandler().process(exchange), xml);
+    }
+
+    @Test
+    void resumesMappedCsvAtTheChunkOfTheLastCheckpoint() throws Exception {
+        Path file = directory.resolve("events.csv");
+        Files.writeString(file, IntStream.range(0, 2_000)
+                .mapToObj(i -> "signup,USER%d,Zoë_%d,user%d@camelshop.com,2025-09-03T19:00:00Z%n".formatted(i, i, i))
+                .reduce("\uFEFF", String::concat), StandardCharsets.UTF_8);
+        CsvFileHandler handler = csvHandler();
+
+        failOn = "USER1500";
+        assertThatThrownBy(() -> handler.processMapped(file, exchange(""))).hasMessage("broker down");
+        List<String> firstRun = List.copyOf(dispatched);
+        dispatched.clear();
+        failOn = null;
+        handler.processMapped(file, exchange(""));
+
+        // Resumed at the start of the chunk holding the failed row, which is no further than 8 KB away
+        int resumedAt = Integer.parseInt(dispatched.getFirst().substring("USER".length()));
+        assertThat(resumedAt).isGreaterThan(1_000).isLessThanOrEqualTo(1_500);
+        assertThat(firstRun).contains("USER" + (resumedAt - 1));
+        assertThat(dispatched).hasSize(2_000 - resumedAt).endsWith("USER1999");
+    }
+
+    /**
+     * Processes the content a first time, failing at the third event as an output would, then again: the
+     * second run must start at the failed event, skipping the ones committed before.
+     */
+    private void assertResumes(Consumer<Exchange> handler, String content) {
+        failOn = "USER3";
+        assertThatThrownBy(() -> handler.accept(exchange(content))).hasMessage("broker down");
+        assertThat(dispatched).containsExactly("USER1", "USER2");
+
+        dispatched.clear();
+        failOn = null;
+        handler.accept(exchange(content));
+        assertThat(dispatched).containsExactly("USER3", "USER4");
+    }
+
+    private Exchange exchange(String content) {
+        Exchange exchange = new DefaultExchange(new DefaultCamelContext());
+        exchange.getIn().setHeader(Exchange.FILE_NAME, "events");
+        exchange.getIn().setHeader(FileDigester.DIGEST_HEADER, DIGEST);
+        exchange.getIn().setBody(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)));
+        return exchange;
+    }
+
+    private CsvFileHandler csvHandler() {
+        return new CsvFileHandler(laneExecutor(), new FailingDispatcher(), metrics,
+                new MappedCsvReader(true, DataSize.ofBytes(0), DataSize.ofKilobytes(8), 2), deadLetterStore(),
+                checkpointer());
+    }
+
+    private JsonFileHandler jsonHandler() {
+        return new JsonFileHandler(laneExecutor(), new FailingDispatcher(), metrics, deadLetterStore(), checkpointer());
+    }
+
+    private StaxXmlFileHandler xmlHandler() {
+        return new StaxXmlFileHandler(laneExecutor(), new FailingDispatcher(), metrics, deadLetterStore(), checkpointer());
+    }
+
+    private FileCheckpointer checkpointer() {
+        // A checkpoint at every event boundary
+        return new FileCheckpointer(
+                new IdempotencyStore(true, "jdbc:sqlite:" + directory.resolve("idempotency.db"), 1_000, 0.01, 10),
+                new EventPublisher(null, metrics, false, "none", 1, 1, Duration.ZERO, 1),
+                new ColumnarEventWriter(false, "target", Duration.ofHours(1), 1),
+                deadLetterStore(), true, Duration.ZERO);
+    }
+
+    private DeadLetterStore deadLetterStore() {
+        return new DeadLetterStore(directory.resolve("dead-letter").toString(), directory.resolve("input").toString());
+    }
+
+    private static KeyedLaneExecutor laneExecutor() {
+        return new KeyedLaneExecutor(false, 0, 1, 1, false);
+    }
+
+    private final class FailingDispatcher extends EventDispatcher {
+        private FailingDispatcher() {
+            super(new IdempotencyStore(false, "jdbc:sqlite::memory:", 1, 0.5, 1), metrics,
+                    new EventAuditLogger(false, 0, false, 1),
+                    new ColumnarEventWriter(false, "target", Duration.ofHours(1), 1),
+                    new EventPublisher(null, metrics, false, "none", 1, 1, Duration.ZERO, 1));
+        }
+
+        @Override
+        public void dispatch(ShopEvent event, FileCheckpointer.Cursor file) {
+            String userId = ((SignupEvent) event).userId();
+            if (userId.equals(failOn)) {
+                throw new IllegalStateException("broker down");
+            }
+            dispatched.add(userId);
+        }
+    }
+}
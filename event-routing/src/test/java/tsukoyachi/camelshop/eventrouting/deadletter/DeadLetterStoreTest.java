@@ -0,0 +1,121 @@
+package tsukoyachi.camelshop.eventrouting.deadletter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.camel.Exchange;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.support.DefaultExchange;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+import tsukoyachi.camelshop.common.models.ShopEvent;
+import tsukoyachi.camelshop.eventrouting.audit.EventAuditLogger;
+import tsukoyachi.camelshop.eventrouting.checkpoint.FileCheckpointer;
+import tsukoyachi.camelshop.eventrouting.handler.file.CsvFileHandler;
+import tsukoyachi.camelshop.eventrouting.handler.file.MappedCsvReader;
+import tsukoyachi.camelshop.eventrouting.idempotency.IdempotencyStore;
+import tsukoyachi.camelshop.eventrouting.metrics.EventMetrics;
+import tsukoyachi.camelshop.eventrouting.output.ColumnarEventWriter;
+import tsukoyachi.camelshop.eventrouting.processing.EventDispatcher;
+import tsukoyachi.camelshop.eventrouting.processing.KeyedLaneExecutor;
+import tsukoyachi.camelshop.eventrouting.publish.EventPublisher;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DeadLetterStoreTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void setsInvalidRowsAsideAndKeepsReadingTheFile() throws IOException {
+        DeadLetterStore store = new DeadLetterStore(directory.resolve("dead-letter").toString(),
+                directory.resolve("input").toString());
+        List<ShopEvent> dispatched = new ArrayList<>();
+        EventMetrics metrics = new EventMetrics(new SimpleMeterRegistry());
+        CsvFileHandler handler = new CsvFileHandler(new KeyedLaneExecutor(false, 0, 1, 1, false),
+                new CapturingDispatcher(metrics, dispatched), metrics,
+                new MappedCsvReader(false, DataSize.ofBytes(0), DataSize.ofKilobytes(8), 1), store,
+                new FileCheckpointer(new IdempotencyStore(false, "jdbc:sqlite::memory:", 1, 0.5, 1),
+                        new EventPublisher(null, metrics, false, "none", 1, 1, Duration.ZERO, 1),
+                        new ColumnarEventWriter(false, "target", Duration.ofHours(1), 1), store, false, Duration.ZERO));
+
+        String csv = """
+                signup,USER1,John_Doe,john.doe@camelshop.com,2025-09-03T19:00:00Z
+                payment_processed,USER1,ORDER1,BILL1,yesterday
+                refund,USER1,ORDER1,BILL1,2025-09-03T19:00:00Z
+                shipment_delivered,USER1,ORDER1,PARCEL1,2025-09-04T13:03:00Z
+                """;
+        Exchange exchange = new DefaultExchange(new DefaultCamelContext());
+        exchange.getIn().setHeader(Exchange.FILE_NAME, "events.csv");
+        exchange.getIn().setBody(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)));
+        handler.processStream(exchange);
+        store.flush();
+
+        assertThat(dispatched).extracting(ShopEvent::eventType).containsExactly("signup", "shipment_delivered");
+        List<String> lines = Files.readAllLines(directory.resolve("dead-letter").resolve(DeadLetterStore.FILE_NAME));
+        ObjectMapper mapper = new ObjectMapper();
+        DeadLetterStore.DeadLetter invalid = mapper.readValue(lines.get(0), DeadLetterStore.DeadLetter.class);
+        assertThat(invalid.source()).isEqualTo("events.csv");
+        assertThat(invalid.offset()).isEqualTo(1);
+        assertThat(invalid.format()).isEqualTo("csv");
+        assertThat(invalid.reason()).contains("yesterday");
+        assertThat(invalid.event()).isEqualTo("payment_processed,USER1,ORDER1,BILL1,yesterday");
+        DeadLetterStore.DeadLetter unknown = mapper.readValue(lines.get(1), DeadLetterStore.DeadLetter.class);
+        assertThat(unknown.offset()).isEqualTo(2);
+        assertThat(unknown.reason()).isEqualTo("Unknown event type: refund");
+        assertThat(store.pending()).isEqualTo(2);
+    }
+
+    @Test
+    void replaysOnlyTheDeadLetteredEventsAsInputFiles() throws IOException {
+        Path input = directory.resolve("input");
+        DeadLetterStore store = new DeadLetterStore(directory.resolve("dead-letter").toString(), input.toString());
+        store.write("a.csv", 4, "csv", "bad date", "signup,USER1,John_Doe,john.doe@camelshop.com,tomorrow");
+        store.write("b.json", 0, "json", "bad date", "{\"eventType\":\"signup\"}");
+        store.write("c.csv", 9, "csv", "bad date", "signup,USER2,Jane_Doe,jane.doe@camelshop.com,tomorrow");
+
+        Map<String, Integer> replayed = store.replay();
+
+        assertThat(replayed).containsExactly(Map.entry("csv", 2), Map.entry("json", 1));
+        assertThat(store.pending()).isZero();
+        List<Path> files;
+        try (var entries = Files.list(input)) {
+            files = entries.sorted().toList();
+        }
+        assertThat(files).extracting(file -> file.getFileName().toString())
+                .allMatch(name -> name.startsWith("replay-"))
+                .hasSize(2);
+        assertThat(Files.readString(files.get(0))).isEqualTo("""
+                signup,USER1,John_Doe,john.doe@camelshop.com,tomorrow
+                signup,USER2,Jane_Doe,jane.doe@camelshop.com,tomorrow
+                """);
+        assertThat(new ObjectMapper().readTree(files.get(1).toFile()).toString()).isEqualTo("[{\"eventType\":\"signup\"}]");
+    }
+
+    private static final class CapturingDispatcher extends EventDispatcher {
+        private final List<ShopEvent> events;
+
+        private CapturingDispatcher(EventMetrics metrics, List<ShopEvent> events) {
+            super(new IdempotencyStore(false, "jdbc:sqlite::memory:", 1, 0.5, 1), metrics,
+                    new EventAuditLogger(false, 0, false, 1),
+                    new ColumnarEventWriter(false, "target", Duration.ofHours(1), 1),
+                    new EventPublisher(null, metrics, false, "none", 1, 1, Duration.ZERO, 1));
+            this.events = events;
+        }
+
+        @Override
+        public void dispatch(ShopEvent event, FileCheckpointer.Cursor file) {
+            events.add(event);
+        }
+    }
+}
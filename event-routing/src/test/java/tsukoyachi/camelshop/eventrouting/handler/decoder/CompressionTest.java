@@ -0,0 +1,78 @@
+package tsukoyachi.camelshop.eventrouting.handler.decoder;
+
+import com.github.luben.zstd.ZstdOutputStream;
+import net.jpountz.lz4.LZ4FrameOutputStream;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CompressionTest {
+    private static final String CONTENT = "\uFEFF" + "signup,USER1,Zoë,zoe@camelshop.com,2025-09-03T19:00:00Z\n".repeat(1_000);
+
+    @Test
+    void readsGzipContent() throws IOException {
+        assertRoundTrip(Compression.GZIP, "events.csv.gz", compress(GZIPOutputStream::new));
+    }
+
+    @Test
+    void readsZstdContent() throws IOException {
+        assertRoundTrip(Compression.ZSTD, "events.csv.zst", compress(ZstdOutputStream::new));
+    }
+
+    @Test
+    void readsLz4Content() throws IOException {
+        assertRoundTrip(Compression.LZ4, "events.csv.lz4", compress(LZ4FrameOutputStream::new));
+    }
+
+    @Test
+    void namesTheContentAfterTheFileWithoutItsExtension() {
+        assertThat(Compression.GZIP.innerName("events.csv.gz")).isEqualTo("events.csv");
+        assertThat(Compression.GZIP.innerName("EVENTS.JSON.GZIP")).isEqualTo("EVENTS.JSON");
+        assertThat(Compression.ZSTD.innerName("events.xml.zstd")).isEqualTo("events.xml");
+        // A compressed file named after another format keeps its name
+        assertThat(Compression.LZ4.innerName("events.csv.gz")).isEqualTo("events.csv.gz");
+        assertThat(Compression.NONE.innerName("events.csv")).isEqualTo("events.csv");
+    }
+
+    @Test
+    void leavesPlainContentAlone() {
+        assertThat(Compression.detect(CONTENT.getBytes(StandardCharsets.UTF_8))).isEqualTo(Compression.NONE);
+        assertThat(Compression.detect(new byte[]{0x1F})).isEqualTo(Compression.NONE);
+    }
+
+    /**
+     * The compression is found from the magic number, the sample and the stream hold the decompressed
+     * content, byte order mark removed.
+     */
+    private static void assertRoundTrip(Compression compression, String fileName, byte[] compressed) throws IOException {
+        assertThat(Compression.detect(compressed)).isEqualTo(compression);
+
+        ContentSniffer.Sniffed sniffed = ContentSniffer.sniff(fileName, new ByteArrayInputStream(compressed));
+        try (InputStream input = sniffed.input()) {
+            assertThat(sniffed.compression()).isEqualTo(compression);
+            assertThat(sniffed.sample().fileName()).isEqualTo("events.csv");
+            assertThat(new String(sniffed.sample().head(), StandardCharsets.UTF_8)).startsWith("signup,USER1,Zo");
+            assertThat(new String(input.readAllBytes(), StandardCharsets.UTF_8)).isEqualTo(CONTENT.substring(1));
+        }
+    }
+
+    private static byte[] compress(Compressor compressor) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream output = compressor.wrap(bytes)) {
+            output.write(CONTENT.getBytes(StandardCharsets.UTF_8));
+        }
+        return bytes.toByteArray();
+    }
+
+    private interface Compressor {
+        OutputStream wrap(OutputStream output) throws IOException;
+    }
+}
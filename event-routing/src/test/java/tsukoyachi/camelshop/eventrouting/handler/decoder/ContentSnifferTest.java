@@ -0,0 +1,64 @@
+package tsukoyachi.camelshop.eventrouting.handler.decoder;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ContentSnifferTest {
+
+    @Test
+    void skipsTheUtf8ByteOrderMark() throws IOException {
+        ContentSniffer.Sniffed sniffed = sniff("events.csv", bytes("\uFEFFsignup,USER1"));
+
+        assertThat(sniffed.sample().head()).isEqualTo(bytes("signup,USER1"));
+        assertThat(sniffed.input().readAllBytes()).isEqualTo(bytes("signup,USER1"));
+        assertThat(sniffed.compression()).isEqualTo(Compression.NONE);
+    }
+
+    @Test
+    void rejectsUtf16Content() {
+        byte[] bigEndian = {(byte) 0xFE, (byte) 0xFF, 0, '['};
+        byte[] littleEndian = {(byte) 0xFF, (byte) 0xFE, '[', 0};
+
+        assertThatThrownBy(() -> sniff("events.json", bigEndian)).hasMessage("File events.json must be UTF-8 encoded");
+        assertThatThrownBy(() -> sniff("events.json", littleEndian)).hasMessage("File events.json must be UTF-8 encoded");
+    }
+
+    @Test
+    void tellsBlankContentApart() throws IOException {
+        assertThat(sniff("events.csv", new byte[0]).sample().isBlank()).isTrue();
+        assertThat(sniff("events.csv", bytes("\uFEFF \r\n\t\n")).sample().isBlank()).isTrue();
+        assertThat(sniff("events.csv", bytes("\n\n<events/>")).sample().firstSignificantByte()).isEqualTo('<');
+        // A longer file starting with whitespace is not blank, the rest of it was not looked at
+        assertThat(sniff("events.csv", bytes(" ".repeat(ContentSniffer.SAMPLE_SIZE + 1))).sample().isBlank()).isFalse();
+    }
+
+    @Test
+    void tellsBinaryContentApart() throws IOException {
+        assertThat(sniff("events.csv", new byte[]{'P', 'K', 3, 4, 0, 0}).sample().isText()).isFalse();
+        assertThat(sniff("events.csv", bytes("signup,Zoë")).sample().isText()).isTrue();
+    }
+
+    @Test
+    void keepsTheStreamPastTheSample() throws IOException {
+        String content = "signup,USER1\n".repeat(100);
+        ContentSniffer.Sniffed sniffed = sniff("events.csv", bytes(content));
+
+        assertThat(sniffed.sample().head()).hasSize(ContentSniffer.SAMPLE_SIZE);
+        assertThat(sniffed.sample().complete()).isFalse();
+        assertThat(new String(sniffed.input().readAllBytes(), StandardCharsets.UTF_8)).isEqualTo(content);
+    }
+
+    private static ContentSniffer.Sniffed sniff(String fileName, byte[] content) throws IOException {
+        return ContentSniffer.sniff(fileName, new ByteArrayInputStream(content));
+    }
+
+    private static byte[] bytes(String content) {
+        return content.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,153 @@
+package tsukoyachi.camelshop.eventrouting.handler.decoder;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.camel.Exchange;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.support.DefaultExchange;
+import org.junit.jupiter.api.Test;
+import tsukoyachi.camelshop.eventrouting.metrics.EventMetrics;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class EventDecoderRegistryTest {
+    private final List<String> decoded = new ArrayList<>();
+    // Same decoders and order as the application, with the handlers replaced by a recorder
+    private final EventDecoderRegistry registry = new EventDecoderRegistry(List.of(
+            new Recording(new JsonEventDecoder(null)),
+            new Recording(new XmlEventDecoder(null, null)),
+            new Recording(new CsvEventDecoder(null))), new EventMetrics(new SimpleMeterRegistry()));
+
+    @Test
+    void sniffsTheFormatFromTheContent() {
+        assertThat(decode("events.txt", bytes("\n  [{\"eventType\": \"signup\"}]"))).isEqualTo("json");
+        assertThat(decode("events.txt", bytes("{\"eventType\": \"signup\"}"))).isEqualTo("json");
+        assertThat(decode("events.json", bytes("<?xml version=\"1.0\"?><events/>"))).isEqualTo("xml");
+        assertThat(decode("events.xml", bytes("<!-- exported --><events/>"))).isEqualTo("xml");
+        assertThat(decode("events.json", bytes("\uFEFFsignup,USER1,Zoë,zoe@camelshop.com,2025-09-03T19:00:00Z"))).isEqualTo("csv");
+
+        assertThat(decoded).containsExactly("json:\n  [{\"eventType\": \"signup\"}]", "json:{\"eventType\": \"signup\"}",
+                "xml:<?xml version=\"1.0\"?><events/>", "xml:<!-- exported --><events/>",
+                "csv:signup,USER1,Zoë,zoe@camelshop.com,2025-09-03T19:00:00Z");
+    }
+
+    @Test
+    void picksTheDecoderOfACompressedFileFromItsInnerExtension() {
+        // Not an XML document, the extension of the content wins over sniffing
+        assertThat(decode("events.csv.gz", gzip("<note>,USER1,Zoë,zoe@camelshop.com,2025-09-03T19:00:00Z"))).isEqualTo("csv");
+        assertThat(decode("events.gz", gzip("<events/>"))).isEqualTo("xml");
+
+        assertThat(decoded).containsExactly("csv:<note>,USER1,Zoë,zoe@camelshop.com,2025-09-03T19:00:00Z", "xml:<events/>");
+    }
+
+    @Test
+    void skipsBlankFiles() {
+        assertThat(decode("events.csv", bytes(" \n\n"))).isEqualTo("empty");
+        assertThat(decode("events.csv.gz", gzip("\uFEFF\n"))).isEqualTo("empty");
+        assertThat(decoded).isEmpty();
+    }
+
+    @Test
+    void rejectsBinaryFiles() {
+        assertThatThrownBy(() -> decode("events.csv", new byte[]{'P', 'K', 3, 4, 0, 0, 0}))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Unknown file type.");
+    }
+
+    @Test
+    void readsCsvFromItsNameOrItsFirstEventType() {
+        assertThat(decode("export.csv", bytes("id,name\n1,Zoë"))).isEqualTo("csv");
+        assertThat(decode("events.txt", bytes("\n\"order_created\",USER1,ORDER1"))).isEqualTo("csv");
+        assertThat(decode("events.gz", gzip("payment_processed,ORDER1,USER1,BILL1"))).isEqualTo("csv");
+    }
+
+    @Test
+    void rejectsOtherTextFiles() {
+        assertThatThrownBy(() -> decode("README.txt", bytes("# CamelShop\nInput files go here")))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Unknown file type.");
+        assertThatThrownBy(() -> decode("events.json", bytes("junk[{\"eventType\": \"signup\"}]")))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Unknown file type.");
+        assertThat(decoded).isEmpty();
+    }
+
+    @Test
+    void putsTheOriginalBodyBack() {
+        Exchange exchange = exchange("events.csv.gz", gzip("signup,USER1"));
+        Object body = exchange.getIn().getBody();
+
+        registry.decode(exchange);
+
+        assertThat(exchange.getIn().getBody()).isSameAs(body);
+        assertThat(exchange.getIn().getHeader(EventDecoderRegistry.COMPRESSED_HEADER, Boolean.class)).isTrue();
+    }
+
+    private String decode(String fileName, byte[] content) {
+        Exchange exchange = exchange(fileName, content);
+        registry.decode(exchange);
+        return exchange.getIn().getHeader(EventDecoderRegistry.FORMAT_HEADER, String.class);
+    }
+
+    private static Exchange exchange(String fileName, byte[] content) {
+        Exchange exchange = new DefaultExchange(new DefaultCamelContext());
+        exchange.getIn().setHeader(Exchange.FILE_NAME, fileName);
+        exchange.getIn().setBody(new ByteArrayInputStream(content));
+        return exchange;
+    }
+
+    private static byte[] bytes(String content) {
+        return content.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] gzip(String content) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream output = new GZIPOutputStream(bytes)) {
+            output.write(bytes(content));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Accepts what the real decoder accepts, records the content it is given instead of reading events.
+     */
+    private final class Recording implements EventDecoder {
+        private final EventDecoder decoder;
+
+        private Recording(EventDecoder decoder) {
+            this.decoder = decoder;
+        }
+
+        @Override
+        public String format() {
+            return decoder.format();
+        }
+
+        @Override
+        public boolean accepts(ContentSample sample) {
+            return decoder.accepts(sample);
+        }
+
+        @Override
+        public void process(Exchange exchange) {
+            try {
+                InputStream input = exchange.getIn().getBody(InputStream.class);
+                decoded.add(format() + ":" + new String(input.readAllBytes(), StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
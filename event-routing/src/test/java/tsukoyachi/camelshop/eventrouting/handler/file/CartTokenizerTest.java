@@ -0,0 +1,35 @@
+package tsukoyachi.camelshop.eventrouting.handler.file;
+
+import org.junit.jupiter.api.Test;
+import tsukoyachi.camelshop.common.models.Cart;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CartTokenizerTest {
+
+    @Test
+    void parsesLinesInOrder() {
+        Cart cart = CartTokenizer.parse("ITEM2:3| ITEM1 : 1 |ITEM7:12");
+
+        assertThat(cart.itemIds()).containsExactly("ITEM2", "ITEM1", "ITEM7");
+        assertThat(cart.quantityOf("ITEM1")).isEqualTo(1);
+        assertThat(cart).isEqualTo(Cart.of(Map.of("ITEM1", 1, "ITEM2", 3, "ITEM7", 12)));
+    }
+
+    @Test
+    void ignoresMalformedLinesAndKeepsTheLastQuantity() {
+        Cart cart = CartTokenizer.parse("ITEM1:1||ITEM2|ITEM3:1:2|ITEM4:|ITEM1:5");
+
+        assertThat(cart.toMap()).containsExactly(Map.entry("ITEM1", 5));
+    }
+
+    @Test
+    void rejectsInvalidQuantities() {
+        assertThatThrownBy(() -> CartTokenizer.parse("ITEM1:two"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("ITEM1:two");
+    }
+}
@@ -0,0 +1,163 @@
+package tsukoyachi.camelshop.eventrouting.handler.file;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.camel.Exchange;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.support.DefaultExchange;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+import tsukoyachi.camelshop.common.models.ShopEvent;
+import tsukoyachi.camelshop.common.models.SignupEvent;
+import tsukoyachi.camelshop.eventrouting.audit.EventAuditLogger;
+import tsukoyachi.camelshop.eventrouting.checkpoint.FileCheckpointer;
+import tsukoyachi.camelshop.eventrouting.deadletter.DeadLetterStore;
+import tsukoyachi.camelshop.eventrouting.idempotency.FileDigester;
+import tsukoyachi.camelshop.eventrouting.idempotency.IdempotencyStore;
+import tsukoyachi.camelshop.eventrouting.metrics.EventMetrics;
+import tsukoyachi.camelshop.eventrouting.output.ColumnarEventWriter;
+import tsukoyachi.camelshop.eventrouting.processing.EventDispatcher;
+import tsukoyachi.camelshop.eventrouting.processing.KeyedLaneExecutor;
+import tsukoyachi.camelshop.eventrouting.publish.EventPublisher;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CsvFileHandlerTest {
+    @TempDir
+    Path directory;
+
+    private final EventMetrics metrics = new EventMetrics(new SimpleMeterRegistry());
+    private final List<SignupEvent> dispatched = new ArrayList<>();
+    private final List<Long> bytesReadAtDispatch = new ArrayList<>();
+    private final MappedCsvReader mappedCsvReader =
+            new MappedCsvReader(true, DataSize.ofBytes(0), DataSize.ofKilobytes(8), 2);
+
+    private CountingInputStream input;
+
+    @AfterEach
+    void shutdown() {
+        mappedCsvReader.shutdown();
+    }
+
+    @Test
+    void dispatchesEachRowBeforeReadingTheRestOfTheFile() {
+        String csv = IntStream.range(0, 5_000).mapToObj(CsvFileHandlerTest::signup).collect(Collectors.joining());
+
+        handler().processStream(exchange(csv));
+
+        assertThat(dispatched).extracting(SignupEvent::userId)
+                .containsExactlyElementsOf(IntStream.range(0, 5_000).mapToObj(i -> "USER" + i).toList());
+        assertThat(bytesReadAtDispatch.getFirst()).isLessThan(csv.length() / 10);
+        assertThat(Files.exists(directory.resolve("dead-letter"))).isFalse();
+    }
+
+    @Test
+    void skipsEmptyDocuments() {
+        handler().processStream(exchange(""));
+        handler().processStream(exchange("\n\r\n"));
+
+        assertThat(dispatched).isEmpty();
+        assertThat(Files.exists(directory.resolve("dead-letter"))).isFalse();
+    }
+
+    @Test
+    void dispatchesTheRowsBeforeAMalformedTrailingOne() {
+        String csv = signup(0) + signup(1) + "signup,USER2,\"Jo,user2@camelshop.com,2025-09-03T19:00:00Z\n";
+
+        assertThatThrownBy(() -> handler().processStream(exchange(csv)))
+                .isInstanceOf(UncheckedIOException.class);
+        assertThat(dispatched).extracting(SignupEvent::userId).containsExactly("USER0", "USER1");
+    }
+
+    @Test
+    void streamsTheRestOfAMappedFileFromAQuotedFieldSpanningLines() throws IOException {
+        Path file = directory.resolve("events.csv");
+        Files.writeString(file, IntStream.range(0, 2_000)
+                .mapToObj(i -> i == 1_200
+                        ? "signup,USER%d,\"Jo\nDoe\",user%d@camelshop.com,2025-09-03T19:00:00Z\n".formatted(i, i)
+                        : "signup,USER%d,Jo_%d,user%d@camelshop.com,2025-09-03T19:00:00Z\n".formatted(i, i, i))
+                .reduce("\uFEFF", String::concat), StandardCharsets.UTF_8);
+
+        handler().processMapped(file, exchange(""));
+
+        assertThat(dispatched).extracting(SignupEvent::userId)
+                .containsExactlyElementsOf(IntStream.range(0, 2_000).mapToObj(i -> "USER" + i).toList());
+        assertThat(dispatched.get(1_200).username()).isEqualTo("Jo\nDoe");
+        assertThat(Files.exists(directory.resolve("dead-letter"))).isFalse();
+    }
+
+    private static String signup(int i) {
+        return "signup,USER%d,Jo_%d,user%d@camelshop.com,2025-09-03T19:00:00Z\n".formatted(i, i, i);
+    }
+
+    private CsvFileHandler handler() {
+        return new CsvFileHandler(new KeyedLaneExecutor(false, 0, 1, 1, false), new RecordingDispatcher(), metrics,
+                mappedCsvReader, deadLetterStore(), checkpointer());
+    }
+
+    private Exchange exchange(String content) {
+        input = new CountingInputStream(content.getBytes(StandardCharsets.UTF_8));
+        Exchange exchange = new DefaultExchange(new DefaultCamelContext());
+        exchange.getIn().setHeader(Exchange.FILE_NAME, "events.csv");
+        exchange.getIn().setHeader(FileDigester.DIGEST_HEADER, "events:%d:00000000".formatted(content.length()));
+        exchange.getIn().setBody(input);
+        return exchange;
+    }
+
+    private FileCheckpointer checkpointer() {
+        // A checkpoint at every event boundary
+        return new FileCheckpointer(
+                new IdempotencyStore(true, "jdbc:sqlite:" + directory.resolve("idempotency.db"), 1_000, 0.01, 10),
+                new EventPublisher(null, metrics, false, "none", 1, 1, Duration.ZERO, 1),
+                new ColumnarEventWriter(false, "target", Duration.ofHours(1), 1),
+                deadLetterStore(), true, Duration.ZERO);
+    }
+
+    private DeadLetterStore deadLetterStore() {
+        return new DeadLetterStore(directory.resolve("dead-letter").toString(), directory.resolve("input").toString());
+    }
+
+    private static final class CountingInputStream extends ByteArrayInputStream {
+        private long count;
+
+        private CountingInputStream(byte[] content) {
+            super(content);
+        }
+
+        @Override
+        public synchronized int read(byte[] buffer, int offset, int length) {
+            int read = super.read(buffer, offset, length);
+            count += Math.max(read, 0);
+            return read;
+        }
+    }
+
+    private final class RecordingDispatcher extends EventDispatcher {
+        private RecordingDispatcher() {
+            super(new IdempotencyStore(false, "jdbc:sqlite::memory:", 1, 0.5, 1), metrics,
+                    new EventAuditLogger(false, 0, false, 1),
+                    new ColumnarEventWriter(false, "target", Duration.ofHours(1), 1),
+                    new EventPublisher(null, metrics, false, "none", 1, 1, Duration.ZERO, 1));
+        }
+
+        @Override
+        public void dispatch(ShopEvent event, FileCheckpointer.Cursor file) {
+            bytesReadAtDispatch.add(input.count);
+            dispatched.add((SignupEvent) event);
+        }
+    }
+}
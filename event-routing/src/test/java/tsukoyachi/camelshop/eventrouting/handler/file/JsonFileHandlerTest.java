@@ -0,0 +1,153 @@
+package tsukoyachi.camelshop.eventrouting.handler.file;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.camel.Exchange;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.support.DefaultExchange;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import tsukoyachi.camelshop.common.models.ShopEvent;
+import tsukoyachi.camelshop.common.models.SignupEvent;
+import tsukoyachi.camelshop.eventrouting.audit.EventAuditLogger;
+import tsukoyachi.camelshop.eventrouting.checkpoint.FileCheckpointer;
+import tsukoyachi.camelshop.eventrouting.deadletter.DeadLetterStore;
+import tsukoyachi.camelshop.eventrouting.idempotency.FileDigester;
+import tsukoyachi.camelshop.eventrouting.idempotency.IdempotencyStore;
+import tsukoyachi.camelshop.eventrouting.metrics.EventMetrics;
+import tsukoyachi.camelshop.eventrouting.output.ColumnarEventWriter;
+import tsukoyachi.camelshop.eventrouting.processing.EventDispatcher;
+import tsukoyachi.camelshop.eventrouting.processing.KeyedLaneExecutor;
+import tsukoyachi.camelshop.eventrouting.publish.EventPublisher;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class JsonFileHandlerTest {
+    @TempDir
+    Path directory;
+
+    private final EventMetrics metrics = new EventMetrics(new SimpleMeterRegistry());
+    private final List<SignupEvent> dispatched = new ArrayList<>();
+    private final List<Long> bytesReadAtDispatch = new ArrayList<>();
+    private DeadLetterStore deadLetterStore;
+    private CountingInputStream input;
+
+    @Test
+    void dispatchesEachElementBeforeReadingTheRestOfTheFile() {
+        String json = IntStream.range(0, 5_000).mapToObj(JsonFileHandlerTest::signup)
+                .collect(Collectors.joining(",", "[", "]"));
+
+        handler().processStream(exchange(json));
+
+        assertThat(dispatched).extracting(SignupEvent::userId)
+                .containsExactlyElementsOf(IntStream.range(0, 5_000).mapToObj(i -> "USER" + i).toList());
+        assertThat(bytesReadAtDispatch.getFirst()).isLessThan(json.length() / 10);
+        assertThat(Files.exists(directory.resolve("dead-letter"))).isFalse();
+    }
+
+    @Test
+    void skipsEmptyDocuments() {
+        handler().processStream(exchange(""));
+        handler().processStream(exchange("  \n"));
+        handler().processStream(exchange("[]"));
+
+        assertThat(dispatched).isEmpty();
+        assertThat(Files.exists(directory.resolve("dead-letter"))).isFalse();
+    }
+
+    @Test
+    void dispatchesTheElementsBeforeAMalformedTrailingOne() {
+        String json = "[" + signup(0) + "," + signup(1) + ",{\"eventType\":\"signup\",\"userId\":\"USER2\",";
+
+        assertThatThrownBy(() -> handler().processStream(exchange(json)))
+                .isInstanceOf(UncheckedIOException.class)
+                .hasMessage("Unable to read JSON stream");
+        assertThat(dispatched).extracting(SignupEvent::userId).containsExactly("USER0", "USER1");
+    }
+
+    @Test
+    void deadLettersAnInvalidElementAndKeepsReading() throws IOException {
+        String json = "[" + signup(0) + ",{\"eventType\":\"signup\",\"userId\":\"USER1\"}," + signup(2) + "]";
+
+        handler().processStream(exchange(json));
+        deadLetterStore.flush();
+
+        assertThat(dispatched).extracting(SignupEvent::userId).containsExactly("USER0", "USER2");
+        assertThat(Files.readString(directory.resolve("dead-letter").resolve("dead-letter.jsonl")))
+                .contains("username must not be null or empty");
+    }
+
+    private static String signup(int i) {
+        return "{\"eventType\":\"signup\",\"userId\":\"USER%d\",\"username\":\"jo_%d\",\"email\":\"user%d@camelshop.com\","
+                .formatted(i, i, i) + "\"createdAt\":\"2025-09-03T19:00:00Z\"}";
+    }
+
+    private JsonFileHandler handler() {
+        deadLetterStore = deadLetterStore();
+        return new JsonFileHandler(new KeyedLaneExecutor(false, 0, 1, 1, false), new RecordingDispatcher(), metrics,
+                deadLetterStore, checkpointer());
+    }
+
+    private Exchange exchange(String content) {
+        input = new CountingInputStream(content.getBytes(StandardCharsets.UTF_8));
+        Exchange exchange = new DefaultExchange(new DefaultCamelContext());
+        exchange.getIn().setHeader(Exchange.FILE_NAME, "events.json");
+        exchange.getIn().setHeader(FileDigester.DIGEST_HEADER, "events:%d:00000000".formatted(content.length()));
+        exchange.getIn().setBody(input);
+        return exchange;
+    }
+
+    private FileCheckpointer checkpointer() {
+        return new FileCheckpointer(
+                new IdempotencyStore(true, "jdbc:sqlite:" + directory.resolve("idempotency.db"), 1_000, 0.01, 10),
+                new EventPublisher(null, metrics, false, "none", 1, 1, Duration.ZERO, 1),
+                new ColumnarEventWriter(false, "target", Duration.ofHours(1), 1),
+                deadLetterStore(), true, Duration.ZERO);
+    }
+
+    private DeadLetterStore deadLetterStore() {
+        return new DeadLetterStore(directory.resolve("dead-letter").toString(), directory.resolve("input").toString());
+    }
+
+    private static final class CountingInputStream extends ByteArrayInputStream {
+        private long count;
+
+        private CountingInputStream(byte[] content) {
+            super(content);
+        }
+
+        @Override
+        public synchronized int read(byte[] buffer, int offset, int length) {
+            int read = super.read(buffer, offset, length);
+            count += Math.max(read, 0);
+            return read;
+        }
+    }
+
+    private final class RecordingDispatcher extends EventDispatcher {
+        private RecordingDispatcher() {
+            super(new IdempotencyStore(false, "jdbc:sqlite::memory:", 1, 0.5, 1), metrics,
+                    new EventAuditLogger(false, 0, false, 1),
+                    new ColumnarEventWriter(false, "target", Duration.ofHours(1), 1),
+                    new EventPublisher(null, metrics, false, "none", 1, 1, Duration.ZERO, 1));
+        }
+
+        @Override
+        public void dispatch(ShopEvent event, FileCheckpointer.Cursor file) {
+            bytesReadAtDispatch.add(input.count);
+            dispatched.add((SignupEvent) event);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package tsukoyachi.camelshop.eventrouting.handler.file;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MappedCsvReaderTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void readsTheSameRowsAsCommonsCsvAcrossChunks() throws IOException {
+        StringBuilder csv = new StringBuilder("\uFEFF");
+        for (int i = 0; i < 2_000; i++) {
+            csv.append("order_created,USER").append(i).append(",ORDER").append(i).append(",\"ITEM1:2|ITEM").append(i)
+                    .append(":1\",2025-09-03T10:15:00Z").append(i % 3 == 0 ? "\r\n" : "\n");
+            if (i % 100 == 0) {
+                csv.append("\n");
+                csv.append("signup,USER").append(i).append(",\"Doe, \"\"Jo\"\"\",jo@camelshop.com,2025-09-03T19:00:00Z\n");
+            }
+        }
+        csv.append("payment_processed,USER1,ORDER1,BILL1,2025-09-03T10:15:30Z");
+        Path file = write(csv.toString());
+
+        MappedCsvReader reader = new MappedCsvReader(true, DataSize.ofBytes(0), DataSize.ofKilobytes(8), 4);
+        List<List<String>> rows = new ArrayList<>();
+        try {
+            long count = reader.read(file, row -> rows.add(List.copyOf(row)));
+            assertThat(count).isEqualTo(rows.size());
+        } finally {
+            reader.shutdown();
+        }
+
+        List<List<String>> expected = new ArrayList<>();
+        try (CSVParser parser = CSVParser.parse(new StringReader(csv.substring(1)), CSVFormat.DEFAULT)) {
+            parser.forEach(record -> expected.add(record.toList()));
+        }
+        assertThat(rows).hasSize(2_021).isEqualTo(expected);
+        assertThat(rows.get(1).get(2)).isEqualTo("Doe, \"Jo\"");
+    }
+
+    @Test
+    void rejectsQuotedFieldsSpanningLines() throws IOException {
+        Path file = write("signup,USER1,\"John\nDoe\",john@camelshop.com,2025-09-03T19:00:00Z\n");
+
+        MappedCsvReader reader = new MappedCsvReader(true, DataSize.ofBytes(0), DataSize.ofKilobytes(8), 1);
+        try {
+            assertThatThrownBy(() -> reader.read(file, row -> {
+            })).isInstanceOf(MappedCsvReader.MultiLineRecordException.class);
+        } finally {
+            reader.shutdown();
+        }
+    }
+
+    private Path write(String content) throws IOException {
+        return Files.writeString(directory.resolve("events.csv"), content, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,157 @@
+package tsukoyachi.camelshop.eventrouting.handler.file;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.camel.Exchange;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.support.DefaultExchange;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import tsukoyachi.camelshop.common.models.ShopEvent;
+import tsukoyachi.camelshop.common.models.SignupEvent;
+import tsukoyachi.camelshop.eventrouting.audit.EventAuditLogger;
+import tsukoyachi.camelshop.eventrouting.checkpoint.FileCheckpointer;
+import tsukoyachi.camelshop.eventrouting.deadletter.DeadLetterStore;
+import tsukoyachi.camelshop.eventrouting.idempotency.FileDigester;
+import tsukoyachi.camelshop.eventrouting.idempotency.IdempotencyStore;
+import tsukoyachi.camelshop.eventrouting.metrics.EventMetrics;
+import tsukoyachi.camelshop.eventrouting.output.ColumnarEventWriter;
+import tsukoyachi.camelshop.eventrouting.processing.EventDispatcher;
+import tsukoyachi.camelshop.eventrouting.processing.KeyedLaneExecutor;
+import tsukoyachi.camelshop.eventrouting.publish.EventPublisher;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class StaxXmlFileHandlerTest {
+    @TempDir
+    Path directory;
+
+    private final EventMetrics metrics = new EventMetrics(new SimpleMeterRegistry());
+    private final List<SignupEvent> dispatched = new ArrayList<>();
+    private final List<Long> bytesReadAtDispatch = new ArrayList<>();
+    private CountingInputStream input;
+
+    @Test
+    void dispatchesEachEventBeforeReadingTheRestOfTheFile() {
+        String xml = IntStream.range(0, 5_000).mapToObj(StaxXmlFileHandlerTest::signup)
+                .collect(Collectors.joining("\n", "<events>\n", "\n</events>"));
+
+        handler().process(exchange(xml));
+
+        assertThat(dispatched).extracting(SignupEvent::userId)
+                .containsExactlyElementsOf(IntStream.range(0, 5_000).mapToObj(i -> "USER" + i).toList());
+        assertThat(bytesReadAtDispatch.getFirst()).isLessThan(xml.length() / 10);
+        assertThat(Files.exists(directory.resolve("dead-letter"))).isFalse();
+    }
+
+    @Test
+    void skipsEmptyDocuments() {
+        handler().process(exchange(""));
+        handler().process(exchange("  \n"));
+        handler().process(exchange("<?xml version=\"1.0\"?><events/>"));
+
+        assertThat(dispatched).isEmpty();
+        assertThat(Files.exists(directory.resolve("dead-letter"))).isFalse();
+    }
+
+    @Test
+    void dispatchesTheEventsBeforeAMalformedTrailingOne() {
+        String xml = "<events>" + signup(0) + signup(1) + "<event><eventType>signup</eventType><userId>USER2";
+
+        assertThatThrownBy(() -> handler().process(exchange(xml)))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageStartingWith("Invalid XML content");
+        assertThat(dispatched).extracting(SignupEvent::userId).containsExactly("USER0", "USER1");
+    }
+
+    @Test
+    void rejectsExternalEntities() throws IOException {
+        Path secret = Files.writeString(directory.resolve("secret.txt"), "s3cr3t");
+        String xml = """
+                <?xml version="1.0"?>
+                <!DOCTYPE events [ <!ENTITY secret SYSTEM "%s"> ]>
+                <events>
+                  <event><eventType>signup</eventType><userId>USER0</userId><username>&secret;</username>
+                    <email>user0@camelshop.com</email><createdAt>2025-09-03T19:00:00Z</createdAt></event>
+                </events>
+                """.formatted(secret.toUri());
+
+        assertThatThrownBy(() -> handler().process(exchange(xml)))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageStartingWith("Invalid XML content");
+        assertThat(dispatched).isEmpty();
+    }
+
+    private static String signup(int i) {
+        return ("<event><eventType>signup</eventType><userId>USER%d</userId><username>jo_%d</username>"
+                + "<email>user%d@camelshop.com</email><createdAt>2025-09-03T19:00:00Z</createdAt></event>")
+                .formatted(i, i, i);
+    }
+
+    private StaxXmlFileHandler handler() {
+        return new StaxXmlFileHandler(new KeyedLaneExecutor(false, 0, 1, 1, false), new RecordingDispatcher(), metrics,
+                deadLetterStore(), checkpointer());
+    }
+
+    private Exchange exchange(String content) {
+        input = new CountingInputStream(content.getBytes(StandardCharsets.UTF_8));
+        Exchange exchange = new DefaultExchange(new DefaultCamelContext());
+        exchange.getIn().setHeader(Exchange.FILE_NAME, "events.xml");
+        exchange.getIn().setHeader(FileDigester.DIGEST_HEADER, "events:%d:00000000".formatted(content.length()));
+        exchange.getIn().setBody(input);
+        return exchange;
+    }
+
+    private FileCheckpointer checkpointer() {
+        return new FileCheckpointer(
+                new IdempotencyStore(true, "jdbc:sqlite:" + directory.resolve("idempotency.db"), 1_000, 0.01, 10),
+                new EventPublisher(null, metrics, false, "none", 1, 1, Duration.ZERO, 1),
+                new ColumnarEventWriter(false, "target", Duration.ofHours(1), 1),
+                deadLetterStore(), true, Duration.ZERO);
+    }
+
+    private DeadLetterStore deadLetterStore() {
+        return new DeadLetterStore(directory.resolve("dead-letter").toString(), directory.resolve("input").toString());
+    }
+
+    private static final class CountingInputStream extends ByteArrayInputStream {
+        private long count;
+
+        private CountingInputStream(byte[] content) {
+            super(content);
+        }
+
+        @Override
+        public synchronized int read(byte[] buffer, int offset, int length) {
+            int read = super.read(buffer, offset, length);
+            count += Math.max(read, 0);
+            return read;
+        }
+    }
+
+    private final class RecordingDispatcher extends EventDispatcher {
+        private RecordingDispatcher() {
+            super(new IdempotencyStore(false, "jdbc:sqlite::memory:", 1, 0.5, 1), metrics,
+                    new EventAuditLogger(false, 0, false, 1),
+                    new ColumnarEventWriter(false, "target", Duration.ofHours(1), 1),
+                    new EventPublisher(null, metrics, false, "none", 1, 1, Duration.ZERO, 1));
+        }
+
+        @Override
+        public void dispatch(ShopEvent event, FileCheckpointer.Cursor file) {
+            bytesReadAtDispatch.add(input.count);
+            dispatched.add((SignupEvent) event);
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package tsukoyachi.camelshop.eventrouting.idempotency;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IdempotencyStoreTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void remembersKeysAcrossRestarts() {
+        String url = "jdbc:sqlite:" + directory.resolve("idempotency.db");
+
+        IdempotencyStore store = new IdempotencyStore(true, url, 1_000, 0.01, 2);
+        assertThat(store.markIfAbsent("event", "signup:U1")).isTrue();
+        assertThat(store.markIfAbsent("event", "signup:U1")).isFalse();
+        assertThat(store.markIfAbsent("file", "signup:U1")).isTrue();
+        assertThat(store.markIfAbsent("event", "order_created:O1")).isTrue();
+        store.close();
+
+        IdempotencyStore reopened = new IdempotencyStore(true, url, 1_000, 0.01, 2);
+        assertThat(reopened.contains("event", "signup:U1")).isTrue();
+        assertThat(reopened.contains("event", "order_created:O1")).isTrue();
+        assertThat(reopened.contains("event", "order_created:O2")).isFalse();
+
+        reopened.remove("event", "signup:U1");
+        assertThat(reopened.markIfAbsent("event", "signup:U1")).isTrue();
+        reopened.close();
+    }
+
+    @Test
+    void clearsOneNamespace() {
+        IdempotencyStore store = new IdempotencyStore(true, "jdbc:sqlite:" + directory.resolve("idempotency.db"),
+                1_000, 0.01, 2);
+        store.markIfAbsent("file", "events.csv");
+        store.markIfAbsent("file", "events.json");
+        store.markIfAbsent("file", "events.xml");
+        store.markIfAbsent("event", "signup:U1");
+
+        new StoreIdempotentRepository(store, "file").clear();
+
+        assertThat(store.contains("file", "events.csv")).isFalse();
+        assertThat(store.contains("file", "events.json")).isFalse();
+        assertThat(store.contains("file", "events.xml")).isFalse();
+        assertThat(store.contains("event", "signup:U1")).isTrue();
+        store.close();
+    }
+
+    @Test
+    void persistsTheKeysOfAFileOnlyOnceItIsComplete() {
+        String url = "jdbc:sqlite:" + directory.resolve("idempotency.db");
+        IdempotencyStore store = new IdempotencyStore(true, url, 1_000, 0.01, 1);
+        IdempotencyStore.FileKeys interrupted = new IdempotencyStore.FileKeys();
+        assertThat(store.markIfAbsent(interrupted, "event", "signup:U1")).isTrue();
+        // Keys recorded outside of a file are flushed in batches, the keys of the files are left out
+        assertThat(store.markIfAbsent("event", "signup:U2")).isTrue();
+        store.close();
+
+        store = new IdempotencyStore(true, url, 1_000, 0.01, 1);
+        assertThat(store.contains("event", "signup:U1")).isFalse();
+        assertThat(store.contains("event", "signup:U2")).isTrue();
+
+        IdempotencyStore.FileKeys done = new IdempotencyStore.FileKeys();
+        IdempotencyStore.FileKeys failed = new IdempotencyStore.FileKeys();
+        assertThat(store.markIfAbsent(done, "event", "signup:U1")).isTrue();
+        assertThat(store.markIfAbsent(failed, "event", "signup:U3")).isTrue();
+        // Duplicates right away, from the same file or another one
+        assertThat(store.markIfAbsent(failed, "event", "signup:U1")).isFalse();
+        assertThat(store.markIfAbsent(done, "event", "signup:U3")).isFalse();
+        store.discard(failed);
+        store.completeFile("events.csv:1:00000000", done);
+        assertThat(store.contains("event", "signup:U3")).isFalse();
+        store.close();
+
+        IdempotencyStore reopened = new IdempotencyStore(true, url, 1_000, 0.01, 1);
+        assertThat(reopened.contains("event", "signup:U1")).isTrue();
+        assertThat(reopened.contains("event", "signup:U3")).isFalse();
+        assertThat(reopened.contains(IdempotencyStore.FILE_NAMESPACE, "events.csv:1:00000000")).isTrue();
+        reopened.close();
+    }
+
+    @Test
+    void persistsOnlyTheKeysOfTheCheckpointedFile() {
+        String url = "jdbc:sqlite:" + directory.resolve("idempotency.db");
+        IdempotencyStore store = new IdempotencyStore(true, url, 1_000, 0.01, 1_000);
+        IdempotencyStore.FileKeys checkpointed = new IdempotencyStore.FileKeys();
+        IdempotencyStore.FileKeys other = new IdempotencyStore.FileKeys();
+        store.markIfAbsent(checkpointed, "event", "signup:U1");
+        store.markIfAbsent(other, "event", "signup:U2");
+
+        store.saveCheckpoint("events.csv:1:00000000", new IdempotencyStore.Checkpoint(128, 1), checkpointed);
+        // The other file fails after the checkpoint, then the process dies
+        store.discard(other);
+        store.close();
+
+        IdempotencyStore reopened = new IdempotencyStore(true, url, 1_000, 0.01, 1_000);
+        assertThat(reopened.contains("event", "signup:U1")).isTrue();
+        assertThat(reopened.contains("event", "signup:U2")).isFalse();
+        assertThat(reopened.checkpoint("events.csv:1:00000000")).isEqualTo(new IdempotencyStore.Checkpoint(128, 1));
+        reopened.close();
+    }
+
+    @Test
+    void readsTheBloomFilterSavedOnShutdownBack() {
+        String url = "jdbc:sqlite:" + directory.resolve("idempotency.db");
+        Path filter = directory.resolve("idempotency.db.bloom");
+        IdempotencyStore store = new IdempotencyStore(true, url, 1_000, 0.01, 1);
+        store.markIfAbsent("event", "signup:U1");
+        store.close();
+        assertThat(filter).exists();
+
+        // Consumed at startup: a crash leaves no filter behind, the next start rebuilds it from the table
+        IdempotencyStore crashed = new IdempotencyStore(true, url, 1_000, 0.01, 1);
+        assertThat(filter).doesNotExist();
+        assertThat(crashed.markIfAbsent("event", "signup:U1")).isFalse();
+        assertThat(crashed.markIfAbsent("event", "signup:U2")).isTrue();
+
+        IdempotencyStore restarted = new IdempotencyStore(true, url, 1_000, 0.01, 1);
+        assertThat(restarted.contains("event", "signup:U1")).isTrue();
+        assertThat(restarted.contains("event", "signup:U2")).isTrue();
+        restarted.close();
+        crashed.close();
+    }
+
+    @Test
+    void growsTheBloomFilterPastItsSizing() throws IOException {
+        String url = "jdbc:sqlite:" + directory.resolve("idempotency.db");
+        IdempotencyStore store = new IdempotencyStore(true, url, 10, 0.01, 16);
+        for (int i = 0; i < 100; i++) {
+            assertThat(store.markIfAbsent("event", "signup:U" + i)).isTrue();
+        }
+        for (int i = 0; i < 100; i++) {
+            assertThat(store.markIfAbsent("event", "signup:U" + i)).isFalse();
+        }
+        store.close();
+
+        BloomFilter filter = BloomFilter.readFrom(directory.resolve("idempotency.db.bloom"));
+        assertThat(filter.expectedInsertions()).isGreaterThanOrEqualTo(100);
+        assertThat(filter.isSaturated()).isFalse();
+        assertThat(Files.size(directory.resolve("idempotency.db.bloom"))).isGreaterThan(100);
+    }
+
+    @Test
+    void recordsEachKeyOnceAcrossConcurrentLanes() throws Exception {
+        String url = "jdbc:sqlite:" + directory.resolve("idempotency.db");
+        IdempotencyStore store = new IdempotencyStore(true, url, 10, 0.01, 7);
+        IdempotencyStore.FileKeys keys = new IdempotencyStore.FileKeys();
+        AtomicInteger recorded = new AtomicInteger();
+
+        ExecutorService lanes = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for (int lane = 0; lane < 8; lane++) {
+                boolean fileLane = lane % 2 == 0;
+                results.add(lanes.submit(() -> {
+                    for (int i = 0; i < 500; i++) {
+                        boolean added = fileLane
+                                ? store.markIfAbsent(keys, "event", "signup:U" + i)
+                                : store.markIfAbsent("event", "signup:U" + i);
+                        if (added) {
+                            recorded.incrementAndGet();
+                        }
+                    }
+                }));
+            }
+            for (Future<?> result : results) {
+                result.get();
+            }
+        } finally {
+            lanes.shutdown();
+        }
+        store.completeFile(null, keys);
+        store.close();
+
+        assertThat(recorded).hasValue(500);
+        IdempotencyStore reopened = new IdempotencyStore(true, url, 10, 0.01, 7);
+        for (int i = 0; i < 500; i++) {
+            assertThat(reopened.contains("event", "signup:U" + i)).isTrue();
+        }
+        reopened.close();
+    }
+}
@@ -0,0 +1,107 @@
+package tsukoyachi.camelshop.eventrouting.output;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import tsukoyachi.camelshop.common.models.Cart;
+import tsukoyachi.camelshop.common.models.OrderCreatedEvent;
+import tsukoyachi.camelshop.common.models.SignupEvent;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ColumnarEventWriterTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void writesOneFilePerTypeAndWindow() throws IOException {
+        ColumnarEventWriter writer = new ColumnarEventWriter(true, directory.toString(), Duration.ofHours(1), 2);
+        long at = Instant.parse("2025-09-03T10:15:00Z").toEpochMilli();
+        writer.write(new SignupEvent("U1", "alice", "alice@camelshop.com", at));
+        writer.write(new SignupEvent("U2", "bob", "bob@camelshop.com", Instant.parse("2025-09-03T10:45:00Z").toEpochMilli()));
+        writer.write(new SignupEvent("U3", "carol", "carol@camelshop.com", Instant.parse("2025-09-03T11:05:00Z").toEpochMilli()));
+        writer.write(new OrderCreatedEvent("O1", "U1", Cart.of(Map.of("ITEM1", 2)), at));
+        writer.write(new OrderCreatedEvent("O2", "U1", Cart.of(Map.of("ITEM1", 1, "ITEM2", 3)), at));
+        writer.flush();
+
+        ColumnarFileReader.ColumnarFile signups = ColumnarFileReader.read(
+                directory.resolve("signup/signup-20250903T1000Z.cscol"));
+        assertThat(signups.eventType()).isEqualTo(SignupEvent.TYPE);
+        assertThat(signups.groups()).hasSize(1);
+        assertThat(signups.groups().getFirst().columns().get("username")).containsExactly("alice", "bob");
+        assertThat(ColumnarFileReader.read(directory.resolve("signup/signup-20250903T1100Z.cscol"))
+                .groups().getFirst().columns().get("userId")).containsExactly("U3");
+
+        ColumnarFileReader.Group orders = ColumnarFileReader.read(
+                directory.resolve("order_created/order_created-20250903T1000Z.cscol")).groups().getFirst();
+        assertThat(orders.rows()).isEqualTo(2);
+        assertThat(orders.columns().get("userId")).containsExactly("U1", "U1");
+        assertThat(orders.columns().get("cart.size")).containsExactly(1L, 2L);
+        assertThat(orders.columns().get("cart.itemId")).hasSize(3).containsOnly("ITEM1", "ITEM2");
+        assertThat(orders.columns().get("createdAt")).containsExactly(at, at);
+    }
+
+    @Test
+    void appendsGroupsToExistingFiles() throws IOException {
+        long at = Instant.parse("2025-09-03T10:15:00Z").toEpochMilli();
+        for (String userId : List.of("U1", "U2")) {
+            ColumnarEventWriter writer = new ColumnarEventWriter(true, directory.toString(), Duration.ofHours(1), 10);
+            writer.write(new SignupEvent(userId, userId, userId + "@camelshop.com", at));
+            writer.close();
+        }
+
+        ColumnarFileReader.ColumnarFile signups = ColumnarFileReader.read(
+                directory.resolve("signup/signup-20250903T1000Z.cscol"));
+        assertThat(signups.groups()).extracting(group -> group.columns().get("userId"))
+                .containsExactly(List.of("U1"), List.of("U2"));
+    }
+
+    @Test
+    void dropsAGroupCutShortByACrash() throws IOException {
+        long at = Instant.parse("2025-09-03T10:15:00Z").toEpochMilli();
+        Path file = directory.resolve("signup/signup-20250903T1000Z.cscol");
+        ColumnarEventWriter writer = new ColumnarEventWriter(true, directory.toString(), Duration.ofHours(1), 10);
+        writer.write(new SignupEvent("U1", "U1", "U1@camelshop.com", at));
+        writer.close();
+        // Length of a 40 bytes group, followed by its first bytes only
+        Files.write(file, new byte[]{40, 0, 0, 0, 1, 7}, StandardOpenOption.APPEND);
+
+        assertThatThrownBy(() -> ColumnarFileReader.read(file))
+                .hasMessageContaining("ends with a truncated or corrupt record group");
+
+        writer = new ColumnarEventWriter(true, directory.toString(), Duration.ofHours(1), 10);
+        writer.write(new SignupEvent("U2", "U2", "U2@camelshop.com", at));
+        writer.close();
+        assertThat(ColumnarFileReader.read(file).groups()).extracting(group -> group.columns().get("userId"))
+                .containsExactly(List.of("U1"), List.of("U2"));
+    }
+
+    @Test
+    void dropsAZeroFilledTailLeftByACrash() throws IOException {
+        long at = Instant.parse("2025-09-03T10:15:00Z").toEpochMilli();
+        Path file = directory.resolve("signup/signup-20250903T1000Z.cscol");
+        ColumnarEventWriter writer = new ColumnarEventWriter(true, directory.toString(), Duration.ofHours(1), 10);
+        writer.write(new SignupEvent("U1", "U1", "U1@camelshop.com", at));
+        writer.close();
+        // The file size was updated, the data was not: the tail reads as zeroes
+        Files.write(file, new byte[64], StandardOpenOption.APPEND);
+
+        assertThatThrownBy(() -> ColumnarFileReader.read(file))
+                .hasMessageContaining("ends with a truncated or corrupt record group");
+
+        writer = new ColumnarEventWriter(true, directory.toString(), Duration.ofHours(1), 10);
+        writer.write(new SignupEvent("U2", "U2", "U2@camelshop.com", at));
+        writer.close();
+        assertThat(ColumnarFileReader.read(file).groups()).extracting(group -> group.columns().get("userId"))
+                .containsExactly(List.of("U1"), List.of("U2"));
+    }
+}
@@ -0,0 +1,52 @@
+package tsukoyachi.camelshop.eventrouting.processing;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class KeyedLaneExecutorTest {
+    private final KeyedLaneExecutor executor = new KeyedLaneExecutor(true, 4, 3, 2, false);
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdown();
+    }
+
+    @Test
+    void keepsSubmissionOrderPerKey() {
+        Map<String, List<Integer>> seen = new ConcurrentHashMap<>();
+
+        try (KeyedLaneExecutor.Batch batch = executor.openBatch()) {
+            for (int i = 0; i < 1_000; i++) {
+                String key = "USER" + (i % 10);
+                int sequence = i;
+                batch.submit(key, () -> seen
+                        .computeIfAbsent(key, k -> Collections.synchronizedList(new ArrayList<>()))
+                        .add(sequence));
+            }
+        }
+
+        assertThat(seen).hasSize(10);
+        seen.values().forEach(sequences -> assertThat(sequences).hasSize(100).isSorted());
+    }
+
+    @Test
+    void rethrowsFirstFailureOnClose() {
+        assertThatThrownBy(() -> {
+            try (KeyedLaneExecutor.Batch batch = executor.openBatch()) {
+                batch.submit("USER1", () -> {
+                    throw new IllegalArgumentException("Date string must not be null or empty");
+                });
+            }
+        }).isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Date string must not be null or empty");
+    }
+}
@@ -0,0 +1,160 @@
+package tsukoyachi.camelshop.eventrouting.publish;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import tsukoyachi.camelshop.common.codec.EventCodec;
+import tsukoyachi.camelshop.common.models.PaymentProcessedEvent;
+import tsukoyachi.camelshop.common.models.ShopEvent;
+import tsukoyachi.camelshop.common.models.SignupEvent;
+import tsukoyachi.camelshop.eventrouting.metrics.EventMetrics;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+
+class EventPublisherTest {
+    private final RabbitTemplate rabbitTemplate = mock(RabbitTemplate.class);
+    private final List<Sent> sent = new CopyOnWriteArrayList<>();
+    private final EventPublisher.Deliveries file = new EventPublisher.Deliveries();
+
+    private record Sent(String routingKey, List<ShopEvent> events) {
+    }
+
+    @Test
+    void sendsOneMessagePerBatchOfTheSameType() {
+        confirmAfter(0);
+        EventPublisher publisher = publisher(2);
+
+        publisher.publish(signup("U1"), file);
+        publisher.publish(new PaymentProcessedEvent("O1", "U1", "B1", 0L), file);
+        publisher.publish(signup("U2"), file);
+        assertThat(sent).extracting(Sent::routingKey).containsExactly("camelshop.signup");
+        assertThat(sent.getFirst().events()).containsExactly(signup("U1"), signup("U2"));
+
+        publisher.flush(file);
+        assertThat(sent).extracting(Sent::routingKey).containsExactly("camelshop.signup", "camelshop.payment_processed");
+    }
+
+    @Test
+    void sendsNackedBatchesAgain() {
+        confirmAfter(1);
+        EventPublisher publisher = publisher(1);
+
+        publisher.publish(signup("U1"), file);
+        publisher.flush(file);
+
+        assertThat(sent).hasSize(2);
+        assertThat(sent.get(1).events()).containsExactly(signup("U1"));
+    }
+
+    @Test
+    void failsTheFlushWhenEveryAttemptIsNacked() {
+        confirmAfter(Integer.MAX_VALUE);
+        EventPublisher publisher = publisher(1);
+
+        publisher.publish(signup("U1"), file);
+
+        assertThatThrownBy(() -> publisher.flush(file))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessage("1 event(s) were not accepted by the broker");
+        assertThat(sent).hasSize(3);
+    }
+
+    @Test
+    void flushesOnlyThePartialBatchesOfItsCaller() {
+        confirmAfter(0);
+        EventPublisher publisher = publisher(2);
+        EventPublisher.Deliveries other = new EventPublisher.Deliveries();
+
+        publisher.publish(signup("U1"), file);
+        publisher.publish(new PaymentProcessedEvent("O2", "U2", "B2", 0L), other);
+        publisher.flush(file);
+
+        assertThat(sent).extracting(Sent::routingKey).containsExactly("camelshop.signup");
+    }
+
+    @Test
+    void reportsDroppedEventsToTheirCallerOnly() {
+        nack(events -> events.contains(signup("U1")));
+        EventPublisher publisher = publisher(1);
+        EventPublisher.Deliveries other = new EventPublisher.Deliveries();
+
+        publisher.publish(signup("U1"), file);
+        publisher.publish(signup("U2"), other);
+
+        publisher.flush(other);
+        assertThatThrownBy(() -> publisher.flush(file))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessage("1 event(s) were not accepted by the broker");
+        // Reported once, a later flush of the same caller only looks at the batches sent since
+        publisher.flush(file);
+    }
+
+    @Test
+    void reportsTheBatchesLeftUnsentWithoutWaitingForAConfirm() {
+        doThrow(new AmqpException("connection lost")).when(rabbitTemplate)
+                .send(anyString(), anyString(), any(Message.class), any(CorrelationData.class));
+        EventPublisher publisher = publisher(3);
+        EventPublisher.Deliveries other = new EventPublisher.Deliveries();
+
+        publisher.publish(signup("U1"), file);
+        publisher.publish(signup("U2"), other);
+        publisher.publish(new PaymentProcessedEvent("O1", "U1", "B1", 0L), file);
+        publisher.publish(new PaymentProcessedEvent("O2", "U2", "B2", 0L), other);
+
+        // The first send fails, the second partial batch is never sent
+        assertThatThrownBy(() -> publisher.flush(file)).isInstanceOf(AmqpException.class);
+        long start = System.nanoTime();
+        assertThatThrownBy(() -> publisher.flush(other))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageEndingWith("event(s) were not accepted by the broker");
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(5));
+    }
+
+    private EventPublisher publisher(int batchSize) {
+        return new EventPublisher(rabbitTemplate, new EventMetrics(new SimpleMeterRegistry()), true,
+                "eventrouting.exchange", batchSize, 2, Duration.ofSeconds(5), 3);
+    }
+
+    /**
+     * Nacks the first {@code nacks} messages and acks the other ones.
+     */
+    private void confirmAfter(int nacks) {
+        AtomicInteger remaining = new AtomicInteger(nacks);
+        nack(events -> remaining.getAndDecrement() > 0);
+    }
+
+    /**
+     * Nacks the messages whose events match, acks the other ones, from another thread like the broker.
+     */
+    private void nack(Predicate<List<ShopEvent>> rejected) {
+        doAnswer(invocation -> {
+            Message message = invocation.getArgument(2);
+            CorrelationData correlation = invocation.getArgument(3);
+            List<ShopEvent> events = EventCodec.decode(message.getBody());
+            sent.add(new Sent(invocation.getArgument(1), events));
+            boolean ack = !rejected.test(events);
+            Thread.ofVirtual().start(() -> correlation.getFuture().complete(
+                    new CorrelationData.Confirm(ack, ack ? null : "internal error")));
+            return null;
+        }).when(rabbitTemplate).send(anyString(), anyString(), any(Message.class), any(CorrelationData.class));
+    }
+
+    private static SignupEvent signup(String userId) {
+        return new SignupEvent(userId, userId.toLowerCase(), userId.toLowerCase() + "@camelshop.com", 1_756_894_500_000L);
+    }
+}